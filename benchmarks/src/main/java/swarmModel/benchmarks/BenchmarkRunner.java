@@ -0,0 +1,34 @@
+package swarmModel.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/* Runs the benchmarks with the GC profiler, so every result comes with its allocation rate.
+   The settings are fixed here so numbers from different machines and changes are comparable.
+   An optional argument restricts the run to the benchmarks matching that regular expression. */
+public class BenchmarkRunner {
+
+  private static final String resultFile = "jmh-results.csv";
+
+  public static void main(String[] args) throws RunnerException {
+    String include = args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage().getName();
+    Options options = new OptionsBuilder()
+        .include(include)
+        .addProfiler(GCProfiler.class)
+        .forks(2)
+        .warmupIterations(5)
+        .warmupTime(TimeValue.seconds(1))
+        .measurementIterations(10)
+        .measurementTime(TimeValue.seconds(1))
+        .jvmArgs("-Xms2g", "-Xmx2g")
+        .resultFormat(ResultFormatType.CSV)
+        .result(resultFile)
+        .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,67 @@
+package swarmModel.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.math3.fitting.PolynomialCurveFitter;
+import org.apache.commons.math3.fitting.WeightedObservedPoints;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import swarmModel.utils.RollingPolynomialFit;
+
+/* Exchange.updateDemandPrediction, fitting the net demand of the last derivativeTimeFrame ticks.
+   The legacy version filters the whole boxed history and runs the commons-math fitter on the
+   window, the rolling fit adds the new tick and solves its normal equations. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DemandFitBenchmark {
+
+  private static final int orderOfPoly = 2;
+  private static final double derivativeTimeFrame = 10;
+
+  @Param({"64", "512", "4096"})
+  public int historyLength;
+
+  private long tick;
+  private double[] demand;
+  private Map<Long, Double> demandMap;
+  private RollingPolynomialFit rollingFit;
+  private long rollingTick;
+  private double[] coeffs = new double[orderOfPoly + 1];
+
+  @Setup
+  public void setup() {
+    demand = MarketFixture.netDemand(historyLength);
+    tick = historyLength - 1;
+    demandMap = MarketFixture.asMap(demand);
+    rollingFit = new RollingPolynomialFit(orderOfPoly, (int) Math.floor(derivativeTimeFrame) + 1);
+    for (int t = 0; t < historyLength; t++) {
+      rollingFit.add(t, demand[t]);
+    }
+    rollingTick = tick;
+  }
+
+  @Benchmark
+  public double[] legacyFit() {
+    WeightedObservedPoints obs = new WeightedObservedPoints();
+    demandMap.entrySet().stream()
+        .filter(a -> a.getKey() >= tick - derivativeTimeFrame)
+        .forEach(a -> obs.add(a.getKey(), a.getValue()));
+    return PolynomialCurveFitter.create(orderOfPoly).fit(obs.toList());
+  }
+
+  // Each call moves the fit on by one tick, replaying the history so the values stay realistic
+  @Benchmark
+  public double[] rollingFit() {
+    rollingTick++;
+    rollingFit.add(rollingTick, demand[(int) (rollingTick % historyLength)]);
+    coeffs = rollingFit.fit(coeffs);
+    return coeffs;
+  }
+}
@@ -0,0 +1,99 @@
+package swarmModel.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import swarmModel.MarketIndicators;
+import swarmModel.utils.TimeSeries;
+
+/* The momentum traders' moving averages and the fundamental traders' RSI at the latest tick of a
+   price history. The legacy versions are the scans over the boxed history map the traders used to
+   run, the others read the window sums of the model's time series. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IndicatorBenchmark {
+
+  private static final long shortTermAveragePeriod = 7;
+  private static final long longTermAveragePeriod = 21;
+  private static final long rsiPeriod = 14;
+
+  @Param({"64", "512", "4096"})
+  public int historyLength;
+
+  private long tick;
+  private Map<Long, Double> historyMap;
+  private TimeSeries prices;
+  private TimeSeries gains;
+  private TimeSeries losses;
+
+  @Setup
+  public void setup() {
+    double[] history = MarketFixture.prices(historyLength);
+    tick = historyLength;
+    historyMap = MarketFixture.asMap(history);
+    prices = MarketFixture.asTimeSeries(history, historyLength);
+    gains = new TimeSeries(historyLength);
+    losses = new TimeSeries(historyLength);
+    for (int t = 1; t < historyLength; t++) {
+      double change = (history[t] - history[t - 1]) / history[t - 1];
+      gains.put(t, Math.max(change, 0));
+      losses.put(t, Math.max(-change, 0));
+    }
+  }
+
+  @Benchmark
+  public double legacyMovingAverages() {
+    return legacyMovingAverage(shortTermAveragePeriod) + legacyMovingAverage(longTermAveragePeriod);
+  }
+
+  @Benchmark
+  public double movingAverages() {
+    return MarketIndicators.movingAverage(prices, tick, shortTermAveragePeriod)
+        + MarketIndicators.movingAverage(prices, tick, longTermAveragePeriod);
+  }
+
+  @Benchmark
+  public double legacyRsi() {
+    double[] histPrices = new double[(int) rsiPeriod];
+    for (int i = 0; i < rsiPeriod; i++) {
+      histPrices[i] = historyMap.get(tick - (rsiPeriod + 1) + i);
+    }
+    double cumulativeGain = 0;
+    double cumulativeLoss = 0;
+    for (int j = 1; j <= rsiPeriod - 1; j++) {
+      double histReturn = (histPrices[j] - histPrices[j - 1]) / histPrices[j - 1];
+      if (histReturn > 0) {
+        cumulativeGain += histReturn;
+      } else if (histReturn < 0) {
+        cumulativeLoss += Math.abs(histReturn);
+      }
+    }
+    double currentPrice = historyMap.get(tick - 1);
+    double prevPrice = historyMap.get(tick - 2);
+    double currentReturn = (currentPrice - prevPrice) / prevPrice;
+    double avgGain = ((rsiPeriod - 1) * cumulativeGain / rsiPeriod + Math.max(currentReturn, 0))
+        / rsiPeriod;
+    double avgLoss = ((rsiPeriod - 1) * cumulativeLoss / rsiPeriod + Math.max(-currentReturn, 0))
+        / rsiPeriod;
+    return avgLoss == 0 ? 100 : 100 - (100 / (1 + (avgGain / avgLoss)));
+  }
+
+  @Benchmark
+  public double rsi() {
+    return MarketIndicators.rsi(gains, losses, tick, rsiPeriod);
+  }
+
+  private double legacyMovingAverage(long nbDays) {
+    double totalPrice = historyMap.entrySet().stream()
+        .filter(a -> a.getKey() >= tick - nbDays).mapToDouble(Map.Entry::getValue).sum();
+    return totalPrice / nbDays;
+  }
+}
@@ -0,0 +1,82 @@
+package swarmModel.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import swarmModel.utils.Option;
+import swarmModel.utils.Option.type;
+import swarmModel.utils.TimeSeries;
+
+/* Synthetic market state shared by the benchmarks. Everything is drawn from a fixed seed so two
+   runs of the same benchmark see exactly the same prices, demand and options. */
+final class MarketFixture {
+
+  static final long seed = 1234;
+  static final double initialPrice = 15;
+  static final double interestRate = 0.028;
+  static final double volatility = 0.3;
+  static final double optionShareNumber = 100;
+  static final double callStrikeFactor = 0.95;
+  static final double putStrikeFactor = 1.05;
+  static final int minExpiryTime = 10;
+  static final int maxExpiryTime = 25;
+
+  private MarketFixture() {
+  }
+
+  // Random walk of the market price, one value per tick from tick 0
+  static double[] prices(int historyLength) {
+    Random random = new Random(seed);
+    double[] prices = new double[historyLength];
+    double price = initialPrice;
+    for (int tick = 0; tick < historyLength; tick++) {
+      price = Math.max(price + random.nextGaussian() * 0.1, 0.01);
+      prices[tick] = price;
+    }
+    return prices;
+  }
+
+  static double[] netDemand(int historyLength) {
+    Random random = new Random(seed + 1);
+    double[] demand = new double[historyLength];
+    for (int tick = 0; tick < historyLength; tick++) {
+      demand[tick] = Math.round(random.nextGaussian() * 200);
+    }
+    return demand;
+  }
+
+  // The history as the model used to keep it, one boxed entry per tick
+  static Map<Long, Double> asMap(double[] values) {
+    Map<Long, Double> map = new HashMap<>();
+    for (int tick = 0; tick < values.length; tick++) {
+      map.put((long) tick, values[tick]);
+    }
+    return map;
+  }
+
+  static TimeSeries asTimeSeries(double[] values, int capacity) {
+    TimeSeries series = new TimeSeries(capacity);
+    for (int tick = 0; tick < values.length; tick++) {
+      series.put(tick, values[tick]);
+    }
+    return series;
+  }
+
+  // Options bought at or before the given tick which have not expired yet
+  static List<Option> openOptions(int nbOptions, long tick, double marketPrice) {
+    Random random = new Random(seed + 2);
+    List<Option> options = new ArrayList<>(nbOptions);
+    for (int i = 0; i < nbOptions; i++) {
+      int expiryTime = minExpiryTime + random.nextInt(maxExpiryTime - minExpiryTime);
+      long boughtAt = tick - random.nextInt(expiryTime);
+      double stockPrice = marketPrice * (1 + random.nextGaussian() * 0.02);
+      Option option = random.nextBoolean()
+          ? new Option(boughtAt + expiryTime, stockPrice * callStrikeFactor, type.CALL, stockPrice)
+          : new Option(boughtAt + expiryTime, stockPrice * putStrikeFactor, type.PUT, stockPrice);
+      options.add(option);
+    }
+    return options;
+  }
+}
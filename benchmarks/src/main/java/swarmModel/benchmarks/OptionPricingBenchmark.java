@@ -0,0 +1,135 @@
+package swarmModel.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import swarmModel.utils.Greeks;
+import swarmModel.utils.Option;
+import swarmModel.utils.OptionBook;
+import swarmModel.utils.OptionPricer;
+
+/* OptionTrader.calculateOptionPrice and the delta computed by deltaHedge, over every open option
+   of a trader. The legacy versions price through a new commons-math normal distribution for each
+   cumulative probability and take the delta as a finite difference against the purchase price,
+   as the trader did before the shared pricer and the analytic Greeks. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OptionPricingBenchmark {
+
+  private static final double daysPerYear = 365;
+  private static final int hedgeCutoff = 5;
+
+  @Param({"10", "100", "1000"})
+  public int openOptions;
+
+  private final long tick = 1000;
+  private final double marketPrice = MarketFixture.initialPrice;
+  private List<Option> options;
+  private final OptionBook book = new OptionBook();
+  private final Greeks greeks = new Greeks();
+
+  @Setup
+  public void setup() {
+    options = MarketFixture.openOptions(openOptions, tick, marketPrice);
+    for (Option option : options) {
+      option.setOptionPrice(OptionPricer.computePrice(option.isCallOption(),
+          option.getInitialStockPrice(), option.getExercisePrice(),
+          option.getTimeToExpiry(tick - 1), MarketFixture.interestRate, MarketFixture.volatility,
+          MarketFixture.optionShareNumber));
+      book.add(option);
+    }
+  }
+
+  @Benchmark
+  public double legacyPrice() {
+    double total = 0;
+    for (Option option : options) {
+      total += legacyPrice(option);
+    }
+    return total;
+  }
+
+  @Benchmark
+  public double analyticPrice() {
+    double total = 0;
+    for (Option option : options) {
+      total += OptionPricer.computePrice(option.isCallOption(), marketPrice,
+          option.getExercisePrice(), option.getTimeToExpiry(tick), MarketFixture.interestRate,
+          MarketFixture.volatility, MarketFixture.optionShareNumber);
+    }
+    return total;
+  }
+
+  @Benchmark
+  public double cachedPrice() {
+    double total = 0;
+    for (Option option : options) {
+      total += OptionPricer.price(option.isCallOption(), marketPrice, option.getExercisePrice(),
+          option.getTimeToExpiry(tick), MarketFixture.interestRate, MarketFixture.volatility,
+          MarketFixture.optionShareNumber);
+    }
+    return total;
+  }
+
+  @Benchmark
+  public double legacyPositionDelta() {
+    double totalDelta = 0;
+    for (Option option : options) {
+      if (option.getTimeToExpiry(tick) < hedgeCutoff) {
+        continue;
+      }
+      double delta = (legacyPrice(option) - option.getOptionPrice())
+          / (marketPrice - option.getInitialStockPrice());
+      double bound = MarketFixture.optionShareNumber;
+      totalDelta += option.isCallOption() ? Math.max(Math.min(delta, bound), 0)
+          : Math.min(Math.max(delta, -bound), 0);
+    }
+    return Math.round(totalDelta);
+  }
+
+  // The full revaluation the trader falls back to when its book or the market inputs change
+  @Benchmark
+  public double analyticPositionDelta() {
+    double totalDelta = 0;
+    for (Option option : book) {
+      if (option.getTimeToExpiry(tick) < hedgeCutoff) {
+        continue;
+      }
+      totalDelta += greeks.compute(option.isCallOption(), marketPrice, option.getExercisePrice(),
+          option.getTimeToExpiry(tick), MarketFixture.interestRate, MarketFixture.volatility,
+          MarketFixture.optionShareNumber).delta;
+    }
+    return Math.round(totalDelta);
+  }
+
+  private double legacyPrice(Option option) {
+    double years = option.getTimeToExpiry(tick) / daysPerYear;
+    double volatility = MarketFixture.volatility;
+    double d1 = (1 / (volatility * Math.sqrt(years))) * (Math.log(marketPrice
+        / option.getExercisePrice()) + (MarketFixture.interestRate + volatility * volatility / 2)
+        * years);
+    double d2 = d1 - volatility * years;
+    double discountedExercisePrice =
+        option.getExercisePrice() * Math.exp(-MarketFixture.interestRate * years);
+    double optionPrice;
+    if (option.isCallOption()) {
+      optionPrice = (marketPrice * new NormalDistribution().cumulativeProbability(d1)
+          - discountedExercisePrice * new NormalDistribution().cumulativeProbability(d2))
+          * MarketFixture.optionShareNumber;
+    } else {
+      optionPrice = (new NormalDistribution().cumulativeProbability(-d2) * discountedExercisePrice
+          - new NormalDistribution().cumulativeProbability(-d1) * marketPrice)
+          * MarketFixture.optionShareNumber;
+    }
+    return optionPrice > 0 ? optionPrice : 0;
+  }
+}
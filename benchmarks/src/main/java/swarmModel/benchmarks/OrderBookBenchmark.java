@@ -0,0 +1,83 @@
+package swarmModel.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import swarmModel.utils.OrderBook;
+
+/* Exchange matching with the limit order book, time per order event. A fixed stream of limit
+   orders around the price, market orders and cancellations of earlier limit orders is replayed
+   into the same book, which keeps it at a steady depth, so the time is that of matching alone
+   once the book's arrays have grown. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OrderBookBenchmark {
+
+  private static final int events = 1 << 16;
+  private static final int owners = 4096;
+  private static final double tickSize = 0.01;
+  private static final int priceLevels = 40;
+
+  private final byte[] types = new byte[events];
+  private final boolean[] buys = new boolean[events];
+  private final long[] eventOwners = new long[events];
+  private final double[] prices = new double[events];
+  private final long[] quantities = new long[events];
+  private final int[] cancelled = new int[events];
+  private final long[] orderIds = new long[events];
+
+  private OrderBook book;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(MarketFixture.seed);
+    long lowestTick = Math.round(MarketFixture.initialPrice / tickSize) - priceLevels / 2;
+    for (int event = 0; event < events; event++) {
+      int draw = random.nextInt(10);
+      types[event] = (byte) (draw < 5 ? 0 : draw < 8 ? 1 : 2);
+      buys[event] = random.nextBoolean();
+      eventOwners[event] = random.nextInt(owners);
+      prices[event] = (lowestTick + random.nextInt(priceLevels)) * tickSize;
+      quantities[event] = 1 + random.nextInt(20);
+      cancelled[event] = random.nextInt(events);
+    }
+    book = new OrderBook(tickSize);
+    replay();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(events)
+  public long events() {
+    return replay();
+  }
+
+  private long replay() {
+    long filled = 0;
+    for (int event = 0; event < events; event++) {
+      switch (types[event]) {
+        case 0:
+          orderIds[event] = book.limit(buys[event], eventOwners[event], prices[event],
+              quantities[event]);
+          break;
+        case 1:
+          filled += book.market(buys[event], eventOwners[event], quantities[event]);
+          break;
+        default:
+          book.cancel(orderIds[cancelled[event]]);
+      }
+      if (book.getFills() > events) {
+        book.clearFills();
+      }
+    }
+    book.clearFills();
+    return filled;
+  }
+}
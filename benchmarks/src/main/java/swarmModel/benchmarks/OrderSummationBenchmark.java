@@ -0,0 +1,58 @@
+package swarmModel.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import swarmModel.links.Messages.BuyOrderPlaced;
+import swarmModel.utils.OrderFlow;
+
+/* Exchange.calculateBuyAndSellPrice, totalling the orders placed in a tick. The message path sums
+   the order messages the exchange received, the aggregated path adds each order to the shared
+   order flow and drains it, which is all the work left on either side. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OrderSummationBenchmark {
+
+  @Param({"100", "1000", "10000"})
+  public int ordersPerTick;
+
+  private double[] volumes;
+  private List<BuyOrderPlaced> messages;
+  private final OrderFlow orderFlow = new OrderFlow();
+
+  @Setup
+  public void setup() {
+    Random random = new Random(MarketFixture.seed);
+    volumes = new double[ordersPerTick];
+    messages = new ArrayList<>(ordersPerTick);
+    for (int i = 0; i < ordersPerTick; i++) {
+      volumes[i] = 1 + random.nextInt(50);
+      BuyOrderPlaced message = new BuyOrderPlaced();
+      message.volume = volumes[i];
+      messages.add(message);
+    }
+  }
+
+  @Benchmark
+  public int messages() {
+    return messages.stream().mapToInt(order -> (int) order.volume).sum();
+  }
+
+  @Benchmark
+  public long orderFlow() {
+    for (double volume : volumes) {
+      orderFlow.addBuy(volume);
+    }
+    return orderFlow.drainBuys();
+  }
+}
@@ -0,0 +1,74 @@
+package swarmModel.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import swarmModel.utils.Option;
+import swarmModel.utils.OptionBook;
+import swarmModel.utils.OptionSeriesBook;
+
+/* OptionTrader.calculateOptionPortfolioValue and the market maker's written options. The legacy
+   version walks the list of options the traders used to keep, the others walk the option book
+   and value the series book the market maker now keeps. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PortfolioValuationBenchmark {
+
+  private static final double strikeBucketWidth = 0.01;
+
+  @Param({"10", "100", "1000"})
+  public int openOptions;
+
+  private final long tick = 1000;
+  private final double marketPrice = MarketFixture.initialPrice;
+  private List<Option> optionList;
+  private final OptionBook book = new OptionBook();
+  private final OptionSeriesBook seriesBook = new OptionSeriesBook(strikeBucketWidth);
+
+  @Setup
+  public void setup() {
+    optionList = new ArrayList<>(MarketFixture.openOptions(openOptions, tick, marketPrice));
+    for (Option option : optionList) {
+      book.add(option);
+      seriesBook.add(option);
+    }
+  }
+
+  @Benchmark
+  public double legacyOptionList() {
+    return intrinsicValue(optionList);
+  }
+
+  @Benchmark
+  public double optionBook() {
+    return intrinsicValue(book);
+  }
+
+  @Benchmark
+  public double seriesBook() {
+    return seriesBook.intrinsicValue(marketPrice, MarketFixture.optionShareNumber);
+  }
+
+  private double intrinsicValue(Iterable<Option> options) {
+    double value = 0;
+    for (Option option : options) {
+      if (option.isCallOption()) {
+        value += Math.max(
+            (marketPrice - option.getExercisePrice()) * MarketFixture.optionShareNumber, 0);
+      } else {
+        value += Math.max(
+            (option.getExercisePrice() - marketPrice) * MarketFixture.optionShareNumber, 0);
+      }
+    }
+    return value;
+  }
+}
@@ -0,0 +1,46 @@
+package swarmModel.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.apache.commons.math3.distribution.UniformRealDistribution;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import swarmModel.utils.RandomStream;
+
+/* A trader's random draw for a decision. The legacy path builds a distribution over the agent's
+   generator for every draw, as getPrng().uniform(0, 1).sample() does, the stream reads the next
+   value of its pre-drawn block. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RandomDrawBenchmark {
+
+  private final RandomGenerator generator = new MersenneTwister(MarketFixture.seed);
+  private final RandomStream stream = RandomStream.of(MarketFixture.seed, "NoiseTrader", 1);
+
+  @Benchmark
+  public double legacyUniform() {
+    return new UniformRealDistribution(generator, 0, 1).sample();
+  }
+
+  @Benchmark
+  public double legacyNormal() {
+    return new NormalDistribution(generator, 0, 1).sample();
+  }
+
+  @Benchmark
+  public double streamUniform() {
+    return stream.uniform();
+  }
+
+  @Benchmark
+  public double streamNormal() {
+    return stream.normal();
+  }
+}
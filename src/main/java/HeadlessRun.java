@@ -0,0 +1,108 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/* A single run of MainHeadless in a JVM of its own, working in its own folder where its outputs
+   and log are written. The SDK reads its settings from the working directory, so the folder gets a
+   copy of ours, with the exports turned off if they are not wanted. */
+class HeadlessRun {
+
+  private final Path folder;
+  private final List<String> command = new ArrayList<>();
+
+  HeadlessRun(Path folder, String classpath, List<String> jvmArgs, long seed, long ticks,
+      Map<String, String> inputs) {
+    this.folder = folder;
+    command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    command.addAll(jvmArgs);
+    command.addAll(Arrays.asList("-cp", classpath, "MainHeadless",
+        "--seed", Long.toString(seed), "--ticks", Long.toString(ticks)));
+    for (Map.Entry<String, String> input : inputs.entrySet()) {
+      command.add("--input");
+      command.add(input.getKey() + "=" + input.getValue());
+    }
+  }
+
+  Path getFolder() {
+    return folder;
+  }
+
+  // Asks MainHeadless to write a file into the run folder, such as --summary or --metrics
+  Path output(String option, String fileName) {
+    Path file = folder.resolve(fileName).toAbsolutePath();
+    command.add(option);
+    command.add(file.toString());
+    return file;
+  }
+
+  // Returns ok, timeout or failed:<exit code>, a timeout of zero waits as long as the run takes
+  String run(boolean export, long timeoutMinutes) throws IOException, InterruptedException {
+    Files.createDirectories(folder);
+    writeSdkProperties(export);
+    File log = folder.resolve("run.log").toFile();
+    Process process = new ProcessBuilder(command).directory(folder.toFile())
+        .redirectErrorStream(true).redirectOutput(log).start();
+
+    boolean finished = true;
+    if (timeoutMinutes > 0) {
+      finished = process.waitFor(timeoutMinutes, TimeUnit.MINUTES);
+    } else {
+      process.waitFor();
+    }
+    if (!finished) {
+      process.destroyForcibly();
+      return "timeout";
+    }
+    return process.exitValue() == 0 ? "ok" : "failed:" + process.exitValue();
+  }
+
+  private void writeSdkProperties(boolean export) throws IOException {
+    List<String> lines = new ArrayList<>();
+    Path sdkProperties = Paths.get("simudyneSDK.properties");
+    if (Files.exists(sdkProperties)) {
+      for (String line : Files.readAllLines(sdkProperties, StandardCharsets.UTF_8)) {
+        if (export || !line.trim().matches("core\\.(parquet|csv)-export\\.enabled\\s*=.*")) {
+          lines.add(line);
+        }
+      }
+    }
+    if (!export) {
+      lines.add("core.parquet-export.enabled=false");
+      lines.add("core.csv-export.enabled=false");
+    }
+    Files.write(folder.resolve("simudyneSDK.properties"), lines, StandardCharsets.UTF_8);
+  }
+
+  // Runs work in their own folders, so relative classpath entries are resolved beforehand
+  static String absoluteClasspath(String classpath) {
+    List<String> entries = new ArrayList<>();
+    for (String entry : classpath.split(File.pathSeparator)) {
+      entries.add(Paths.get(entry).toAbsolutePath().toString());
+    }
+    return String.join(File.pathSeparator, entries);
+  }
+
+  // Reads a file of name=value lines written by the run, in the order of the given names
+  static Map<String, String> read(Path file, String... names) throws IOException {
+    Properties properties = new Properties();
+    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      properties.load(reader);
+    }
+    Map<String, String> values = new LinkedHashMap<>();
+    for (String name : names) {
+      values.put(name, properties.getProperty(name, ""));
+    }
+    return values;
+  }
+}
@@ -0,0 +1,206 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.math3.stat.descriptive.moment.Mean;
+import org.apache.commons.math3.stat.descriptive.moment.StandardDeviation;
+import org.apache.commons.math3.stat.inference.KolmogorovSmirnovTest;
+import swarmModel.InputOverrides;
+import swarmModel.RunSummary;
+
+public class KernelEquivalence {
+
+  /* Checks the array kernel against the agent model. Both are run for the same seeds and inputs,
+     the agent model through MainHeadless, each run in its own JVM, and the kernel in this one. They
+     use different random streams so single runs differ, but the distribution of each summary
+     statistic over the seeds should not: each is compared with a two sample Kolmogorov-Smirnov
+     test, at the given level divided by the number of statistics compared. The summary of every
+     run goes to runs.csv and the comparison to equivalence.csv in the output folder. Exits with 1
+     if a statistic differs or an agent run failed.
+
+     Usage: KernelEquivalence [--seeds <n>] [--first-seed <seed>] [--ticks <n>] [--alpha <level>]
+                              [--input <name>=<value>] [--out <folder>] [--workers <n>]
+                              [--timeout-minutes <n>] [--jvm-args "<args>"] [--classpath <path>]
+     Agent runs are slow, keep the populations small enough for --seeds runs of both. */
+  public static void main(String[] args) throws Exception {
+    int seeds = 30;
+    long firstSeed = 1234;
+    long ticks = 250;
+    double alpha = 0.05;
+    Map<String, String> inputs = new LinkedHashMap<>();
+    Path outputFolder = Paths.get("equivalence-outputs");
+    int workers = Runtime.getRuntime().availableProcessors();
+    long timeoutMinutes = 0;
+    List<String> jvmArgs = new ArrayList<>();
+    String classpath = System.getProperty("java.class.path");
+
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "--seeds":
+          seeds = Integer.parseInt(args[++i]);
+          break;
+        case "--first-seed":
+          firstSeed = Long.parseLong(args[++i]);
+          break;
+        case "--ticks":
+          ticks = Long.parseLong(args[++i]);
+          break;
+        case "--alpha":
+          alpha = Double.parseDouble(args[++i]);
+          break;
+        case "--input":
+          String input = args[++i];
+          int separator = input.indexOf('=');
+          if (separator <= 0) {
+            throw new IllegalArgumentException("Expected --input <name>=<value>, got " + input);
+          }
+          InputOverrides.set(input.substring(0, separator), input.substring(separator + 1));
+          inputs.put(input.substring(0, separator), input.substring(separator + 1));
+          break;
+        case "--out":
+          outputFolder = Paths.get(args[++i]);
+          break;
+        case "--workers":
+          workers = Integer.parseInt(args[++i]);
+          break;
+        case "--timeout-minutes":
+          timeoutMinutes = Long.parseLong(args[++i]);
+          break;
+        case "--jvm-args":
+          jvmArgs.addAll(Arrays.asList(args[++i].trim().split("\\s+")));
+          break;
+        case "--classpath":
+          classpath = args[++i];
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option " + args[i]);
+      }
+    }
+    if (seeds < 2) {
+      throw new IllegalArgumentException("At least two seeds are needed to compare distributions");
+    }
+    Files.createDirectories(outputFolder);
+    String absoluteClasspath = HeadlessRun.absoluteClasspath(classpath);
+
+    // Agent runs go to the pool first, the kernel runs here meanwhile
+    ExecutorService pool = Executors.newFixedThreadPool(workers);
+    List<Future<Map<String, String>>> agentRuns = new ArrayList<>();
+    for (int run = 0; run < seeds; run++) {
+      long seed = firstSeed + run;
+      HeadlessRun headlessRun = new HeadlessRun(
+          outputFolder.resolve(String.format("agents-%05d", run)), absoluteClasspath, jvmArgs,
+          seed, ticks, inputs);
+      long runTimeout = timeoutMinutes;
+      agentRuns.add(pool.submit(() -> runAgents(headlessRun, runTimeout)));
+    }
+    pool.shutdown();
+
+    List<Map<String, String>> kernelSummaries = new ArrayList<>();
+    long kernelStart = System.nanoTime();
+    for (int run = 0; run < seeds; run++) {
+      kernelSummaries.add(MainKernel.run(firstSeed + run, ticks).getSummary().values());
+    }
+    System.out.printf("%d kernel runs in %.1fs%n", seeds, (System.nanoTime() - kernelStart) / 1e9);
+
+    List<Map<String, String>> agentSummaries = new ArrayList<>();
+    int failures = 0;
+    for (int run = 0; run < seeds; run++) {
+      Map<String, String> summary = agentRuns.get(run).get();
+      if (summary == null) {
+        failures++;
+      } else {
+        agentSummaries.add(summary);
+      }
+    }
+    writeRuns(outputFolder.resolve("runs.csv"), firstSeed, agentRuns, kernelSummaries);
+    if (agentSummaries.size() < 2) {
+      System.err.println("Only " + agentSummaries.size() + " agent runs finished, cannot compare");
+      System.exit(1);
+    }
+
+    // recordedTicks is the same in every run and is not compared
+    List<String> compared = Arrays.asList(RunSummary.columns).subList(1, RunSummary.columns.length);
+    double level = alpha / compared.size();
+    KolmogorovSmirnovTest test = new KolmogorovSmirnovTest();
+    int different = 0;
+    try (BufferedWriter writer = Files.newBufferedWriter(outputFolder.resolve("equivalence.csv"),
+        StandardCharsets.UTF_8)) {
+      writer.write("statistic,agentMean,agentStd,kernelMean,kernelStd,ksStatistic,pValue,"
+          + "equivalent");
+      writer.newLine();
+      for (String column : compared) {
+        double[] agents = column(agentSummaries, column);
+        double[] kernel = column(kernelSummaries, column);
+        double statistic = test.kolmogorovSmirnovStatistic(agents, kernel);
+        double pValue = test.kolmogorovSmirnovTest(agents, kernel);
+        boolean equivalent = pValue >= level;
+        if (!equivalent) {
+          different++;
+        }
+        writer.write(String.join(",", column,
+            Double.toString(new Mean().evaluate(agents)),
+            Double.toString(new StandardDeviation().evaluate(agents)),
+            Double.toString(new Mean().evaluate(kernel)),
+            Double.toString(new StandardDeviation().evaluate(kernel)),
+            Double.toString(statistic), Double.toString(pValue), Boolean.toString(equivalent)));
+        writer.newLine();
+        System.out.printf("%-18s p=%.4f %s%n", column, pValue, equivalent ? "ok" : "DIFFERENT");
+      }
+    }
+    System.out.println(different + " of " + compared.size() + " statistics differ at level "
+        + level + ", " + failures + " agent runs failed");
+    System.exit(different == 0 && failures == 0 ? 0 : 1);
+  }
+
+  // The summary of the run, null if it failed
+  private static Map<String, String> runAgents(HeadlessRun run, long timeoutMinutes) {
+    try {
+      Path summaryFile = run.output("--summary", "summary.properties");
+      Files.deleteIfExists(summaryFile);
+      String status = run.run(false, timeoutMinutes);
+      if (status.equals("ok") && Files.exists(summaryFile)) {
+        return HeadlessRun.read(summaryFile, RunSummary.columns);
+      }
+      System.err.println("Agent run in " + run.getFolder() + " " + status);
+    } catch (IOException e) {
+      System.err.println("Agent run in " + run.getFolder() + " error:" + e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return null;
+  }
+
+  private static double[] column(List<Map<String, String>> summaries, String column) {
+    return summaries.stream().mapToDouble(summary -> Double.parseDouble(summary.get(column)))
+        .toArray();
+  }
+
+  private static void writeRuns(Path file, long firstSeed,
+      List<Future<Map<String, String>>> agentRuns, List<Map<String, String>> kernelSummaries)
+      throws Exception {
+    try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      writer.write("model,seed," + String.join(",", RunSummary.columns));
+      writer.newLine();
+      for (int run = 0; run < kernelSummaries.size(); run++) {
+        Map<String, String> agents = agentRuns.get(run).get();
+        if (agents != null) {
+          writer.write("agents," + (firstSeed + run) + "," + String.join(",", agents.values()));
+          writer.newLine();
+        }
+        writer.write("kernel," + (firstSeed + run) + ","
+            + String.join(",", kernelSummaries.get(run).values()));
+        writer.newLine();
+      }
+    }
+  }
+}
@@ -1,39 +1,115 @@
-import java.util.logging.Logger;
-import org.slf4j.LoggerFactory;
+import java.nio.file.Paths;
 import simudyne.core.exec.runner.ModelRunner;
-import simudyne.core.exec.runner.MultirunController;
 import simudyne.core.exec.runner.RunnerBackend;
 import simudyne.core.exec.runner.definition.BatchDefinitionsBuilder;
-import simudyne.nexus.Server;
+import swarmModel.AggregateOutput;
+import swarmModel.Checkpoint;
+import swarmModel.InputOverrides;
+import swarmModel.ModelMetrics;
+import swarmModel.RunSummary;
+import swarmModel.TickProfiler;
 import swarmModel.TradingModel;
 
 public class MainHeadless {
 
-  // Runs model with given parameters and puts result in outputs folder for use with python script
+  /* Runs model with given parameters and puts result in outputs folder for use with python script.
+     Options: --seed <seed>, --ticks <ticks>, --runs 1, --input <name>=<value> (repeatable),
+     --summary <file> to write the summary statistics of the run once it is over,
+     --metrics <file> to write what the run cost in time, messages and memory,
+     --profile <file> to write the cost of every phase of each tick, and
+     --aggregates <folder> to write the per tick aggregates there instead of into outputs,
+     --save-checkpoint <file> with --checkpoint-tick <tick> to save the state of the run at the end
+     of that model tick, --restore <file> to carry on from a saved state instead of starting over,
+     for --ticks more ticks, and --reseed true for the restored run to draw new random numbers.
+     Outputs, metrics and checkpoints are kept statically for one model per JVM, so a JVM runs a
+     single run, SweepRunner runs several each in its own JVM. */
   public static void main(String[] args) {
     try {
+      long seed = 1234;
+      int n_runs = 1;
+      long n_ticks = 250;
+      String summaryFile = null;
+      String metricsFile = null;
+
+      for (int i = 0; i < args.length; i++) {
+        String option = args[i];
+        if (i + 1 >= args.length) {
+          throw new IllegalArgumentException("Missing value for " + option);
+        }
+        String value = args[++i];
+        switch (option) {
+          case "--seed":
+            seed = Long.parseLong(value);
+            break;
+          case "--ticks":
+            n_ticks = Long.parseLong(value);
+            break;
+          case "--runs":
+            n_runs = Integer.parseInt(value);
+            if (n_runs != 1) {
+              throw new IllegalArgumentException("Only one run per JVM is supported, got --runs "
+                  + value + ", use SweepRunner for several runs");
+            }
+            break;
+          case "--input":
+            int separator = value.indexOf('=');
+            if (separator <= 0) {
+              throw new IllegalArgumentException("Expected --input <name>=<value>, got " + value);
+            }
+            InputOverrides.set(value.substring(0, separator), value.substring(separator + 1));
+            break;
+          case "--summary":
+            summaryFile = value;
+            break;
+          case "--metrics":
+            metricsFile = value;
+            break;
+          case "--profile":
+            InputOverrides.set("profileTicks", "true");
+            System.setProperty(TickProfiler.pathProperty, value);
+            break;
+          case "--aggregates":
+            System.setProperty(AggregateOutput.folderProperty, value);
+            break;
+          case "--save-checkpoint":
+            System.setProperty(Checkpoint.saveProperty, value);
+            break;
+          case "--checkpoint-tick":
+            System.setProperty(Checkpoint.tickProperty, value);
+            break;
+          case "--restore":
+            System.setProperty(Checkpoint.restoreProperty, value);
+            break;
+          case "--reseed":
+            System.setProperty(Checkpoint.reseedProperty, value);
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown option " + option);
+        }
+      }
+
       RunnerBackend runnerBackend = RunnerBackend.create();
       ModelRunner modelRunner = runnerBackend.forModel(TradingModel.class);
 
-      long seed = 1234;   //((LocalModelRunner) modelRunner).rootBuiltConfig().getLong("seed");
-      int n_runs = 1;     //((LocalModelRunner) modelRunner).rootBuiltConfig().getInt("runs");
-      long n_ticks = 250;  //((LocalModelRunner) modelRunner).rootBuiltConfig().getLong("ticks");
-
       BatchDefinitionsBuilder runDefinitionBuilder =
           BatchDefinitionsBuilder.create()
               .forRuns(n_runs)
               .forTicks(n_ticks)
               .forSeeds(seed);
 
-
       modelRunner.forRunDefinitionBuilder(runDefinitionBuilder);
       modelRunner.run();
 
+      if (summaryFile != null) {
+        RunSummary.current().writeTo(Paths.get(summaryFile));
+      }
+      if (metricsFile != null) {
+        ModelMetrics.writeTo(Paths.get(metricsFile));
+      }
     } catch (Exception e) {
       e.printStackTrace();
+      // A sweep needs to know the run failed
+      System.exit(1);
     }
   }
-
-
-
 }
@@ -0,0 +1,77 @@
+import java.nio.file.Paths;
+import swarmModel.Globals;
+import swarmModel.InputOverrides;
+import swarmModel.kernel.ArrayMarket;
+
+public class MainKernel {
+
+  /* Runs the model on the array kernel instead of the SDK, for populations too large for agents.
+     Options are those of MainHeadless: --seed <seed>, --ticks <ticks>, --input <name>=<value>
+     (repeatable) for the populations and the other inputs, and --summary <file> to write the
+     summary statistics of the run once it is over. Prints the time taken and ticks per second. */
+  public static void main(String[] args) {
+    try {
+      long seed = 1234;
+      long n_ticks = 250;
+      String summaryFile = null;
+
+      for (int i = 0; i < args.length; i++) {
+        String option = args[i];
+        if (i + 1 >= args.length) {
+          throw new IllegalArgumentException("Missing value for " + option);
+        }
+        String value = args[++i];
+        switch (option) {
+          case "--seed":
+            seed = Long.parseLong(value);
+            break;
+          case "--ticks":
+            n_ticks = Long.parseLong(value);
+            break;
+          case "--input":
+            int separator = value.indexOf('=');
+            if (separator <= 0) {
+              throw new IllegalArgumentException("Expected --input <name>=<value>, got " + value);
+            }
+            InputOverrides.set(value.substring(0, separator), value.substring(separator + 1));
+            break;
+          case "--summary":
+            summaryFile = value;
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown option " + option);
+        }
+      }
+
+      long setupStart = System.nanoTime();
+      ArrayMarket market = run(seed, 0);
+      long runStart = System.nanoTime();
+      for (long tick = 0; tick < n_ticks; tick++) {
+        market.step(tick);
+      }
+      long runEnd = System.nanoTime();
+
+      double runSeconds = (runEnd - runStart) / 1e9;
+      System.out.printf("%d traders, setup %.2fs, %d ticks in %.2fs, %.2f ticks/s%n",
+          market.getTraders(), (runStart - setupStart) / 1e9, n_ticks, runSeconds,
+          n_ticks / runSeconds);
+      if (summaryFile != null) {
+        market.getSummary().writeTo(Paths.get(summaryFile));
+      }
+    } catch (Exception e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  // A market set up with the inputs given so far and run for the given number of ticks
+  static ArrayMarket run(long seed, long ticks) {
+    Globals globals = new Globals();
+    InputOverrides.applyTo(globals);
+    ArrayMarket market = new ArrayMarket(globals, seed);
+    for (long tick = 0; tick < ticks; tick++) {
+      market.step(tick);
+    }
+    return market;
+  }
+}
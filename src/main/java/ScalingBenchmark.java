@@ -0,0 +1,177 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import swarmModel.Globals;
+import swarmModel.ModelMetrics;
+import swarmModel.ModelMetrics.Hub;
+
+public class ScalingBenchmark {
+
+  /* Runs the model headless with its trader populations scaled from the Globals defaults, one run
+     at a time so runs do not compete for cores, and writes what each run cost to scaling.csv:
+     setup time, ticks per second, messages per tick, the time and messages of each hub per tick,
+     peak heap and GC time. Agent ticks per second relative to the smallest scale shows where the
+     model stops scaling linearly, and the hub whose time per tick grows fastest is reported as
+     the one saturating first. Exports are turned off so only the model itself is measured.
+
+     Usage: ScalingBenchmark [--scales 1,10,100] [--ticks <n>] [--seed <seed>] [--repeats <n>]
+                             [--out <folder>] [--timeout-minutes <n>] [--jvm-args "<args>"]
+                             [--classpath <path>] */
+  public static void main(String[] args) throws Exception {
+    List<Long> scales = Arrays.asList(1L, 10L, 100L);
+    long ticks = 100;
+    long seed = 1234;
+    int repeats = 1;
+    Path outputFolder = Paths.get("scaling-outputs");
+    long timeoutMinutes = 0;
+    List<String> jvmArgs = new ArrayList<>();
+    String classpath = System.getProperty("java.class.path");
+
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "--scales":
+          scales = new ArrayList<>();
+          for (String scale : args[++i].split(",")) {
+            scales.add(Long.parseLong(scale.trim()));
+          }
+          break;
+        case "--ticks":
+          ticks = Long.parseLong(args[++i]);
+          break;
+        case "--seed":
+          seed = Long.parseLong(args[++i]);
+          break;
+        case "--repeats":
+          repeats = Integer.parseInt(args[++i]);
+          break;
+        case "--out":
+          outputFolder = Paths.get(args[++i]);
+          break;
+        case "--timeout-minutes":
+          timeoutMinutes = Long.parseLong(args[++i]);
+          break;
+        case "--jvm-args":
+          jvmArgs.addAll(Arrays.asList(args[++i].trim().split("\\s+")));
+          break;
+        case "--classpath":
+          classpath = args[++i];
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option " + args[i]);
+      }
+    }
+    classpath = HeadlessRun.absoluteClasspath(classpath);
+    Files.createDirectories(outputFolder);
+
+    String[] metricColumns = ModelMetrics.columns();
+    List<String> header = new ArrayList<>(Arrays.asList("scale", "repeat", "traders", "status",
+        "wallSeconds"));
+    header.addAll(Arrays.asList(metricColumns));
+    header.addAll(Arrays.asList("traderTicksPerSecond", "scalingEfficiency"));
+
+    Globals defaults = new Globals();
+    Map<Long, Map<String, String>> firstRepeats = new LinkedHashMap<>();
+    double baseThroughput = Double.NaN;
+    try (BufferedWriter report = Files.newBufferedWriter(outputFolder.resolve("scaling.csv"),
+        StandardCharsets.UTF_8)) {
+      report.write(String.join(",", header));
+      report.newLine();
+      for (long scale : scales) {
+        Map<String, String> inputs = new LinkedHashMap<>();
+        inputs.put("nbNoiseTraders", Long.toString(defaults.nbNoiseTraders * scale));
+        inputs.put("nbMomentumTraders", Long.toString(defaults.nbMomentumTraders * scale));
+        inputs.put("nbFundamentalTraders", Long.toString(defaults.nbFundamentalTraders * scale));
+        inputs.put("nbRetailInvestors", Long.toString(defaults.nbRetailInvestors * scale));
+        inputs.put("nbHedgeFunds", Long.toString(defaults.nbHedgeFunds * scale));
+        long traders = 0;
+        for (String count : inputs.values()) {
+          traders += Long.parseLong(count);
+        }
+        inputs.put("aggregateOutput", "false");
+
+        for (int repeat = 0; repeat < repeats; repeat++) {
+          HeadlessRun run = new HeadlessRun(
+              outputFolder.resolve(String.format("scale-%d-%d", scale, repeat)), classpath,
+              jvmArgs, seed, ticks, inputs);
+          Path metricsFile = run.output("--metrics", "metrics.properties");
+          Files.deleteIfExists(metricsFile);
+          System.out.println("Running " + scale + "x with " + traders + " traders");
+          long start = System.nanoTime();
+          String status = run.run(false, timeoutMinutes);
+          double wallSeconds = (System.nanoTime() - start) / 1e9;
+
+          Map<String, String> metrics = new LinkedHashMap<>();
+          if (status.equals("ok") && Files.exists(metricsFile)) {
+            metrics = HeadlessRun.read(metricsFile, metricColumns);
+          } else if (status.equals("ok")) {
+            status = "failed:no metrics";
+          }
+          double throughput = parse(metrics.get("ticksPerSecond")) * traders;
+          if (Double.isNaN(baseThroughput) && status.equals("ok")) {
+            baseThroughput = throughput;
+          }
+
+          List<String> row = new ArrayList<>(Arrays.asList(Long.toString(scale),
+              Integer.toString(repeat), Long.toString(traders), status,
+              String.format("%.3f", wallSeconds)));
+          for (String column : metricColumns) {
+            row.add(metrics.getOrDefault(column, ""));
+          }
+          row.add(status.equals("ok") ? Double.toString(throughput) : "");
+          row.add(status.equals("ok") ? Double.toString(throughput / baseThroughput) : "");
+          report.write(String.join(",", row));
+          report.newLine();
+          report.flush();
+          if (repeat == 0 && status.equals("ok")) {
+            firstRepeats.put(scale, metrics);
+          }
+        }
+      }
+    }
+    reportHubs(firstRepeats);
+  }
+
+  // Compares the time per tick of each hub between the smallest and largest scale that ran
+  private static void reportHubs(Map<Long, Map<String, String>> runs) {
+    if (runs.size() < 2) {
+      return;
+    }
+    List<Long> scales = new ArrayList<>(runs.keySet());
+    long smallest = scales.get(0);
+    long largest = scales.get(scales.size() - 1);
+    Hub saturating = null;
+    double fastestGrowth = 0;
+    for (Hub hub : Hub.values()) {
+      double before = parse(runs.get(smallest).get(hub.columnPrefix + "MillisPerTick"));
+      double after = parse(runs.get(largest).get(hub.columnPrefix + "MillisPerTick"));
+      if (before > 0 && after > 0) {
+        double growth = after / before;
+        System.out.printf("%s: %.3f ms per tick at %dx, %.3f ms at %dx, %.1f times slower%n",
+            hub.columnPrefix, before, smallest, after, largest, growth);
+        if (growth > fastestGrowth) {
+          fastestGrowth = growth;
+          saturating = hub;
+        }
+      } else {
+        System.out.println(hub.columnPrefix + ": no time recorded, the hub was not active");
+      }
+    }
+    if (saturating != null) {
+      System.out.printf("%s saturates first, its time per tick grew %.1f times for a %.0f times "
+          + "larger population%n", saturating.columnPrefix, fastestGrowth,
+          (double) largest / smallest);
+    }
+  }
+
+  private static double parse(String value) {
+    return value == null || value.isEmpty() ? Double.NaN : Double.parseDouble(value);
+  }
+}
@@ -0,0 +1,448 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import swarmModel.AggregateOutput;
+import swarmModel.Ensemble;
+import swarmModel.InputOverrides;
+import swarmModel.RunSummary;
+import swarmModel.utils.RecordFile;
+
+public class SweepRunner {
+
+  /* Runs every configuration of a parameter sweep through MainHeadless, each in its own JVM, with
+     at most --workers runs at a time. The summary of each run is appended to summary.csv in the
+     output folder as soon as it finishes, and runs already in that file are skipped, so an
+     interrupted sweep can be restarted with the same arguments.
+
+     The sweep file is either a grid, where every combination of the values is run:
+       seeds = 1234, 1235
+       ticks = 250
+       lambda = 5, 10, 20
+       noiseActivity = 0.1:0.5:0.1
+     or, when it ends in .csv, a list with one run per row and the same names in the header.
+
+     With --ensemble the per tick aggregates of each run are merged into an Ensemble of the runs
+     of its configuration as soon as it finishes, and deleted. The mean, standard deviation and
+     quantiles of each tick go to ensemble.csv once the sweep is over. The ensembles are saved
+     after every run so a restarted sweep carries on with them.
+
+     Usage: SweepRunner <sweep file> [--out <folder>] [--workers <n>] [--no-export] [--ensemble]
+                        [--timeout-minutes <n>] [--jvm-args "<args>"] [--classpath <path>]
+     The model classes and their dependencies must be on the classpath, which is passed on to the
+     runs unless --classpath is given. */
+  public static void main(String[] args) throws Exception {
+    if (args.length == 0) {
+      System.err.println("Usage: SweepRunner <sweep file> [--out <folder>] [--workers <n>] "
+          + "[--no-export] [--ensemble] [--timeout-minutes <n>] [--jvm-args \"<args>\"] "
+          + "[--classpath <path>]");
+      System.exit(2);
+    }
+    Path sweepFile = Paths.get(args[0]);
+    Path outputFolder = Paths.get("sweep-outputs");
+    int workers = Runtime.getRuntime().availableProcessors();
+    boolean export = true;
+    boolean ensemble = false;
+    long timeoutMinutes = 0;
+    List<String> jvmArgs = new ArrayList<>();
+    String classpath = System.getProperty("java.class.path");
+
+    for (int i = 1; i < args.length; i++) {
+      switch (args[i]) {
+        case "--out":
+          outputFolder = Paths.get(args[++i]);
+          break;
+        case "--workers":
+          workers = Integer.parseInt(args[++i]);
+          break;
+        case "--no-export":
+          export = false;
+          break;
+        case "--ensemble":
+          ensemble = true;
+          break;
+        case "--timeout-minutes":
+          timeoutMinutes = Long.parseLong(args[++i]);
+          break;
+        case "--jvm-args":
+          jvmArgs.addAll(Arrays.asList(args[++i].trim().split("\\s+")));
+          break;
+        case "--classpath":
+          classpath = args[++i];
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option " + args[i]);
+      }
+    }
+
+    List<RunConfig> runs = sweepFile.toString().endsWith(".csv")
+        ? readList(sweepFile) : readGrid(sweepFile);
+    List<String> inputNames = runs.isEmpty()
+        ? new ArrayList<>() : new ArrayList<>(runs.get(0).inputs.keySet());
+    // Fail before starting any run if an input does not exist or a value does not parse
+    for (RunConfig run : runs) {
+      for (Map.Entry<String, String> input : run.inputs.entrySet()) {
+        InputOverrides.check(input.getKey(), input.getValue());
+      }
+    }
+
+    Files.createDirectories(outputFolder);
+    Path summaryFile = outputFolder.resolve("summary.csv");
+    String header = header(inputNames);
+    Set<Integer> finishedRuns = finishedRuns(summaryFile, header);
+    BufferedWriter summary = Files.newBufferedWriter(summaryFile, StandardCharsets.UTF_8,
+        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    if (Files.size(summaryFile) == 0) {
+      summary.write(header);
+      summary.newLine();
+      summary.flush();
+    }
+
+    SweepRunner runner = new SweepRunner(outputFolder, HeadlessRun.absoluteClasspath(classpath),
+        jvmArgs, export,
+        timeoutMinutes, summary, inputNames);
+    if (ensemble) {
+      runner.ensembles = readEnsembles(outputFolder.resolve("ensemble.state"));
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(workers);
+    int scheduled = 0;
+    for (RunConfig run : runs) {
+      if (!finishedRuns.contains(run.id)) {
+        pool.submit(() -> runner.execute(run));
+        scheduled++;
+      }
+    }
+    System.out.println("Running " + scheduled + " of " + runs.size() + " configurations on "
+        + workers + " workers, " + finishedRuns.size() + " already finished");
+    pool.shutdown();
+    pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    summary.close();
+    if (ensemble) {
+      runner.writeEnsembles(outputFolder.resolve("ensemble.csv"));
+    }
+    System.out.println("Sweep finished, " + runner.failures + " runs failed");
+    System.exit(runner.failures == 0 ? 0 : 1);
+  }
+
+  private final Path outputFolder;
+  private final String classpath;
+  private final List<String> jvmArgs;
+  private final boolean export;
+  private final long timeoutMinutes;
+  private final BufferedWriter summary;
+  private final List<String> inputNames;
+  private int failures = 0;
+  // Null when the runs are not merged
+  private EnsembleState ensembles;
+
+  private SweepRunner(Path outputFolder, String classpath, List<String> jvmArgs, boolean export,
+      long timeoutMinutes, BufferedWriter summary, List<String> inputNames) {
+    this.outputFolder = outputFolder;
+    this.classpath = classpath;
+    this.jvmArgs = jvmArgs;
+    this.export = export;
+    this.timeoutMinutes = timeoutMinutes;
+    this.summary = summary;
+    this.inputNames = inputNames;
+  }
+
+  private static class EnsembleState implements Serializable {
+
+    // Keyed by the ticks and input values of the configuration
+    final Map<String, Ensemble> byConfiguration = new LinkedHashMap<>();
+    final Set<Integer> mergedRuns = new HashSet<>();
+  }
+
+  private static class RunConfig {
+
+    final int id;
+    final long seed;
+    final long ticks;
+    final Map<String, String> inputs;
+
+    RunConfig(int id, long seed, long ticks, Map<String, String> inputs) {
+      this.id = id;
+      this.seed = seed;
+      this.ticks = ticks;
+      this.inputs = inputs;
+    }
+  }
+
+  private void execute(RunConfig run) {
+    long start = System.nanoTime();
+    String status;
+    Map<String, String> results = new LinkedHashMap<>();
+    try {
+      HeadlessRun headlessRun = new HeadlessRun(
+          outputFolder.resolve(String.format("run-%05d", run.id)), classpath, jvmArgs, run.seed,
+          run.ticks, run.inputs);
+      Path summaryFile = headlessRun.output("--summary", "summary.properties");
+      Path aggregatesFile = null;
+      if (ensembles != null) {
+        aggregatesFile = headlessRun.output("--aggregates", "aggregates")
+            .resolve(AggregateOutput.aggregatesFile);
+        Files.deleteIfExists(aggregatesFile);
+      }
+      Files.deleteIfExists(summaryFile);
+      status = headlessRun.run(export, timeoutMinutes);
+      if (status.equals("ok")) {
+        if (!Files.exists(summaryFile)) {
+          status = "failed:no summary";
+        } else if (ensembles != null && !Files.exists(aggregatesFile)) {
+          status = "failed:no aggregates";
+        } else {
+          results = HeadlessRun.read(summaryFile, RunSummary.columns);
+        }
+      }
+      if (status.equals("ok") && ensembles != null) {
+        merge(run, RecordFile.read(aggregatesFile));
+        Files.delete(aggregatesFile);
+      }
+    } catch (IOException | RuntimeException e) {
+      status = "error:" + e;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      status = "interrupted";
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    writeRow(run, status, seconds, results);
+  }
+
+  /* The merged runs are saved with the ensembles, so a run which was merged but not yet recorded
+     as ok when the sweep was interrupted is not merged again once it has been run again */
+  private synchronized void merge(RunConfig run, RecordFile.Contents aggregates)
+      throws IOException {
+    if (!ensembles.mergedRuns.add(run.id)) {
+      return;
+    }
+    ensembles.byConfiguration
+        .computeIfAbsent(configuration(run), key -> new Ensemble(Ensemble.defaultColumns))
+        .addRun(aggregates);
+    Path stateFile = outputFolder.resolve("ensemble.state");
+    Path partFile = outputFolder.resolve("ensemble.state.part");
+    try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(partFile))) {
+      out.writeObject(ensembles);
+    }
+    Files.move(partFile, stateFile, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private String configuration(RunConfig run) {
+    List<String> values = new ArrayList<>();
+    values.add(Long.toString(run.ticks));
+    for (String name : inputNames) {
+      values.add(run.inputs.get(name));
+    }
+    return String.join(",", values);
+  }
+
+  private static EnsembleState readEnsembles(Path stateFile) throws IOException {
+    if (!Files.exists(stateFile)) {
+      return new EnsembleState();
+    }
+    try (ObjectInputStream in = new ObjectInputStream(Files.newInputStream(stateFile))) {
+      return (EnsembleState) in.readObject();
+    } catch (ClassNotFoundException e) {
+      throw new IOException("Cannot read the ensembles in " + stateFile, e);
+    }
+  }
+
+  private void writeEnsembles(Path file) throws IOException {
+    try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      List<String> columns = new ArrayList<>();
+      columns.add("ticks");
+      columns.addAll(inputNames);
+      writer.write(String.join(",", columns) + "," + Ensemble.header());
+      writer.newLine();
+      for (Map.Entry<String, Ensemble> ensemble : ensembles.byConfiguration.entrySet()) {
+        ensemble.getValue().writeRows(writer, ensemble.getKey() + ",");
+      }
+    }
+  }
+
+  private synchronized void writeRow(RunConfig run, String status, double seconds,
+      Map<String, String> results) {
+    List<String> row = new ArrayList<>();
+    row.add(Integer.toString(run.id));
+    row.add(Long.toString(run.seed));
+    row.add(Long.toString(run.ticks));
+    for (String name : inputNames) {
+      row.add(run.inputs.get(name));
+    }
+    row.add(status.replace(',', ' '));
+    row.add(String.format("%.3f", seconds));
+    for (String column : RunSummary.columns) {
+      row.add(results.getOrDefault(column, ""));
+    }
+    if (!status.equals("ok")) {
+      failures++;
+      System.err.println("Run " + run.id + " " + status);
+    }
+    try {
+      summary.write(String.join(",", row));
+      summary.newLine();
+      summary.flush();
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot write the sweep summary", e);
+    }
+  }
+
+  private static String header(List<String> inputNames) {
+    List<String> columns = new ArrayList<>(Arrays.asList("run", "seed", "ticks"));
+    columns.addAll(inputNames);
+    columns.addAll(Arrays.asList("status", "seconds"));
+    columns.addAll(Arrays.asList(RunSummary.columns));
+    return String.join(",", columns);
+  }
+
+  // Runs recorded as ok by a previous attempt at the same sweep
+  private static Set<Integer> finishedRuns(Path summaryFile, String header) throws IOException {
+    Set<Integer> finished = new HashSet<>();
+    if (!Files.exists(summaryFile) || Files.size(summaryFile) == 0) {
+      return finished;
+    }
+    List<String> lines = Files.readAllLines(summaryFile, StandardCharsets.UTF_8);
+    if (!lines.get(0).equals(header)) {
+      throw new IllegalStateException(
+          summaryFile + " belongs to a different sweep, use another output folder");
+    }
+    int statusColumn = Arrays.asList(header.split(",")).indexOf("status");
+    for (String line : lines.subList(1, lines.size())) {
+      String[] fields = line.split(",", -1);
+      if (fields.length > statusColumn && fields[statusColumn].equals("ok")) {
+        finished.add(Integer.parseInt(fields[0]));
+      }
+    }
+    return finished;
+  }
+
+  private static List<RunConfig> readGrid(Path file) throws IOException {
+    List<Long> seeds = new ArrayList<>();
+    seeds.add(1234L);
+    long ticks = 250;
+    Map<String, List<String>> grid = new LinkedHashMap<>();
+    for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      int separator = line.indexOf('=');
+      if (separator <= 0) {
+        throw new IllegalArgumentException("Expected <name> = <values>, got " + line);
+      }
+      String name = line.substring(0, separator).trim();
+      List<String> values = expand(line.substring(separator + 1));
+      if (name.equals("seeds")) {
+        seeds.clear();
+        for (String value : values) {
+          seeds.add(Long.parseLong(value));
+        }
+      } else if (name.equals("ticks")) {
+        ticks = Long.parseLong(values.get(0));
+      } else {
+        grid.put(name, values);
+      }
+    }
+
+    List<Map<String, String>> combinations = new ArrayList<>();
+    combinations.add(new LinkedHashMap<>());
+    for (Map.Entry<String, List<String>> axis : grid.entrySet()) {
+      List<Map<String, String>> extended = new ArrayList<>();
+      for (Map<String, String> combination : combinations) {
+        for (String value : axis.getValue()) {
+          Map<String, String> next = new LinkedHashMap<>(combination);
+          next.put(axis.getKey(), value);
+          extended.add(next);
+        }
+      }
+      combinations = extended;
+    }
+
+    List<RunConfig> runs = new ArrayList<>();
+    for (Map<String, String> combination : combinations) {
+      for (long seed : seeds) {
+        runs.add(new RunConfig(runs.size(), seed, ticks, combination));
+      }
+    }
+    return runs;
+  }
+
+  // Values are comma separated, start:end:step gives every step from start up to end inclusive
+  private static List<String> expand(String values) {
+    List<String> expanded = new ArrayList<>();
+    for (String value : values.split(",")) {
+      value = value.trim();
+      String[] range = value.split(":");
+      if (range.length == 3) {
+        double start = Double.parseDouble(range[0]);
+        double end = Double.parseDouble(range[1]);
+        double step = Double.parseDouble(range[2]);
+        if (step <= 0) {
+          throw new IllegalArgumentException("Range step must be positive in " + value);
+        }
+        boolean integral = !value.contains(".");
+        long nbSteps = (long) Math.floor((end - start) / step + 1e-9);
+        for (long i = 0; i <= nbSteps; i++) {
+          double point = start + i * step;
+          // Rounded so 0.1:0.5:0.1 gives 0.3 rather than 0.30000000000000004
+          expanded.add(integral ? Long.toString(Math.round(point))
+              : Double.toString(Math.round(point * 1e10) / 1e10));
+        }
+      } else if (!value.isEmpty()) {
+        expanded.add(value);
+      }
+    }
+    return expanded;
+  }
+
+  // The header names the columns, seed and ticks are optional and every other column is an input
+  private static List<RunConfig> readList(Path file) throws IOException {
+    List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+    if (lines.isEmpty()) {
+      return new ArrayList<>();
+    }
+    String[] names = lines.get(0).split(",");
+    List<RunConfig> runs = new ArrayList<>();
+    for (String line : lines.subList(1, lines.size())) {
+      if (line.trim().isEmpty()) {
+        continue;
+      }
+      String[] values = line.split(",", -1);
+      if (values.length != names.length) {
+        throw new IllegalArgumentException("Expected " + names.length + " values in " + line);
+      }
+      long seed = 1234;
+      long ticks = 250;
+      Map<String, String> inputs = new LinkedHashMap<>();
+      for (int i = 0; i < names.length; i++) {
+        String name = names[i].trim();
+        if (name.equals("seed")) {
+          seed = Long.parseLong(values[i].trim());
+        } else if (name.equals("ticks")) {
+          ticks = Long.parseLong(values[i].trim());
+        } else {
+          inputs.put(name, values[i].trim());
+        }
+      }
+      runs.add(new RunConfig(runs.size(), seed, ticks, inputs));
+    }
+    return runs;
+  }
+}
@@ -0,0 +1,286 @@
+package swarmModel;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import swarmModel.traders.BaseTrader;
+import swarmModel.traders.FundamentalTrader;
+import swarmModel.traders.HedgeFund;
+import swarmModel.traders.MarketMaker;
+import swarmModel.traders.MomentumTrader;
+import swarmModel.traders.NoiseTrader;
+import swarmModel.traders.RetailInvestor;
+import swarmModel.utils.MarketWealth;
+import swarmModel.utils.RecordFile;
+
+/* Per tick aggregates of the market, written as one fixed width record per tick instead of
+   exporting every agent: the price, the orders, shorts and options of the tick, the best prices
+   and depth of the order book when there is one, and for each trader type its count, shares,
+   capital, options and the mean and change of its traders' portfolio value, read from the totals
+   the traders keep in Globals.marketWealth. The standard deviation, minimum and maximum of the
+   portfolio values need every trader to be valued, so they are only written every given number of
+   ticks, NaN on the others. Optionally a uniform sample of the traders is also written, one record
+   per sampled trader and tick. The sample is drawn from a hash of the agent ids, so the same
+   traders are followed over the whole run. Both files are
+   RecordFiles in the folder given by the swarmModel.aggregate-output system property, by default
+   next to the SDK exports. Counters are static, as for ModelMetrics. */
+public final class AggregateOutput {
+
+  public static final String folderProperty = "swarmModel.aggregate-output";
+  private static final String defaultFolder = "outputs";
+  public static final String aggregatesFile = "aggregates.bin";
+  public static final String sampleFile = "agent-sample.bin";
+
+  private static final String[] marketColumns = {"tick", "price", "priceChange", "interestRate",
+      "volatility", "buys", "sells", "shorts", "putOptionsBought", "callOptionsBought", "bestBid",
+      "bestAsk", "bidDepth", "askDepth"};
+  private static final String[] wealthColumns = {"Count", "Shares", "Capital", "OptionValue",
+      "MeanWealth", "Pnl", "StdWealth", "MinWealth", "MaxWealth"};
+  private static final String[] sampleColumns = {"tick", "agentId", "agentType", "capital",
+      "shares", "portfolio"};
+
+  // The agentType column of the sample is the index of the type in this list
+  private static final List<Class<? extends BaseTrader>> traderTypes = new ArrayList<>();
+  private static final Wealth[] wealth;
+
+  private static final DoubleAdder buys = new DoubleAdder();
+  private static final DoubleAdder sells = new DoubleAdder();
+  private static final DoubleAdder shorts = new DoubleAdder();
+  private static final LongAdder putOptionsBought = new LongAdder();
+  private static final LongAdder callOptionsBought = new LongAdder();
+
+  private static volatile RecordFile aggregates;
+  private static volatile RecordFile sample;
+  private static volatile double sampleFraction = 0;
+  private static volatile long distributionInterval = 1;
+  // Total portfolio value of each type at the end of the last tick written, NaN before the first
+  private static final double[] previousWealth;
+
+  static {
+    traderTypes.add(NoiseTrader.class);
+    traderTypes.add(MomentumTrader.class);
+    traderTypes.add(FundamentalTrader.class);
+    traderTypes.add(RetailInvestor.class);
+    traderTypes.add(HedgeFund.class);
+    traderTypes.add(MarketMaker.class);
+    wealth = new Wealth[traderTypes.size()];
+    previousWealth = new double[traderTypes.size()];
+    for (int i = 0; i < wealth.length; i++) {
+      wealth[i] = new Wealth();
+    }
+  }
+
+  private AggregateOutput() {
+  }
+
+  private static final class Wealth {
+
+    final LongAdder count = new LongAdder();
+    final DoubleAdder sum = new DoubleAdder();
+    final DoubleAdder sumOfSquares = new DoubleAdder();
+    final DoubleAccumulator min = new DoubleAccumulator(Math::min, Double.POSITIVE_INFINITY);
+    final DoubleAccumulator max = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+
+    void add(double value) {
+      count.increment();
+      sum.add(value);
+      sumOfSquares.add(value * value);
+      min.accumulate(value);
+      max.accumulate(value);
+    }
+  }
+
+  public static int traderTypes() {
+    return traderTypes.size();
+  }
+
+  // Index of the type in the output, -1 for a type that is not written
+  public static int traderType(Class<?> type) {
+    return traderTypes.indexOf(type);
+  }
+
+  public static String[] columns() {
+    List<String> columns = new ArrayList<>();
+    for (String column : marketColumns) {
+      columns.add(column);
+    }
+    for (Class<? extends BaseTrader> type : traderTypes) {
+      String prefix = Character.toLowerCase(type.getSimpleName().charAt(0))
+          + type.getSimpleName().substring(1);
+      for (String column : wealthColumns) {
+        columns.add(prefix + column);
+      }
+    }
+    return columns.toArray(new String[0]);
+  }
+
+  // The wealth distribution is written every distributionInterval ticks, never when zero
+  public static synchronized void open(double agentSampleFraction, long distributionInterval) {
+    close();
+    resetCounters();
+    Path folder = Paths.get(System.getProperty(folderProperty, defaultFolder));
+    try {
+      Files.createDirectories(folder);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot create the aggregate output folder", e);
+    }
+    sampleFraction = agentSampleFraction;
+    AggregateOutput.distributionInterval = distributionInterval;
+    aggregates = new RecordFile(folder.resolve(aggregatesFile), columns());
+    if (agentSampleFraction > 0) {
+      sample = new RecordFile(folder.resolve(sampleFile), sampleColumns);
+    }
+  }
+
+  public static void addBuys(double volume) {
+    if (aggregates != null) {
+      buys.add(volume);
+    }
+  }
+
+  public static void addSells(double volume) {
+    if (aggregates != null) {
+      sells.add(volume);
+    }
+  }
+
+  public static void addShorts(double volume) {
+    if (aggregates != null) {
+      shorts.add(volume);
+    }
+  }
+
+  public static void putOptionBought() {
+    if (aggregates != null) {
+      putOptionsBought.increment();
+    }
+  }
+
+  public static void callOptionBought() {
+    if (aggregates != null) {
+      callOptionsBought.increment();
+    }
+  }
+
+  // Whether the traders have to be visited at the end of the tick for the output
+  public static boolean recordsTraders(long tick) {
+    return aggregates != null && (sample != null || isDistributionTick(tick));
+  }
+
+  private static boolean isDistributionTick(long tick) {
+    long interval = distributionInterval;
+    return interval > 0 && tick % interval == 0;
+  }
+
+  // Called once per trader on the ticks recordsTraders is true, after its trades are settled
+  public static void recordTrader(BaseTrader trader) {
+    if (aggregates == null) {
+      return;
+    }
+    int type = traderTypes.indexOf(trader.getClass());
+    if (type < 0) {
+      return;
+    }
+    long tick = trader.tick();
+    if (isDistributionTick(tick)) {
+      wealth[type].add(trader.getPortfolio());
+    }
+    RecordFile sampleRecords = sample;
+    if (sampleRecords != null && isSampled(trader.getID())) {
+      sampleRecords.append(new double[] {tick, trader.getID(), type,
+          trader.getCapital(), trader.shares, trader.getPortfolio()});
+    }
+  }
+
+  // Writes the record of the tick and resets the counters
+  public static synchronized void endTick(long tick, Globals globals) {
+    if (aggregates == null) {
+      return;
+    }
+    double[] values = new double[aggregates.getColumns()];
+    int column = 0;
+    values[column++] = tick;
+    values[column++] = globals.marketPrice;
+    values[column++] = globals.priceChange;
+    values[column++] = globals.interestRate;
+    values[column++] = globals.volatility;
+    values[column++] = buys.sumThenReset();
+    values[column++] = sells.sumThenReset();
+    values[column++] = shorts.sumThenReset();
+    values[column++] = putOptionsBought.sumThenReset();
+    values[column++] = callOptionsBought.sumThenReset();
+    values[column++] = globals.limitOrderBook ? globals.bestBid : Double.NaN;
+    values[column++] = globals.limitOrderBook ? globals.bestAsk : Double.NaN;
+    values[column++] = globals.limitOrderBook ? globals.bidDepth : Double.NaN;
+    values[column++] = globals.limitOrderBook ? globals.askDepth : Double.NaN;
+    MarketWealth totals = globals.marketWealth;
+    double price = globals.marketPrice;
+    for (int type = 0; type < wealth.length; type++) {
+      long traders = totals.getTraders(type);
+      double optionValue = totals.getOptionValue(type, price, globals.optionShareNumber);
+      double typeWealth = totals.getShares(type) * price
+          + totals.getCapital(type, globals.interestIndex) + optionValue;
+      values[column++] = traders;
+      values[column++] = totals.getShares(type);
+      values[column++] = totals.getCapital(type, globals.interestIndex);
+      values[column++] = optionValue;
+      // A type without traders gives NaN statistics
+      values[column++] = typeWealth / traders;
+      values[column++] = typeWealth - previousWealth[type];
+      previousWealth[type] = typeWealth;
+
+      Wealth distribution = wealth[type];
+      long count = distribution.count.sumThenReset();
+      double mean = distribution.sum.sumThenReset() / count;
+      double meanOfSquares = distribution.sumOfSquares.sumThenReset() / count;
+      values[column++] = Math.sqrt(Math.max(meanOfSquares - mean * mean, 0));
+      values[column++] = count == 0 ? Double.NaN : distribution.min.getThenReset();
+      values[column++] = count == 0 ? Double.NaN : distribution.max.getThenReset();
+    }
+    aggregates.append(values);
+  }
+
+  public static synchronized void close() {
+    if (aggregates != null) {
+      aggregates.close();
+      aggregates = null;
+    }
+    if (sample != null) {
+      sample.close();
+      sample = null;
+    }
+  }
+
+  private static void resetCounters() {
+    buys.reset();
+    sells.reset();
+    shorts.reset();
+    putOptionsBought.reset();
+    callOptionsBought.reset();
+    Arrays.fill(previousWealth, Double.NaN);
+    for (Wealth typeWealth : wealth) {
+      typeWealth.count.reset();
+      typeWealth.sum.reset();
+      typeWealth.sumOfSquares.reset();
+      typeWealth.min.reset();
+      typeWealth.max.reset();
+    }
+  }
+
+  // Mixes the id into a uniform number in [0, 1), the SplitMix64 finalizer
+  private static boolean isSampled(long id) {
+    long z = id + 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    z = z ^ (z >>> 31);
+    return (z >>> 11) * 0x1.0p-53 < sampleFraction;
+  }
+}
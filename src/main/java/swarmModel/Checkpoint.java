@@ -0,0 +1,290 @@
+package swarmModel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import simudyne.core.annotations.Constant;
+import simudyne.core.annotations.Input;
+
+/* Snapshot of a run at the end of a tick, from which other runs carry on instead of simulating the
+   same first ticks again. It holds the globals, with the price and demand history and the model's
+   random stream, the summary of the run so far and the state of every agent, which each agent
+   writes itself. The file is gzipped binary. Checkpoints are written and read by the model when
+   the system properties below are set: save and tick to write one at the end of a model tick,
+   restore to start from one, and reseed for the restored run to draw new random streams from its
+   own seed, so continuations with the same inputs do not all take the same path.
+
+   A restored run keeps the inputs it was given where they differ from those the checkpointed run
+   started with, all other inputs take their value at the checkpoint. Constants, populations among
+   them, cannot change. Ticks carry on from the checkpoint's, see Globals.firstTick. Only one model
+   is run per JVM, so as for ModelMetrics the checkpoint in progress is kept statically. */
+public final class Checkpoint {
+
+  public static final String saveProperty = "swarmModel.checkpoint.save";
+  public static final String tickProperty = "swarmModel.checkpoint.tick";
+  public static final String restoreProperty = "swarmModel.checkpoint.restore";
+  public static final String reseedProperty = "swarmModel.checkpoint.reseed";
+
+  private static final int magic = 0x53574350;
+  private static final int version = 8;
+
+  /* Rebuilt from the opinion links on the first step, added up again by the agents as they are
+     restored, and set from the checkpoint's tick */
+  private static final List<String> notSaved = Arrays.asList("opinionNetwork", "firstTick",
+      "marketWealth");
+
+  // Implemented by every agent of the model
+  public interface AgentState {
+
+    void writeState(DataOutput out) throws IOException;
+
+    void readState(DataInput in) throws IOException;
+  }
+
+  private static final class AgentRecord {
+
+    final String type;
+    final byte[] state;
+
+    AgentRecord(String type, byte[] state) {
+      this.type = type;
+      this.state = state;
+    }
+  }
+
+  private static final Map<Long, AgentRecord> agents = new ConcurrentHashMap<>();
+  private static volatile Map<String, Object> initialInputs = Collections.emptyMap();
+  private static volatile Path saveFile;
+  private static volatile long saveTick = -1;
+  private static volatile boolean restoring = false;
+  private static volatile boolean reseed = false;
+
+  private Checkpoint() {
+  }
+
+  /* Called by the model's setup once the inputs of the run are set, restores the globals from the
+     checkpoint if there is one. The agents are restored on the first step, see restore. */
+  public static void setup(Globals globals) {
+    agents.clear();
+    initialInputs = values(globals, true);
+    saveFile = null;
+    saveTick = -1;
+    String save = System.getProperty(saveProperty);
+    if (save != null) {
+      String tick = System.getProperty(tickProperty);
+      if (tick == null) {
+        throw new IllegalArgumentException(saveProperty + " is set without " + tickProperty);
+      }
+      saveFile = Paths.get(save);
+      saveTick = Long.parseLong(tick.trim());
+    }
+    reseed = Boolean.getBoolean(reseedProperty);
+    String restore = System.getProperty(restoreProperty);
+    restoring = restore != null;
+    if (restoring) {
+      read(Paths.get(restore), globals);
+    }
+  }
+
+  public static boolean isRestoring() {
+    return restoring;
+  }
+
+  // True if the restored run draws new random streams instead of carrying on with the saved ones
+  public static boolean isReseeded() {
+    return restoring && reseed;
+  }
+
+  // Model tick at the end of which a checkpoint is written, -1 if none is
+  public static long getSaveTick() {
+    return saveTick;
+  }
+
+  public static void save(long id, AgentState agent) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      agent.writeState(out);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    agents.put(id, new AgentRecord(agent.getClass().getName(), bytes.toByteArray()));
+  }
+
+  public static void restore(long id, AgentState agent) {
+    AgentRecord record = agents.remove(id);
+    if (record == null || !record.type.equals(agent.getClass().getName())) {
+      throw new IllegalStateException(
+          "Checkpoint has no " + agent.getClass().getSimpleName() + " with id " + id);
+    }
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.state))) {
+      agent.readState(in);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // Called once every agent has been restored
+  public static void restored() {
+    if (!agents.isEmpty()) {
+      throw new IllegalStateException(
+          agents.size() + " agents of the checkpoint are not in this run");
+    }
+    restoring = false;
+  }
+
+  // Writes the checkpoint once every agent has saved its state on the given tick
+  public static void write(long tick, Globals globals) {
+    try {
+      if (saveFile.getParent() != null) {
+        Files.createDirectories(saveFile.getParent());
+      }
+      try (ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(saveFile))))) {
+        out.writeInt(magic);
+        out.writeInt(version);
+        out.writeLong(tick);
+        out.writeObject(new LinkedHashMap<>(initialInputs));
+        out.writeObject(values(globals, false));
+        out.writeObject(RunSummary.current());
+        out.writeInt(agents.size());
+        for (Map.Entry<Long, AgentRecord> agent : new TreeMap<>(agents).entrySet()) {
+          out.writeLong(agent.getKey());
+          out.writeUTF(agent.getValue().type);
+          out.writeInt(agent.getValue().state.length);
+          out.write(agent.getValue().state);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot write checkpoint " + saveFile, e);
+    } finally {
+      agents.clear();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void read(Path file, Globals globals) {
+    try (ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(
+        new BufferedInputStream(Files.newInputStream(file))))) {
+      if (in.readInt() != magic || in.readInt() != version) {
+        throw new IOException(file + " is not a checkpoint of this version of the model");
+      }
+      long tick = in.readLong();
+      Map<String, Object> checkpointInputs = (Map<String, Object>) in.readObject();
+      Map<String, Object> state = (Map<String, Object>) in.readObject();
+      RunSummary summary = (RunSummary) in.readObject();
+      int nbAgents = in.readInt();
+      for (int i = 0; i < nbAgents; i++) {
+        long id = in.readLong();
+        String type = in.readUTF();
+        byte[] agentState = new byte[in.readInt()];
+        in.readFully(agentState);
+        agents.put(id, new AgentRecord(type, agentState));
+      }
+      apply(globals, checkpointInputs, state);
+      globals.firstTick = tick + 1;
+      RunSummary.resume(summary);
+    } catch (IOException | ClassNotFoundException e) {
+      throw new IllegalStateException("Cannot restore checkpoint " + file, e);
+    }
+  }
+
+  private static void apply(Globals globals, Map<String, Object> checkpointInputs,
+      Map<String, Object> state) {
+    for (Field field : fields()) {
+      String name = field.getName();
+      if (!state.containsKey(name)) {
+        continue;
+      }
+      try {
+        Object given = field.get(globals);
+        boolean changed = field.isAnnotationPresent(Input.class)
+            && !given.equals(checkpointInputs.get(name));
+        boolean redrawn = reseed && (name.equals("streamSeed") || name.equals("modelRandom"));
+        if (field.isAnnotationPresent(Constant.class)) {
+          if (!given.equals(state.get(name))) {
+            throw new IllegalArgumentException("Constant " + name + " is " + given
+                + " but was " + state.get(name) + " in the checkpointed run");
+          }
+        } else if (!changed && !redrawn) {
+          field.set(globals, state.get(name));
+        }
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException("Cannot restore " + name, e);
+      }
+    }
+  }
+
+  // Values of the inputs and constants only, or of everything saved
+  private static Map<String, Object> values(Globals globals, boolean inputsOnly) {
+    Map<String, Object> values = new LinkedHashMap<>();
+    for (Field field : fields()) {
+      if (inputsOnly && !field.isAnnotationPresent(Input.class)
+          && !field.isAnnotationPresent(Constant.class)) {
+        continue;
+      }
+      try {
+        values.put(field.getName(), field.get(globals));
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException("Cannot save " + field.getName(), e);
+      }
+    }
+    return values;
+  }
+
+  private static List<Field> fields() {
+    List<Field> fields = new ArrayList<>();
+    for (Field field : Globals.class.getDeclaredFields()) {
+      int modifiers = field.getModifiers();
+      if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)
+          && Modifier.isPublic(modifiers) && !notSaved.contains(field.getName())) {
+        fields.add(field);
+      }
+    }
+    return fields;
+  }
+
+  // State kept in serializable objects is written as a length prefixed serialized form
+  public static void writeObject(DataOutput out, Object object) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream objects = new ObjectOutputStream(bytes)) {
+      objects.writeObject(object);
+    }
+    out.writeInt(bytes.size());
+    out.write(bytes.toByteArray());
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <T> T readObject(DataInput in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    try (ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+      return (T) objects.readObject();
+    } catch (ClassNotFoundException e) {
+      throw new IOException(e);
+    }
+  }
+}
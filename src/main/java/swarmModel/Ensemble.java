@@ -0,0 +1,144 @@
+package swarmModel;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import swarmModel.utils.QuantileSketch;
+import swarmModel.utils.RecordFile;
+
+/* Per tick statistics of some columns of the aggregate output over an ensemble of runs, merged as
+   each run finishes so no run has to be kept: the mean and standard deviation with Welford's
+   update, and quantiles from a QuantileSketch, which are exact below sketchCapacity runs. Memory
+   grows with the ticks and columns, not the runs. Ensembles are mergeable, so those of separate
+   sweeps of the same configuration can be combined. */
+public final class Ensemble implements Serializable {
+
+  public static final String[] defaultColumns = {"price", "buys", "sells", "shorts",
+      "putOptionsBought", "callOptionsBought"};
+  public static final double[] quantiles = {0.05, 0.25, 0.5, 0.75, 0.95};
+  private static final int sketchCapacity = 256;
+
+  private final String[] columns;
+  private long runs = 0;
+  private int ticks = 0;
+  // Indexed by tick times the number of columns plus the column
+  private long[] counts = new long[0];
+  private double[] means = new double[0];
+  private double[] squaredDeviations = new double[0];
+  private QuantileSketch[] sketches = new QuantileSketch[0];
+
+  public Ensemble(String... columns) {
+    this.columns = columns.clone();
+  }
+
+  public long getRuns() {
+    return runs;
+  }
+
+  // Adds the aggregates written by AggregateOutput for one run
+  public void addRun(RecordFile.Contents aggregates) {
+    int tickColumn = aggregates.column("tick");
+    int[] sources = new int[columns.length];
+    for (int column = 0; column < columns.length; column++) {
+      sources[column] = aggregates.column(columns[column]);
+      if (tickColumn < 0 || sources[column] < 0) {
+        throw new IllegalArgumentException("The aggregates have no column " + columns[column]);
+      }
+    }
+    for (double[] record : aggregates.records) {
+      int tick = (int) record[tickColumn];
+      for (int column = 0; column < columns.length; column++) {
+        add(tick, column, record[sources[column]]);
+      }
+    }
+    runs++;
+  }
+
+  private void add(int tick, int column, double value) {
+    if (Double.isNaN(value)) {
+      return;
+    }
+    int cell = cell(tick, column);
+    long count = ++counts[cell];
+    double delta = value - means[cell];
+    means[cell] += delta / count;
+    squaredDeviations[cell] += delta * (value - means[cell]);
+    sketches[cell].add(value);
+  }
+
+  // Chan's update combines the moments of two groups as if their values had been added one by one
+  public void merge(Ensemble other) {
+    if (!Arrays.equals(columns, other.columns)) {
+      throw new IllegalArgumentException("Cannot merge ensembles of different columns");
+    }
+    for (int tick = 0; tick < other.ticks; tick++) {
+      for (int column = 0; column < columns.length; column++) {
+        int otherCell = tick * columns.length + column;
+        long otherCount = other.counts[otherCell];
+        if (otherCount == 0) {
+          continue;
+        }
+        int cell = cell(tick, column);
+        long count = counts[cell] + otherCount;
+        double delta = other.means[otherCell] - means[cell];
+        squaredDeviations[cell] += other.squaredDeviations[otherCell]
+            + delta * delta * counts[cell] * otherCount / count;
+        means[cell] += delta * otherCount / count;
+        counts[cell] = count;
+        sketches[cell].merge(other.sketches[otherCell]);
+      }
+    }
+    runs += other.runs;
+  }
+
+  private int cell(int tick, int column) {
+    if (tick < 0) {
+      throw new IllegalArgumentException("Negative tick " + tick);
+    }
+    if (tick >= ticks) {
+      int newTicks = Math.max(tick + 1, ticks * 2);
+      int cells = newTicks * columns.length;
+      counts = Arrays.copyOf(counts, cells);
+      means = Arrays.copyOf(means, cells);
+      squaredDeviations = Arrays.copyOf(squaredDeviations, cells);
+      sketches = Arrays.copyOf(sketches, cells);
+      for (int i = ticks * columns.length; i < cells; i++) {
+        sketches[i] = new QuantileSketch(sketchCapacity);
+      }
+      ticks = newTicks;
+    }
+    return tick * columns.length + column;
+  }
+
+  public static String header() {
+    StringBuilder header = new StringBuilder("tick,statistic,runs,mean,std");
+    for (double quantile : quantiles) {
+      header.append(",p").append(Math.round(quantile * 100));
+    }
+    return header.toString();
+  }
+
+  /* One row per tick and column with a value in any run, each after the given prefix. These are
+     the bands of a fan chart: the mean and the quantiles of the column over the runs. */
+  public void writeRows(BufferedWriter writer, String prefix) throws IOException {
+    for (int tick = 0; tick < ticks; tick++) {
+      for (int column = 0; column < columns.length; column++) {
+        int cell = tick * columns.length + column;
+        long count = counts[cell];
+        if (count == 0) {
+          continue;
+        }
+        double std = count > 1 ? Math.sqrt(squaredDeviations[cell] / (count - 1)) : 0;
+        StringBuilder row = new StringBuilder(prefix).append(tick).append(',')
+            .append(columns[column]).append(',').append(count).append(',').append(means[cell])
+            .append(',').append(std);
+        for (double quantile : quantiles) {
+          row.append(',').append(sketches[cell].quantile(quantile));
+        }
+        writer.write(row.toString());
+        writer.newLine();
+      }
+    }
+  }
+}
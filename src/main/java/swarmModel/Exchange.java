@@ -1,46 +1,102 @@
 package swarmModel;
 
-import org.apache.commons.math3.fitting.PolynomialCurveFitter;
-import org.apache.commons.math3.fitting.WeightedObservedPoints;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
 import simudyne.core.abm.Action;
 import simudyne.core.abm.Agent;
 import simudyne.core.annotations.Variable;
 import simudyne.core.functions.SerializableConsumer;
-import swarmModel.links.Links;
-import swarmModel.links.Messages;
+import swarmModel.ModelMetrics.Hub;
 import swarmModel.links.Messages.BuyOrderPlaced;
 import swarmModel.links.Messages.SellOrderPlaced;
+import swarmModel.utils.OrderBook;
+import swarmModel.utils.RollingPolynomialFit;
 
-public class Exchange extends Agent<Globals> {
+public class Exchange extends Agent<Globals> implements Checkpoint.AgentState {
 
   @Variable
   public double price = 15;
 
-  private static Action<Exchange> action(SerializableConsumer<Exchange> consumer) {
-    return Action.create(Exchange.class, consumer);
+  private static Action<Exchange> action(String phase, SerializableConsumer<Exchange> consumer) {
+    return Action.create(Exchange.class, TickProfiler.profile(phase, consumer));
   }
 
   private int lastNetDemand = 0;
 
   private int totalDemand = 0;
 
+  private RollingPolynomialFit demandFit;
+
+  private RollingPolynomialFit priceFit;
+
+  private OrderBook book;
+
+  // Price at the first round of the day and whether any round of it has set the price
+  private double openPrice = 15;
+  private boolean priceSet = false;
+
+  public static Action<Exchange> saveState() {
+    return action("saveState", exchange -> Checkpoint.save(exchange.getID(), exchange));
+  }
+
+  public static Action<Exchange> restoreState() {
+    return action("restoreState", exchange -> Checkpoint.restore(exchange.getID(), exchange));
+  }
+
+  @Override
+  public void writeState(DataOutput out) throws IOException {
+    out.writeDouble(price);
+    out.writeInt(lastNetDemand);
+    out.writeInt(totalDemand);
+    Checkpoint.writeObject(out, demandFit);
+    Checkpoint.writeObject(out, priceFit);
+    Checkpoint.writeObject(out, book);
+  }
+
+  @Override
+  public void readState(DataInput in) throws IOException {
+    price = in.readDouble();
+    lastNetDemand = in.readInt();
+    totalDemand = in.readInt();
+    demandFit = Checkpoint.readObject(in);
+    priceFit = Checkpoint.readObject(in);
+    book = Checkpoint.readObject(in);
+  }
+
+  private long tick() {
+    return getContext().getTick() + getGlobals().firstTick;
+  }
+
   public static Action<Exchange> calculateBuyAndSellPrice() {
-    return action(
+    return action("calculateBuyAndSellPrice",
         exchange -> {
-          int buys = exchange.getMessagesOfType(BuyOrderPlaced.class).stream()
-              .mapToInt(order -> (int) order.volume).sum();
-          int sells = exchange.getMessagesOfType(SellOrderPlaced.class).stream()
-              .mapToInt(order -> (int) order.volume).sum();
-          exchange.totalDemand = buys + sells;
-          int netDemand = buys - sells;
-          exchange.lastNetDemand = netDemand;
-          if (netDemand == 0) {
-            exchange.getLinks(Links.TradeLink.class)
-                .send(Messages.MarketPriceMessage.class, (msg, link) -> {
-                  msg.price = exchange.price;
-                  msg.priceChange = 0;
-                });
+          long start = System.nanoTime();
+          exchange.startRound();
+          if (exchange.getGlobals().limitOrderBook) {
+            int orders = exchange.matchOrders();
+            exchange.endRound();
+            ModelMetrics.hubAction(Hub.EXCHANGE, start, orders);
+            return;
+          }
+          int buys;
+          int sells;
+          long ordersRead = 0;
+          if (exchange.getGlobals().aggregateOrderFlow) {
+            buys = (int) exchange.getGlobals().orderFlow.drainBuys();
+            sells = (int) exchange.getGlobals().orderFlow.drainSells();
           } else {
+            List<BuyOrderPlaced> buyOrders = exchange.getMessagesOfType(BuyOrderPlaced.class);
+            List<SellOrderPlaced> sellOrders = exchange.getMessagesOfType(SellOrderPlaced.class);
+            buys = buyOrders.stream().mapToInt(order -> (int) order.volume).sum();
+            sells = sellOrders.stream().mapToInt(order -> (int) order.volume).sum();
+            ordersRead = buyOrders.size() + sellOrders.size();
+          }
+          exchange.totalDemand += buys + sells;
+          int netDemand = buys - sells;
+          exchange.lastNetDemand += netDemand;
+          if (netDemand != 0) {
             // Initial way to calculate price, to be updated later
             long nbTraders = exchange.getNumberOfTraders();
             double lambda = exchange.getGlobals().lambda;
@@ -52,50 +108,90 @@ public class Exchange extends Agent<Globals> {
               exchange.price = 0;
               System.err.println("Price cannot be negative, company has gone bankrupt");
             }
+            exchange.priceSet = true;
+          }
+          exchange.endRound();
+          ModelMetrics.hubAction(Hub.EXCHANGE, start, ordersRead);
+        });
+  }
 
-            exchange.getDoubleAccumulator("price").add(exchange.price);
+  /* With the order book the price is that of the last fill of the tick, and the demand kept for the
+     market maker's prediction is the volume filled by incoming buy and sell orders. Returns the
+     number of orders matched. */
+  private int matchOrders() {
+    Globals globals = getGlobals();
+    if (book == null || book.getTickSize() != globals.bookTickSize) {
+      book = new OrderBook(globals.bookTickSize);
+    }
+    int orders = globals.bookOrders.match(book, tick());
+    int buys = (int) book.getTakerBuyVolume();
+    int sells = (int) book.getTakerSellVolume();
+    totalDemand += buys + sells;
+    lastNetDemand += buys - sells;
+    if (book.getFills() > 0) {
+      price = book.getLastPrice();
+      priceSet = true;
+    }
+    globals.marketPrice = price;
+    globals.bestBid = book.getBestBid();
+    globals.bestAsk = book.getBestAsk();
+    globals.bidDepth = book.getBidQuantity();
+    globals.askDepth = book.getAskQuantity();
+    return orders;
+  }
 
-            exchange.getGlobals().marketPrice = exchange.price;
+  /* With intraday rounds the exchange runs after each round of the day. The demand kept for the
+     market maker's prediction is summed over the day, and the price change is since the open. */
+  private void startRound() {
+    if (getGlobals().intradayRound == 0) {
+      totalDemand = 0;
+      lastNetDemand = 0;
+      openPrice = price;
+      priceSet = false;
+    }
+  }
 
-            // Send latest price change and price to traders
-            exchange.getLinks(Links.TradeLink.class)
-                .send(Messages.MarketPriceMessage.class, (msg, link) -> {
-                  msg.priceChange = priceChange;
-                  msg.price = exchange.price;
-                });
-          }
-        });
+  // Traders all read the latest price and price change from the globals
+  private void endRound() {
+    if (priceSet) {
+      getGlobals().marketPrice = price;
+      if (getGlobals().intradayRound >= getGlobals().intradayRounds - 1) {
+        getDoubleAccumulator("price").add(price);
+      }
+    }
+    getGlobals().priceChange = price - openPrice;
   }
 
   public static Action<Exchange> updateDemandPrediction() {
-    final WeightedObservedPoints obs = new WeightedObservedPoints();
-    final WeightedObservedPoints priceObs = new WeightedObservedPoints();
-    return action(exchange -> {
-      exchange.getGlobals().pastNetDemand
-          .put(exchange.getContext().getTick(), (double) exchange.lastNetDemand);
-      exchange.getGlobals().pastTotalDemand
-          .put(exchange.getContext().getTick(), (double) exchange.totalDemand);
-      if (exchange.getContext().getTick() < exchange.getGlobals().derivativeTimeFrame) {
-        return;
+    return action("updateDemandPrediction", exchange -> {
+      long start = System.nanoTime();
+      long tick = exchange.tick();
+      exchange.getGlobals().pastNetDemand.put(tick, (double) exchange.lastNetDemand);
+      exchange.getGlobals().pastTotalDemand.put(tick, (double) exchange.totalDemand);
+
+      exchange.updateFitWindows();
+      exchange.demandFit.add(tick, exchange.lastNetDemand);
+      exchange.priceFit.add(tick, exchange.getGlobals().historicalPrices.get(tick));
+      if (tick >= exchange.getGlobals().derivativeTimeFrame && exchange.demandFit.canFit()
+          && exchange.priceFit.canFit()) {
+        exchange.getGlobals().coeffs = exchange.demandFit.fit(exchange.getGlobals().coeffs);
+        exchange.getGlobals().priceCoeffs =
+            exchange.priceFit.fit(exchange.getGlobals().priceCoeffs);
       }
-      exchange.getGlobals().pastNetDemand.entrySet().stream()
-          .filter(a -> a.getKey() >= exchange.getContext().getTick() - exchange
-              .getGlobals().derivativeTimeFrame)
-          .forEach(a -> obs.add(a.getKey(), a.getValue()));
-      final PolynomialCurveFitter fitter = PolynomialCurveFitter
-          .create(exchange.getGlobals().orderOfPoly);
-      exchange.getGlobals().coeffs = fitter.fit(obs.toList());
-
-      exchange.getGlobals().historicalPrices.entrySet().stream()
-          .filter(a -> a.getKey() >= exchange.getContext().getTick() - exchange
-              .getGlobals().derivativeTimeFrame)
-          .forEach(a -> priceObs.add(a.getKey(), a.getValue()));
-      final PolynomialCurveFitter priceFitter = PolynomialCurveFitter
-          .create(exchange.getGlobals().orderOfPoly);
-      exchange.getGlobals().priceCoeffs = priceFitter.fit(priceObs.toList());
+      ModelMetrics.hubAction(Hub.EXCHANGE, start, 0);
     });
   }
 
+  // The fits cover the ticks within derivativeTimeFrame of the current one, inclusive
+  private void updateFitWindows() {
+    int window = (int) Math.floor(getGlobals().derivativeTimeFrame) + 1;
+    int order = getGlobals().orderOfPoly;
+    if (demandFit == null || demandFit.getWindow() != window || demandFit.getOrder() != order) {
+      demandFit = new RollingPolynomialFit(order, window);
+      priceFit = new RollingPolynomialFit(order, window);
+    }
+  }
+
   public long getNumberOfTraders() {
     return getGlobals().nbFundamentalTraders + getGlobals().nbNoiseTraders
         + getGlobals().nbMomentumTraders + getGlobals().nbHedgeFunds
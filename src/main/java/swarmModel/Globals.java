@@ -1,10 +1,16 @@
 package swarmModel;
 
-import java.util.HashMap;
-import java.util.Map;
 import simudyne.core.abm.GlobalState;
 import simudyne.core.annotations.Constant;
 import simudyne.core.annotations.Input;
+import swarmModel.utils.BookOrders;
+import swarmModel.utils.LendingPool;
+import swarmModel.utils.MarketWealth;
+import swarmModel.utils.OpinionNetwork;
+import swarmModel.utils.OrderFlow;
+import swarmModel.utils.RandomStream;
+import swarmModel.utils.TimeSeries;
+import swarmModel.utils.WakeUpCalendar;
 
 public final class Globals extends GlobalState {
 
@@ -56,6 +62,12 @@ public final class Globals extends GlobalState {
   @Input(name = "Market Price")
   public double marketPrice = 15;
 
+  // Change in the market price made by the exchange on the latest tick
+  public double priceChange = 0;
+
+  // Round of the day being traded, from 0 to intradayRounds - 1
+  public long intradayRound = 0;
+
   // The number of shares which an option gives the right to buy/sell
   @Input(name = "Option share number")
   public double optionShareNumber = 100;
@@ -98,13 +110,93 @@ public final class Globals extends GlobalState {
   @Input(name = "Max capital in the market to lend")
   public double marketMaxCapital = 100000000;
 
-  public Map<Long, Double> historicalPrices = new HashMap<>();
+  // Fundamental traders, momentum traders and retail investors borrow from the lending pool
+  @Input(name = "Borrowing")
+  public boolean borrowing = false;
+
+  // Traders add their orders to a shared total instead of messaging the exchange
+  @Input(name = "Aggregate order flow")
+  public boolean aggregateOrderFlow = true;
+
+  // Orders go through a limit order book instead of moving the price linearly with net demand
+  @Input(name = "Limit order book")
+  public boolean limitOrderBook = false;
+
+  @Input(name = "Book tick size")
+  public double bookTickSize = 0.01;
+
+  // Ticks quoted on each side of the price by the market maker when there is a book
+  @Input(name = "Market maker quote levels")
+  public long marketMakerQuoteLevels = 200;
+
+  // Largest distance of a noise trader's limit price from the market price, as a fraction of it
+  @Input(name = "Noise trader limit range")
+  public double noiseLimitRange = 0.02;
+
+  // Opinions are averaged over a sparse matrix of the opinion links instead of sent as messages
+  @Input(name = "Sparse opinion network")
+  public boolean sparseOpinions = true;
+
+  // Records the cost of every phase of each tick, see TickProfiler
+  @Input(name = "Profile ticks")
+  public boolean profileTicks = false;
+
+  // Writes the per tick aggregates of the market and trader wealth, see AggregateOutput
+  @Input(name = "Aggregate output")
+  public boolean aggregateOutput = true;
+
+  // Fraction of the traders whose state is also written every tick, none when zero
+  @Input(name = "Agent sample fraction")
+  public double agentSampleFraction = 0;
+
+  /* Ticks between two writes of the spread of the traders' wealth, never when zero. Every trader
+     is visited and valued on those ticks, so 1 costs a pass over all of them every tick. */
+  @Input(name = "Wealth distribution interval")
+  public long wealthDistributionInterval = 10;
+
+  /* Rounds of trading in a day. Each trader makes its trades of the day in one of them and the
+     exchange moves the price after each, options, opinions and interest rates stay daily. */
+  @Input(name = "Intraday rounds")
+  public long intradayRounds = 1;
+
+  // Number of past ticks kept for price and demand history, longer look backs are clipped to this
+  private static final int historyLength = 512;
+
+  public TimeSeries historicalPrices = new TimeSeries(historyLength);
   public double projectedPrice = 15;
-  public Map<Long, Double> pastNetDemand = new HashMap<>();
-  public Map<Long, Double> pastTotalDemand = new HashMap<>();
+  public TimeSeries pastNetDemand = new TimeSeries(historyLength);
+  public TimeSeries pastTotalDemand = new TimeSeries(historyLength);
+  // Positive and negative parts of the price return into each tick, used for the RSI
+  public TimeSeries pastPriceGains = new TimeSeries(historyLength);
+  public TimeSeries pastPriceLosses = new TimeSeries(historyLength);
+  public MarketIndicators indicators = MarketIndicators.EMPTY;
+  public OrderFlow orderFlow = new OrderFlow();
+  public LendingPool lendingPool = new LendingPool(marketMaxCapital);
+  /* Growth of capital from interest since the start of the run, the product of 1 + interestRate /
+     365 over the ticks, and the sum of the daily lending rates over the ticks. Traders settle
+     interest against these when they are next visited rather than every tick. */
+  public double interestIndex = 1;
+  public double loanInterestIndex = 0;
+  // Shares, capital and options of each trader type, see AggregateOutput for the types
+  public MarketWealth marketWealth = new MarketWealth(AggregateOutput.traderTypes());
+  // Seeds the random streams of the agents, drawn from the model's generator at setup
+  public long streamSeed = 0;
+  // Draws of the model itself, such as the interest rate shocks
+  public RandomStream modelRandom = new RandomStream(0);
+  // Model tick of the first step, not zero when the run carries on from a checkpoint
+  public long firstTick = 0;
+  public BookOrders bookOrders = new BookOrders();
+  // State of the order book after the last match, NaN for an empty side
+  public double bestBid = Double.NaN;
+  public double bestAsk = Double.NaN;
+  public double bidDepth = 0;
+  public double askDepth = 0;
+  public OpinionNetwork opinionNetwork = new OpinionNetwork();
+  // Ids of the option traders by the ticks on which their options expire
+  public WakeUpCalendar optionExpiries = new WakeUpCalendar();
   public int orderOfPoly = 2;
-  public double[] coeffs = new double[orderOfPoly];
-  public double[] priceCoeffs = new double[orderOfPoly];
+  public double[] coeffs = new double[orderOfPoly + 1];
+  public double[] priceCoeffs = new double[orderOfPoly + 1];
   public double profitFactor = 6;
 }
 
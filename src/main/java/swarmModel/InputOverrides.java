@@ -0,0 +1,83 @@
+package swarmModel;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import simudyne.core.annotations.Constant;
+import simudyne.core.annotations.Input;
+
+/* Values for the model's inputs and constants given outside the console, e.g. by a headless run
+   of a parameter sweep. They are held as system properties named after the Globals field, such as
+   -DswarmModel.input.lambda=5, and written into the globals when the model is set up. */
+public final class InputOverrides {
+
+  public static final String propertyPrefix = "swarmModel.input.";
+
+  private InputOverrides() {
+  }
+
+  public static void set(String name, String value) {
+    check(name, value);
+    System.setProperty(propertyPrefix + name, value);
+  }
+
+  // Throws if there is no such input or the value cannot be given to it
+  public static void check(String name, String value) {
+    parse(field(name), value);
+  }
+
+  public static void applyTo(Globals globals) {
+    for (Field field : Globals.class.getFields()) {
+      String value = System.getProperty(propertyPrefix + field.getName());
+      if (value != null && isOverridable(field)) {
+        try {
+          field.set(globals, parse(field, value));
+        } catch (IllegalAccessException e) {
+          throw new IllegalStateException("Cannot set input " + field.getName(), e);
+        }
+      }
+    }
+  }
+
+  // Only fields shown in the console as an input or a constant can be overridden
+  public static Field field(String name) {
+    Field field;
+    try {
+      field = Globals.class.getField(name);
+    } catch (NoSuchFieldException e) {
+      throw new IllegalArgumentException("Globals has no field named " + name);
+    }
+    if (!isOverridable(field)) {
+      throw new IllegalArgumentException(name + " is not an input or a constant of the model");
+    }
+    return field;
+  }
+
+  private static boolean isOverridable(Field field) {
+    return !Modifier.isStatic(field.getModifiers()) && !Modifier.isFinal(field.getModifiers())
+        && (field.isAnnotationPresent(Input.class) || field.isAnnotationPresent(Constant.class));
+  }
+
+  private static Object parse(Field field, String value) {
+    Class<?> type = field.getType();
+    try {
+      if (type == double.class) {
+        return Double.parseDouble(value.trim());
+      } else if (type == long.class) {
+        return Long.parseLong(value.trim());
+      } else if (type == int.class) {
+        return Integer.parseInt(value.trim());
+      } else if (type == boolean.class) {
+        String trimmed = value.trim();
+        if (!trimmed.equalsIgnoreCase("true") && !trimmed.equalsIgnoreCase("false")) {
+          throw new NumberFormatException(trimmed);
+        }
+        return Boolean.parseBoolean(trimmed);
+      }
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(
+          "Invalid value " + value + " for " + type + " input " + field.getName());
+    }
+    throw new IllegalArgumentException(
+        "Input " + field.getName() + " of type " + type + " cannot be overridden");
+  }
+}
@@ -0,0 +1,71 @@
+package swarmModel;
+
+import java.io.Serializable;
+import swarmModel.utils.TimeSeries;
+
+/* Snapshot of the technical indicators shared by every trader for a single tick.
+   It is computed once by the model after the price history is updated, so agents
+   only read these values instead of each recomputing them from the history. */
+public final class MarketIndicators implements Serializable {
+
+  public static final MarketIndicators EMPTY = new MarketIndicators(-1, 0, 0, 50, 0);
+
+  public final long tick;
+  public final double shortTermMovingAvg;
+  public final double longTermMovingAvg;
+  public final double rsi;
+  public final double volatility;
+
+  public MarketIndicators(long tick, double shortTermMovingAvg, double longTermMovingAvg,
+      double rsi, double volatility) {
+    this.tick = tick;
+    this.shortTermMovingAvg = shortTermMovingAvg;
+    this.longTermMovingAvg = longTermMovingAvg;
+    this.rsi = rsi;
+    this.volatility = volatility;
+  }
+
+  public static MarketIndicators compute(long tick, Globals globals, int volatilityTimeFrame) {
+    TimeSeries prices = globals.historicalPrices;
+    return new MarketIndicators(tick,
+        movingAverage(prices, tick, globals.shortTermAveragePeriod),
+        movingAverage(prices, tick, globals.longTermAveragePeriod),
+        rsi(globals.pastPriceGains, globals.pastPriceLosses, tick, globals.rsiPeriod),
+        volatility(prices, tick, volatilityTimeFrame));
+  }
+
+  // Sum of the prices since tick - nbDays divided by the look back period
+  public static double movingAverage(TimeSeries prices, long tick, long nbDays) {
+    return prices.sum(tick - nbDays, prices.getLastTick()) / nbDays;
+  }
+
+  /* The average gain and loss over the look back period ending two ticks ago
+     is smoothed with the latest return, as in a single step of Wilder's RSI */
+  public static double rsi(TimeSeries gains, TimeSeries losses, long tick, long rsiPeriod) {
+    double avgGainInitial = gains.sum(tick - rsiPeriod, tick - 2) / rsiPeriod;
+    double avgLossInitial = losses.sum(tick - rsiPeriod, tick - 2) / rsiPeriod;
+
+    double currentGain = gains.contains(tick - 1) ? gains.get(tick - 1) : 0;
+    double currentLoss = losses.contains(tick - 1) ? losses.get(tick - 1) : 0;
+
+    double avgGain = ((rsiPeriod - 1) * avgGainInitial + currentGain) / rsiPeriod;
+    double avgLoss = ((rsiPeriod - 1) * avgLossInitial + currentLoss) / rsiPeriod;
+
+    if (avgLoss == 0) {
+      return 100;
+    } else {
+      return 100 - (100 / (1 + (avgGain / avgLoss)));
+    }
+  }
+
+  // We use the standard deviation as a measure for the volatility of the price
+  public static double volatility(TimeSeries prices, long tick, int timeFrame) {
+    if (prices.isEmpty()) {
+      return 0;
+    }
+    long from = tick - timeFrame;
+    double squaredDevs =
+        prices.variance(from, prices.getLastTick()) * prices.count(from, prices.getLastTick());
+    return Math.sqrt(squaredDevs / timeFrame);
+  }
+}
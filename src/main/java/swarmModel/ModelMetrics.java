@@ -0,0 +1,132 @@
+package swarmModel;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/* Cost counters of a run, used to see how the model scales with its population. Messages are
+   counted where they are read, since each message is read once and the inbox sizes are already
+   known there. The hubs every trader is connected to also record the time spent in their actions
+   and the messages they read, as they are the agents which can only be processed one at a time.
+   Like RunSummary this assumes a single model per JVM. */
+public final class ModelMetrics {
+
+  public enum Hub {
+    EXCHANGE("exchange"), MARKET_MAKER("marketMaker"), LENDING_POOL("lendingPool");
+
+    public final String columnPrefix;
+
+    Hub(String columnPrefix) {
+      this.columnPrefix = columnPrefix;
+    }
+  }
+
+  private static final LongAdder messages = new LongAdder();
+  private static final LongAdder[] hubNanos = new LongAdder[Hub.values().length];
+  private static final LongAdder[] hubMessages = new LongAdder[Hub.values().length];
+  private static volatile long setupNanos = 0;
+  private static volatile long stepNanos = 0;
+  private static volatile long ticks = 0;
+
+  static {
+    for (int i = 0; i < hubNanos.length; i++) {
+      hubNanos[i] = new LongAdder();
+      hubMessages[i] = new LongAdder();
+    }
+  }
+
+  private ModelMetrics() {
+  }
+
+  public static void reset() {
+    messages.reset();
+    for (int i = 0; i < hubNanos.length; i++) {
+      hubNanos[i].reset();
+      hubMessages[i].reset();
+    }
+    setupNanos = 0;
+    stepNanos = 0;
+    ticks = 0;
+  }
+
+  public static void messagesRead(long count) {
+    messages.add(count);
+  }
+
+  // Called at the end of a hub's action with the System.nanoTime() taken at its start
+  public static void hubAction(Hub hub, long startNanos, long messagesRead) {
+    hubNanos[hub.ordinal()].add(System.nanoTime() - startNanos);
+    hubMessages[hub.ordinal()].add(messagesRead);
+    messages.add(messagesRead);
+  }
+
+  public static void setupFinished(long startNanos) {
+    setupNanos = System.nanoTime() - startNanos;
+  }
+
+  public static void stepFinished(long startNanos) {
+    stepNanos += System.nanoTime() - startNanos;
+    ticks++;
+  }
+
+  /* The JVM figures cover the whole process, so they are only meaningful for a headless run.
+     Peak heap adds up the peaks of each heap pool, which may not have been reached together. */
+  public static Map<String, String> values() {
+    long peakHeap = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+        peakHeap += pool.getPeakUsage().getUsed();
+      }
+    }
+    long gcMillis = 0;
+    long gcCount = 0;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      gcMillis += Math.max(collector.getCollectionTime(), 0);
+      gcCount += Math.max(collector.getCollectionCount(), 0);
+    }
+
+    Map<String, String> values = new LinkedHashMap<>();
+    values.put("ticks", Long.toString(ticks));
+    values.put("setupSeconds", Double.toString(setupNanos / 1e9));
+    values.put("stepSeconds", Double.toString(stepNanos / 1e9));
+    values.put("ticksPerSecond", Double.toString(stepNanos == 0 ? 0 : ticks / (stepNanos / 1e9)));
+    values.put("messagesPerTick", Double.toString(perTick(messages.sum())));
+    for (Hub hub : Hub.values()) {
+      double millis = perTick(hubNanos[hub.ordinal()].sum()) / 1e6;
+      double hubMessagesRead = perTick(hubMessages[hub.ordinal()].sum());
+      values.put(hub.columnPrefix + "MillisPerTick", Double.toString(millis));
+      values.put(hub.columnPrefix + "MessagesPerTick", Double.toString(hubMessagesRead));
+    }
+    values.put("peakHeapBytes", Long.toString(peakHeap));
+    values.put("gcSeconds", Double.toString(gcMillis / 1e3));
+    values.put("gcCount", Long.toString(gcCount));
+    return values;
+  }
+
+  // Names of the values, in the order they are given
+  public static String[] columns() {
+    return values().keySet().toArray(new String[0]);
+  }
+
+  public static void writeTo(Path file) throws IOException {
+    List<String> lines = new ArrayList<>();
+    for (Map.Entry<String, String> entry : values().entrySet()) {
+      lines.add(entry.getKey() + "=" + entry.getValue());
+    }
+    Files.write(file, lines, StandardCharsets.UTF_8);
+  }
+
+  private static double perTick(double total) {
+    return ticks == 0 ? 0 : total / ticks;
+  }
+}
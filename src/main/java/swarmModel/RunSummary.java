@@ -0,0 +1,94 @@
+package swarmModel;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Statistics of the market price over a whole run, updated by the model every tick. Headless runs
+   write them out once the run is over so a parameter sweep can compare runs without reading their
+   full output. Only one model is run per JVM headlessly, so the summary of the run in progress is
+   kept statically. */
+public final class RunSummary implements Serializable {
+
+  public static final String[] columns = {"recordedTicks", "initialPrice", "finalPrice", "minPrice",
+      "maxPrice", "meanReturn", "returnVolatility", "maxDrawdown", "finalInterestRate"};
+
+  private static volatile RunSummary current = new RunSummary();
+
+  private long ticks = 0;
+  private double initialPrice = Double.NaN;
+  private double lastPrice = Double.NaN;
+  private double minPrice = Double.NaN;
+  private double maxPrice = Double.NaN;
+  private double maxDrawdown = 0;
+  private double interestRate = Double.NaN;
+
+  // Running mean and sum of squared deviations of the returns, using Welford's update
+  private long nbReturns = 0;
+  private double meanReturn = 0;
+  private double squaredDeviations = 0;
+
+  public static RunSummary current() {
+    return current;
+  }
+
+  public static void reset() {
+    current = new RunSummary();
+  }
+
+  // Carries on with the summary of a checkpointed run
+  static void resume(RunSummary summary) {
+    current = summary;
+  }
+
+  public void record(double price, double interestRate) {
+    if (ticks == 0) {
+      initialPrice = price;
+      minPrice = price;
+      maxPrice = price;
+    } else {
+      if (lastPrice > 0) {
+        double priceReturn = (price - lastPrice) / lastPrice;
+        nbReturns++;
+        double delta = priceReturn - meanReturn;
+        meanReturn += delta / nbReturns;
+        squaredDeviations += delta * (priceReturn - meanReturn);
+      }
+      minPrice = Math.min(minPrice, price);
+      maxPrice = Math.max(maxPrice, price);
+    }
+    if (maxPrice > 0) {
+      maxDrawdown = Math.max(maxDrawdown, (maxPrice - price) / maxPrice);
+    }
+    lastPrice = price;
+    this.interestRate = interestRate;
+    ticks++;
+  }
+
+  public Map<String, String> values() {
+    double volatility = nbReturns > 1 ? Math.sqrt(squaredDeviations / (nbReturns - 1)) : 0;
+    double[] values = {ticks, initialPrice, lastPrice, minPrice, maxPrice, meanReturn, volatility,
+        maxDrawdown, interestRate};
+    Map<String, String> summary = new LinkedHashMap<>();
+    summary.put(columns[0], Long.toString(ticks));
+    for (int i = 1; i < columns.length; i++) {
+      summary.put(columns[i], Double.toString(values[i]));
+    }
+    return summary;
+  }
+
+  // One name=value line per column
+  public void writeTo(Path file) throws IOException {
+    List<String> lines = new ArrayList<>();
+    for (Map.Entry<String, String> entry : values().entrySet()) {
+      lines.add(entry.getKey() + "=" + entry.getValue());
+    }
+    Files.write(file, lines, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,191 @@
+package swarmModel;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import simudyne.core.abm.Agent;
+import simudyne.core.functions.SerializableConsumer;
+
+/* Cost of every phase of a tick, per agent type. Each action is wrapped so a visit to an agent
+   records the time spent in it, the bytes its thread allocated and the messages it sent, which
+   are added up per phase and agent type. The model also records the wall time of each block of
+   actions it runs, and the bytes its own thread allocated in between. One row per phase and agent
+   type is written for every tick while profiling is on, to the file given by the
+   swarmModel.tick-profile system property, by default next to the SDK exports. The counters are
+   kept statically, as for ModelMetrics. */
+public final class TickProfiler {
+
+  public static final String pathProperty = "swarmModel.tick-profile";
+  private static final String defaultPath = "outputs/tick-profile.csv";
+  private static final String header =
+      "tick,phase,agentType,agents,nanos,allocatedBytes,messagesSent";
+
+  private static final com.sun.management.ThreadMXBean threads = threadBean();
+  private static final ConcurrentMap<String, ConcurrentMap<Class<?>, Cell>> cells =
+      new ConcurrentHashMap<>();
+  // Cells in the order they were first used, which is the order of the phases in a tick
+  private static final List<Cell> cellOrder = new CopyOnWriteArrayList<>();
+  private static final ThreadLocal<Cell> currentCell = new ThreadLocal<>();
+  private static BufferedWriter writer;
+
+  private TickProfiler() {
+  }
+
+  private static final class Cell {
+
+    final String phase;
+    final String agentType;
+    final LongAdder agents = new LongAdder();
+    final LongAdder nanos = new LongAdder();
+    final LongAdder allocatedBytes = new LongAdder();
+    final LongAdder messagesSent = new LongAdder();
+
+    Cell(String phase, String agentType) {
+      this.phase = phase;
+      this.agentType = agentType;
+    }
+  }
+
+  // Wraps the body of an action, it is only measured when the profileTicks input is on
+  public static <T extends Agent<Globals>> SerializableConsumer<T> profile(String phase,
+      SerializableConsumer<T> consumer) {
+    return agent -> {
+      if (!agent.getGlobals().profileTicks) {
+        consumer.accept(agent);
+        return;
+      }
+      Cell cell = cell(phase, agent.getClass());
+      long bytes = allocatedBytes();
+      long start = System.nanoTime();
+      currentCell.set(cell);
+      try {
+        consumer.accept(agent);
+      } finally {
+        currentCell.remove();
+        cell.nanos.add(System.nanoTime() - start);
+        cell.allocatedBytes.add(allocatedBytes() - bytes);
+        cell.agents.increment();
+      }
+    };
+  }
+
+  // True while an agent is being profiled, so send sites only count their links when needed
+  public static boolean isRecording() {
+    return currentCell.get() != null;
+  }
+
+  public static void messagesSent(long count) {
+    Cell cell = currentCell.get();
+    if (cell != null) {
+      cell.messagesSent.add(count);
+    }
+  }
+
+  // Start of a block run by the model itself, the returned values are passed to modelPhase
+  public static long[] start() {
+    return new long[] {System.nanoTime(), allocatedBytes()};
+  }
+
+  public static void modelPhase(String phase, long[] start) {
+    Cell cell = cell(phase, TradingModel.class);
+    cell.nanos.add(System.nanoTime() - start[0]);
+    cell.allocatedBytes.add(allocatedBytes() - start[1]);
+  }
+
+  public static synchronized void open() {
+    close();
+    cells.clear();
+    cellOrder.clear();
+    try {
+      Path path = Paths.get(System.getProperty(pathProperty, defaultPath));
+      if (path.getParent() != null) {
+        Files.createDirectories(path.getParent());
+      }
+      writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+      writer.write(header);
+      writer.newLine();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot open the tick profile", e);
+    }
+  }
+
+  // Writes the rows of the tick and resets the counters
+  public static synchronized void endTick(long tick) {
+    if (writer == null) {
+      return;
+    }
+    try {
+      for (Cell cell : cellOrder) {
+        long agents = cell.agents.sumThenReset();
+        long nanos = cell.nanos.sumThenReset();
+        long bytes = cell.allocatedBytes.sumThenReset();
+        long messages = cell.messagesSent.sumThenReset();
+        if (agents == 0 && nanos == 0) {
+          continue;
+        }
+        writer.write(tick + "," + cell.phase + "," + cell.agentType + "," + agents + "," + nanos
+            + "," + (threads == null ? "" : Long.toString(bytes)) + "," + messages);
+        writer.newLine();
+      }
+      writer.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot write the tick profile", e);
+    }
+  }
+
+  public static synchronized void close() {
+    if (writer == null) {
+      return;
+    }
+    try {
+      writer.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot close the tick profile", e);
+    } finally {
+      writer = null;
+    }
+  }
+
+  private static Cell cell(String phase, Class<?> type) {
+    ConcurrentMap<Class<?>, Cell> phaseCells = cells.get(phase);
+    if (phaseCells == null) {
+      phaseCells = cells.computeIfAbsent(phase, key -> new ConcurrentHashMap<>());
+    }
+    Cell cell = phaseCells.get(type);
+    if (cell == null) {
+      cell = phaseCells.computeIfAbsent(type, key -> {
+        Cell created = new Cell(phase, type.getSimpleName());
+        cellOrder.add(created);
+        return created;
+      });
+    }
+    return cell;
+  }
+
+  private static long allocatedBytes() {
+    return threads == null ? 0 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  // Allocation counters are a HotSpot extension, without them only the bytes are left out
+  private static com.sun.management.ThreadMXBean threadBean() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean hotspotBean = (com.sun.management.ThreadMXBean) bean;
+      if (hotspotBean.isThreadAllocatedMemorySupported()) {
+        hotspotBean.setThreadAllocatedMemoryEnabled(true);
+        return hotspotBean;
+      }
+    }
+    return null;
+  }
+}
@@ -1,19 +1,18 @@
 package swarmModel;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Map.Entry;
+import java.util.List;
 import org.apache.commons.math3.analysis.polynomials.PolynomialFunction;
+import simudyne.core.abm.Action;
 import simudyne.core.abm.AgentBasedModel;
 import simudyne.core.abm.Group;
 import simudyne.core.abm.Split;
 import simudyne.core.annotations.ModelSettings;
-import simudyne.core.rng.SeededRandom;
+import swarmModel.ModelMetrics.Hub;
 import swarmModel.links.Links;
-import swarmModel.links.Links.BorrowLink;
 import swarmModel.links.Links.OpinionLink;
-import swarmModel.traders.Bank;
 import swarmModel.traders.BaseTrader;
-import swarmModel.traders.Borrower;
 import swarmModel.traders.FundamentalTrader;
 import swarmModel.traders.HedgeFund;
 import swarmModel.traders.Initiator;
@@ -22,15 +21,22 @@ import swarmModel.traders.MomentumTrader;
 import swarmModel.traders.NoiseTrader;
 import swarmModel.traders.OptionTrader;
 import swarmModel.traders.RetailInvestor;
+import swarmModel.utils.LendingPool;
+import swarmModel.utils.MarketWealth;
+import swarmModel.utils.OpinionNetwork;
+import swarmModel.utils.RandomStream;
+import swarmModel.utils.WakeUpCalendar;
 
 @ModelSettings(timeUnit = "DAYS", start = "2021-01-01T00:00:00Z", id = "GME_squeeze", end = 250L)
 public class TradingModel extends AgentBasedModel<Globals> {
 
+  private static final int volatilityTimeFrame = 20;
+
   {
     registerAgentTypes(MarketMaker.class, NoiseTrader.class, MomentumTrader.class,
         FundamentalTrader.class, Exchange.class, HedgeFund.class, Initiator.class,
-        RetailInvestor.class, Bank.class);
-    registerLinkTypes(Links.TradeLink.class, OpinionLink.class, BorrowLink.class);
+        RetailInvestor.class);
+    registerLinkTypes(Links.TradeLink.class, OpinionLink.class);
     createDoubleAccumulator("buys", "Number of buy orders");
     createDoubleAccumulator("sells", "Number of sell orders");
     createDoubleAccumulator("price", "Price");
@@ -41,6 +47,22 @@ public class TradingModel extends AgentBasedModel<Globals> {
 
   @Override
   public void setup() {
+    long setupStart = System.nanoTime();
+    ModelMetrics.reset();
+    // Inputs given to a headless run replace the console values before any agent is created
+    InputOverrides.applyTo(getGlobals());
+    RunSummary.reset();
+    getGlobals().streamSeed = getContext().getPrng().generator.nextLong();
+    getGlobals().modelRandom = RandomStream.of(getGlobals().streamSeed, "TradingModel", 0);
+    getGlobals().optionExpiries = new WakeUpCalendar();
+    getGlobals().lendingPool = new LendingPool(getGlobals().marketMaxCapital);
+    getGlobals().interestIndex = 1;
+    getGlobals().loanInterestIndex = 0;
+    getGlobals().marketWealth = new MarketWealth(AggregateOutput.traderTypes());
+    // A run restored from a checkpoint carries on with its globals, the agents follow on tick 0
+    Checkpoint.setup(getGlobals());
+    getGlobals().opinionNetwork = new OpinionNetwork();
+
     Group<NoiseTrader> noiseTraderGroup = generateGroup(NoiseTrader.class,
         getGlobals().nbNoiseTraders);
     Group<MomentumTrader> momentumTraderGroup = generateGroup(MomentumTrader.class,
@@ -54,7 +76,6 @@ public class TradingModel extends AgentBasedModel<Globals> {
     Group<Initiator> initiatorGroup = generateGroup(Initiator.class, getGlobals().nbInitiators);
     Group<RetailInvestor> retailInvestorGroup = generateGroup(RetailInvestor.class,
         getGlobals().nbRetailInvestors);
-    Group<Bank> bankGroup = generateGroup(Bank.class, 1);
 
     // Setup of trade links
     marketMakerGroup.fullyConnected(noiseTraderGroup, Links.TradeLink.class);
@@ -69,19 +90,15 @@ public class TradingModel extends AgentBasedModel<Globals> {
     retailInvestorGroup.fullyConnected(marketMakerGroup, Links.TradeLink.class);
     marketMakerGroup.fullyConnected(initiatorGroup, Links.TradeLink.class);
 
-    marketMakerGroup.fullyConnected(exchange, Links.TradeLink.class);
-    momentumTraderGroup.fullyConnected(exchange, Links.TradeLink.class);
-    noiseTraderGroup.fullyConnected(exchange, Links.TradeLink.class);
-    fundamentalTraderGroup.fullyConnected(exchange, Links.TradeLink.class);
-    hedgeFundGroup.fullyConnected(exchange, Links.TradeLink.class);
-    retailInvestorGroup.fullyConnected(exchange, Links.TradeLink.class);
-
-    exchange.fullyConnected(momentumTraderGroup, Links.TradeLink.class);
-    exchange.fullyConnected(noiseTraderGroup, Links.TradeLink.class);
-    exchange.fullyConnected(fundamentalTraderGroup, Links.TradeLink.class);
-    exchange.fullyConnected(marketMakerGroup, Links.TradeLink.class);
-    exchange.fullyConnected(hedgeFundGroup, Links.TradeLink.class);
-    exchange.fullyConnected(retailInvestorGroup, Links.TradeLink.class);
+    // Orders only reach the exchange over links when order flow is not aggregated
+    if (!getGlobals().aggregateOrderFlow) {
+      marketMakerGroup.fullyConnected(exchange, Links.TradeLink.class);
+      momentumTraderGroup.fullyConnected(exchange, Links.TradeLink.class);
+      noiseTraderGroup.fullyConnected(exchange, Links.TradeLink.class);
+      fundamentalTraderGroup.fullyConnected(exchange, Links.TradeLink.class);
+      hedgeFundGroup.fullyConnected(exchange, Links.TradeLink.class);
+      retailInvestorGroup.fullyConnected(exchange, Links.TradeLink.class);
+    }
 
     // Setup of Opinion Links
 
@@ -89,74 +106,175 @@ public class TradingModel extends AgentBasedModel<Globals> {
     initiatorGroup.partitionConnected(retailInvestorGroup, Links.OpinionLink.class).shard();
     retailInvestorGroup.partitionConnected(momentumTraderGroup, Links.OpinionLink.class);
 
-    // Setup of Borrowing Links
-
-    fundamentalTraderGroup.fullyConnected(bankGroup, Links.BorrowLink.class);
-    momentumTraderGroup.fullyConnected(bankGroup, Links.BorrowLink.class);
-    retailInvestorGroup.fullyConnected(bankGroup, Links.BorrowLink.class);
-
-    bankGroup.fullyConnected(fundamentalTraderGroup, Links.BorrowLink.class);
-    bankGroup.fullyConnected(momentumTraderGroup, Links.BorrowLink.class);
-    bankGroup.fullyConnected(retailInvestorGroup, Links.BorrowLink.class);
-
     super.setup();
+    ModelMetrics.setupFinished(setupStart);
+    if (getGlobals().profileTicks) {
+      TickProfiler.open();
+    }
+    if (getGlobals().aggregateOutput) {
+      AggregateOutput.open(getGlobals().agentSampleFraction,
+          getGlobals().wealthDistributionInterval);
+    }
   }
 
   @Override
   public void step() {
+    long stepStart = System.nanoTime();
+    long[] phaseStart = getGlobals().profileTicks ? TickProfiler.start() : null;
     super.step();
+    if (Checkpoint.isRestoring()) {
+      run(Split.create(
+          BaseTrader.restoreState(),
+          Exchange.restoreState(),
+          Initiator.restoreState()));
+      Checkpoint.restored();
+    }
 
     // We update the interest rate every 5 iterations
-    if (getGlobals().variableInterestRates && getContext().getTick() % 5 == 0
-        && getContext().getTick() > 20) {
+    if (getGlobals().variableInterestRates && tick() % 5 == 0 && tick() > 20) {
       updateInterestRate();
     }
 
     updateHistoricalPrices();
+    updateMarketIndicators();
     updateProjectedPrice();
+    phaseStart = endPhase("updateMarketState", phaseStart);
+
     run(Exchange.updateDemandPrediction());
+    phaseStart = endPhase("runDemandPrediction", phaseStart);
+
+    /* The action visits every option trader, so the calendar only saves the ticks on which no
+       option expires. Its agents are drained all the same so it does not grow. */
+    if (getGlobals().optionExpiries.drainDue(tick()) > 0) {
+      run(OptionTrader.updateOptions());
+    }
+    getGlobals().marketWealth.expire(tick());
+    phaseStart = endPhase("runOptions", phaseStart);
+
+    if (getGlobals().sparseOpinions) {
+      runSparseOpinions();
+    } else {
+      run(
+          Split.create(
+              RetailInvestor.shareOpinion(),
+              Initiator.shareOpinion()),
+          Split.create(
+              RetailInvestor.updateOpinion(),
+              MomentumTrader.updateOpinion()
+          )
+      );
+    }
+    phaseStart = endPhase("runOpinions", phaseStart);
+
+    // With intraday rounds the price moves after each, see Globals.intradayRounds
+    long rounds = Math.max(getGlobals().intradayRounds, 1);
+    for (long round = 0; round < rounds; round++) {
+      getGlobals().intradayRound = round;
+      run(
+          Split.create(tradingActions()),
+
+          Exchange.calculateBuyAndSellPrice()
+      );
+      if (getGlobals().limitOrderBook && round < rounds - 1) {
+        run(BaseTrader.settleRound());
+      }
+    }
+    // Loans asked for while trading are lent here and taken in with the portfolio values
+    if (getGlobals().borrowing) {
+      long start = System.nanoTime();
+      ModelMetrics.hubAction(Hub.LENDING_POOL, start, getGlobals().lendingPool.clear());
+    }
+    updateInterestIndices();
+    // Portfolios are valued when read, so the traders are only visited when there is more to do
+    if (needsSettlement()) {
+      run(BaseTrader.settleTick());
+    }
+    endPhase("runTrading", phaseStart);
+
+    RunSummary.current().record(getGlobals().marketPrice, getGlobals().interestRate);
+    AggregateOutput.endTick(tick(), getGlobals());
+    ModelMetrics.stepFinished(stepStart);
+    if (getGlobals().profileTicks) {
+      TickProfiler.endTick(tick());
+    }
+    if (tick() == Checkpoint.getSaveTick()) {
+      run(Split.create(
+          BaseTrader.saveState(),
+          Exchange.saveState(),
+          Initiator.saveState()));
+      Checkpoint.write(tick(), getGlobals());
+    }
+  }
+
+  @Override
+  public void done() {
+    super.done();
+    TickProfiler.close();
+    AggregateOutput.close();
+  }
+
+  /* Trader types that cannot act on this tick are left out of the trading phase, so none of their
+     agents is visited. The others always run as they hedge their options every tick. */
+  private Action<?>[] tradingActions() {
+    List<Action<?>> actions = new ArrayList<>(Arrays.asList(
+        NoiseTrader.processInformation(),
+        MomentumTrader.processInformation(),
+        MarketMaker.processInformation(),
+        RetailInvestor.processInformation()));
+    if (FundamentalTrader.canTrade(tick(), getGlobals())) {
+      actions.add(FundamentalTrader.processInformation());
+    }
+    if (HedgeFund.canTrade(tick(), getGlobals())) {
+      actions.add(HedgeFund.processInformation());
+    }
+    return actions.toArray(new Action<?>[0]);
+  }
+
+  /* Same opinion dynamics as with messages: opinions shared on this tick are averaged once over the
+     opinion links, which are read into the network on the first tick, and each receiver then
+     updates its own opinion from its average. */
+  private void runSparseOpinions() {
+    OpinionNetwork network = getGlobals().opinionNetwork;
+    if (!network.isBuilt()) {
+      run(Split.create(
+          RetailInvestor.registerOpinionLinks(),
+          Initiator.registerOpinionLinks()));
+      network.build();
+    }
+    run(Split.create(
+        RetailInvestor.shareOpinion(),
+        Initiator.shareOpinion()));
+    network.propagate();
+    run(Split.create(
+        RetailInvestor.updateOpinion(),
+        MomentumTrader.updateOpinion()));
+  }
 
-    run(OptionTrader.updateOptions());
-
-    /*
-    Borrowing is deactivated for the purpose of the submission.
-    In order to allow borrowing, uncomment the lines below and change RetailInvestor,
-    MomentumTrader and FundamentalTrader to extend Borrower instead of OptionTrader
-
-    run(Borrower.processBorrowing(),
-        Bank.lendMoney(),
-        Borrower.actOnLoan()
-    );
-    */
-
-    run(
-        Split.create(
-            RetailInvestor.shareOpinion(),
-            Initiator.shareOpinion()),
-        Split.create(
-            RetailInvestor.updateOpinion(),
-            MomentumTrader.updateOpinion()
-        )
-    );
-
-    run(
-        Split.create(
-            NoiseTrader.processInformation(),
-            MomentumTrader.processInformation(),
-            FundamentalTrader.processInformation(),
-            MarketMaker.processInformation(),
-            RetailInvestor.processInformation(),
-            HedgeFund.processInformation()),
-
-        Exchange.calculateBuyAndSellPrice(),
-        BaseTrader.updatePortfolioValues()
-    );
+  // Records the model's own time for a block of the step and starts timing the next one
+  private long[] endPhase(String phase, long[] phaseStart) {
+    if (!getGlobals().profileTicks) {
+      return phaseStart;
+    }
+    TickProfiler.modelPhase(phase, phaseStart);
+    return TickProfiler.start();
   }
 
   public void updateHistoricalPrices() {
-    getGlobals().historicalPrices.put(getContext().getTick(), getGlobals().marketPrice);
-    getGlobals().traderActivity = getContext().getPrng().uniform(0.1, 0.5).sample();
-    getGlobals().rsiPeriod = getContext().getPrng().discrete(10, 20).sample();
+    long tick = tick();
+    getGlobals().historicalPrices.put(tick, getGlobals().marketPrice);
+    double previousPrice = getGlobals().historicalPrices.get(tick - 1);
+    if (!Double.isNaN(previousPrice)) {
+      double priceReturn = (getGlobals().marketPrice - previousPrice) / previousPrice;
+      getGlobals().pastPriceGains.put(tick, Math.max(priceReturn, 0));
+      getGlobals().pastPriceLosses.put(tick, Math.max(-priceReturn, 0));
+    }
+    getGlobals().traderActivity = getGlobals().modelRandom.uniform(0.1, 0.5);
+    getGlobals().rsiPeriod = 10 + (long) (getGlobals().modelRandom.uniform() * 11);
+  }
+
+  // Indicators are shared by all traders so they are computed once per tick here
+  public void updateMarketIndicators() {
+    getGlobals().indicators = MarketIndicators.compute(tick(), getGlobals(), volatilityTimeFrame);
   }
 
   // This uses the Vasicek Interest Rate Model, dr_t = a(b-r_t)dt + sigma * dW_t, we look at the UK in this model
@@ -164,45 +282,54 @@ public class TradingModel extends AgentBasedModel<Globals> {
     double meanReversionSpeed = 0.5; // Half life of change / ln(2)
     double longTermLevel = 0.83; // Long term mean interest rate
     double dWt = getWienerRate();
-    double volatility = calculateVolatility(20);
+    double volatility = calculateVolatility(volatilityTimeFrame);
     double changeOfRate =
         meanReversionSpeed * (longTermLevel - getGlobals().interestRate) + volatility * dWt;
 
     getGlobals().interestRate += changeOfRate;
   }
 
+  /* Fills on the book and loans are taken in by each trader at the end of the tick, and the
+     aggregate output may want the spread of wealth or a sample of the traders */
+  private boolean needsSettlement() {
+    return getGlobals().limitOrderBook || getGlobals().borrowing
+        || AggregateOutput.recordsTraders(tick());
+  }
+
+  // A day of interest at the current rates, taken in by each trader when it next settles
+  public void updateInterestIndices() {
+    getGlobals().interestIndex *= 1 + getGlobals().interestRate / 365;
+    getGlobals().loanInterestIndex +=
+        (getGlobals().interestRate + getGlobals().interestMargin) / 365;
+  }
+
   /* Wiener rate has gaussian increments, ie W_t+u - W_t ~ N(0, u). We take u to be 1 here since every
    *  time we update the interest rate we want to model this as a single time step in the model*/
   private double getWienerRate() {
-    SeededRandom r = getContext().getPrng();
-    return r.generator.nextGaussian();
+    return getGlobals().modelRandom.normal();
   }
 
-  // We use the standard deviation as a measure for the volatility of the price
   private double calculateVolatility(int timeFrame) {
-    if (getGlobals().historicalPrices.isEmpty()) {
-      return 0;
-    }
-    double mean = getGlobals().historicalPrices.entrySet().stream()
-        .filter(a -> a.getKey() >= getContext().getTick() - timeFrame).mapToDouble(Entry::getValue)
-        .average().getAsDouble();
-    double squaredDevs = getGlobals().historicalPrices.entrySet().stream()
-        .filter(a -> a.getKey() >= getContext().getTick() - timeFrame).mapToDouble(Entry::getValue)
-        .map(a -> Math.pow((mean - a), 2)).sum();
-    getGlobals().volatility = Math.sqrt(squaredDevs / timeFrame);
+    getGlobals().volatility = MarketIndicators
+        .volatility(getGlobals().historicalPrices, tick(), timeFrame);
     return getGlobals().volatility;
   }
 
+  // Model tick, which carries on from the checkpoint's when the run was restored from one
+  private long tick() {
+    return getContext().getTick() + getGlobals().firstTick;
+  }
+
   private void updateProjectedPrice() {
     getGlobals().projectedPrice = predictPrice(1);
   }
 
   // Predicts the price at the current time step using a polynomial fitted to the last 10 points
   public double predictPrice(double tickOffset) {
-    if (getContext().getTick() <= getGlobals().derivativeTimeFrame) {
+    if (tick() <= getGlobals().derivativeTimeFrame) {
       return 0;
     }
     return new PolynomialFunction(getGlobals().priceCoeffs)
-        .value(getContext().getTick() + tickOffset);
+        .value(tick() + tickOffset);
   }
 }
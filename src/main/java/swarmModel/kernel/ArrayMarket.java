@@ -0,0 +1,870 @@
+package swarmModel.kernel;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.apache.commons.math3.analysis.polynomials.PolynomialFunction;
+import swarmModel.Globals;
+import swarmModel.MarketIndicators;
+import swarmModel.RunSummary;
+import swarmModel.utils.Greeks;
+import swarmModel.utils.OpinionNetwork;
+import swarmModel.utils.OptionPricer;
+import swarmModel.utils.RandomActivation;
+import swarmModel.utils.RollingPolynomialFit;
+import swarmModel.utils.WakeUpCalendar;
+
+/* The tick of TradingModel run over primitive arrays instead of agents, for populations too large
+   to hold as Agent objects. Every trader is an index into the shared capital and shares arrays,
+   laid out by type: noise traders, momentum traders, fundamental traders, retail investors,
+   hedge funds and last the market maker. Type specific state is kept in arrays indexed
+   from the start of the type. The order of the tick and the rules of each trader are those of
+   the agent classes, see them for the reasoning behind each rule. There is no message bus, orders
+   are summed as with the aggregated order flow and opinions go through an OpinionNetwork.
+
+   Traders are processed in chunks on all cores. Each chunk draws from its own random stream,
+   derived from the seed, the tick, the phase and the chunk, so a run gives the same result
+   whatever the number of cores. Streams differ from the SDK's, so the kernel agrees with the
+   agent model in distribution rather than run by run, which is what KernelEquivalence checks.
+
+   Traders with nothing to do on a tick are not visited. Active noise and fundamental traders are
+   drawn with RandomActivation, fundamental traders and hedge funds are skipped as a whole on the
+   ticks none of them can trade, and options are exercised for the traders woken up by the
+   calendar of their expiries. */
+public final class ArrayMarket {
+
+  private static final int chunkSize = 4096;
+  private static final int volatilityTimeFrame = 20;
+
+  // A trader buys at most one option per tick, each expiring after at most this many ticks
+  private static final int maxOptionExpiry = 24;
+
+  private static final double initialMarketPrice = 15;
+  private static final double nbBackStepsPrediction = 5;
+  private static final double optionOpinionThreshold = 0.2;
+  private static final double marketMakerMaxThreshold = 0.5;
+  private static final double marketMakerCompensationFactor = 0.001;
+  private static final double hedgeFundShortingPhase = 5;
+  private static final double hedgeFundShortVolume = 500;
+  private static final double hedgeFundSecondShortSellIncrease = 1.5;
+  private static final double hedgeFundCoverPosition = 2.5;
+  private static final double hedgeFundTakeProfit = 0.5;
+  // Fundamental traders trade on a tick when a standard normal draw is below 0.1
+  private static final double fundamentalTradingProbability = OptionPricer.normalCdf(0.1);
+
+  // Phases drawing random numbers, each has its own streams
+  private static final int setupPhase = 0;
+  private static final int retailOpinionPhase = 1;
+  private static final int noisePhase = 2;
+  private static final int momentumPhase = 3;
+  private static final int fundamentalPhase = 4;
+  private static final int retailPhase = 5;
+  private static final int intradayPhase = 6;
+
+  private final Globals globals;
+  private final long seed;
+  private final Random modelRandom;
+  private final RunSummary summary = new RunSummary();
+
+  private final int noiseStart;
+  private final int momentumStart;
+  private final int fundamentalStart;
+  private final int retailStart;
+  private final int hedgeFundStart;
+  private final int marketMaker;
+  private final int traders;
+  private final long nbTraders;
+
+  private final double[] capital;
+  private final double[] shares;
+  // Interest index each trader's capital was last settled at, see settleInterest
+  private final double[] capitalIndices;
+
+  // Option traders, indexed like the shared arrays, unused for fundamental traders and market maker
+  private final OptionPositions options;
+  private final int[] optionExpiryTimes;
+  private final double[] hedgeProportions;
+  private final double[] hedgePositions;
+  private final double[] sharesToBuy;
+  private final double[] sharesToSell;
+
+  private final double[] noiseThresholds;
+  private final double[] momentumOpinions;
+  private final double[] retailOpinions;
+  private final double[] retailSensitivities;
+  private final boolean[] retailDoubts;
+  private final double[] retailPreviousPortfolios;
+  private final boolean[] hedgeFundSecondShorts;
+  private final double[] initiatorOpinions;
+
+  private final OpinionNetwork opinionNetwork = new OpinionNetwork();
+  // Indices of the option traders by the ticks on which their options expire
+  private final WakeUpCalendar optionExpiries = new WakeUpCalendar();
+
+  private double exchangePrice = initialMarketPrice;
+  private double interestIndex = 1;
+  private int lastNetDemand = 0;
+  private int totalDemand = 0;
+  private RollingPolynomialFit demandFit;
+  private RollingPolynomialFit priceFit;
+
+  // Traders ordered by their round of the day, those of a round from its start to the next one's
+  private int[] roundTraders = new int[0];
+  private int[] roundStarts = new int[0];
+  private int[] roundEnds = new int[0];
+  private Worker intradayWorker;
+
+  public ArrayMarket(Globals globals, long seed) {
+    this.globals = globals;
+    this.seed = seed;
+    this.modelRandom = new Random(seed);
+
+    noiseStart = 0;
+    momentumStart = noiseStart + (int) globals.nbNoiseTraders;
+    fundamentalStart = momentumStart + (int) globals.nbMomentumTraders;
+    retailStart = fundamentalStart + (int) globals.nbFundamentalTraders;
+    hedgeFundStart = retailStart + (int) globals.nbRetailInvestors;
+    marketMaker = hedgeFundStart + (int) globals.nbHedgeFunds;
+    traders = marketMaker + 1;
+    nbTraders = globals.nbFundamentalTraders + globals.nbNoiseTraders
+        + globals.nbMomentumTraders + globals.nbHedgeFunds + globals.nbRetailInvestors;
+
+    capital = new double[traders];
+    shares = new double[traders];
+    capitalIndices = new double[traders];
+    options = new OptionPositions(traders, maxOptionExpiry + 1);
+    optionExpiryTimes = new int[traders];
+    hedgeProportions = new double[traders];
+    hedgePositions = new double[traders];
+    sharesToBuy = new double[traders];
+    sharesToSell = new double[traders];
+
+    noiseThresholds = new double[momentumStart - noiseStart];
+    momentumOpinions = new double[fundamentalStart - momentumStart];
+    retailOpinions = new double[hedgeFundStart - retailStart];
+    retailSensitivities = new double[retailOpinions.length];
+    retailDoubts = new boolean[retailOpinions.length];
+    retailPreviousPortfolios = new double[retailOpinions.length];
+    hedgeFundSecondShorts = new boolean[marketMaker - hedgeFundStart];
+    initiatorOpinions = new double[(int) globals.nbInitiators];
+
+    setup();
+  }
+
+  public Globals getGlobals() {
+    return globals;
+  }
+
+  public RunSummary getSummary() {
+    return summary;
+  }
+
+  public int getTraders() {
+    return traders;
+  }
+
+  /* Initial values are those given by the init of each agent class. Options are given to every
+     trader but only noise traders, momentum traders, retail investors and hedge funds use them. */
+  private void setup() {
+    for (int trader = 0; trader < traders; trader++) {
+      capital[trader] = 10000;
+    }
+    Arrays.fill(capitalIndices, interestIndex);
+    forChunks(0, traders, setupPhase, 0, (worker, from, to) -> {
+      SplittableRandom random = worker.random;
+      for (int trader = from; trader < to; trader++) {
+        optionExpiryTimes[trader] = (int) Math.floor(uniform(random, 10, 25));
+        hedgeProportions[trader] = uniform(random, 0.4, 1);
+        if (trader < momentumStart) {
+          capital[trader] = 5000;
+          noiseThresholds[trader - noiseStart] = random.nextDouble();
+        } else if (trader >= retailStart && trader < hedgeFundStart) {
+          capital[trader] = 1000;
+          retailOpinions[trader - retailStart] = uniform(random, -10, 10);
+          retailSensitivities[trader - retailStart] = random.nextDouble();
+        }
+      }
+    });
+    Arrays.fill(retailPreviousPortfolios, 500);
+    Arrays.fill(initiatorOpinions, globals.maxOpinion);
+    buildOpinionNetwork();
+  }
+
+  /* The opinion links of TradingModel: retail investors on a grid two wide, each linked to the
+     ones beside, above and below it, the retail investors split into one contiguous partition per
+     initiator, and each retail investor linked to the momentum trader of its partition of the
+     momentum traders. Nodes are the trader indices, initiators come after the traders. */
+  private void buildOpinionNetwork() {
+    int retailInvestors = retailOpinions.length;
+    int momentumTraders = momentumOpinions.length;
+    int gridWidth = 2;
+    for (int retail = 0; retail < retailInvestors; retail++) {
+      int row = retail / gridWidth;
+      int column = retail % gridWidth;
+      IntStream.Builder receivers = IntStream.builder();
+      if (column > 0) {
+        receivers.add(retail - 1);
+      }
+      if (column < gridWidth - 1 && retail + 1 < retailInvestors) {
+        receivers.add(retail + 1);
+      }
+      if (row > 0) {
+        receivers.add(retail - gridWidth);
+      }
+      if (retail + gridWidth < retailInvestors) {
+        receivers.add(retail + gridWidth);
+      }
+      IntStream retailReceivers = receivers.build().map(receiver -> retailStart + receiver);
+      IntStream momentumReceiver = momentumTraders == 0 ? IntStream.empty()
+          : IntStream.of(momentumStart + partition(retail, retailInvestors, momentumTraders));
+      opinionNetwork.register(retailStart + retail,
+          IntStream.concat(retailReceivers, momentumReceiver).asLongStream().toArray());
+    }
+    for (int initiator = 0; initiator < initiatorOpinions.length; initiator++) {
+      int current = initiator;
+      opinionNetwork.register(traders + initiator, IntStream.range(0, retailInvestors)
+          .filter(retail -> partition(retail, retailInvestors, initiatorOpinions.length) == current)
+          .mapToLong(retail -> retailStart + retail).toArray());
+    }
+    opinionNetwork.build();
+  }
+
+  private static int partition(int index, int size, int partitions) {
+    return (int) ((long) index * partitions / size);
+  }
+
+  // Ticks are counted from 0, as getContext().getTick() is in the first step of the agent model
+  public void step(long tick) {
+    // We update the interest rate every 5 iterations
+    if (globals.variableInterestRates && tick % 5 == 0 && tick > 20) {
+      updateInterestRate(tick);
+    }
+    updateHistoricalPrices(tick);
+    globals.indicators = MarketIndicators.compute(tick, globals, volatilityTimeFrame);
+    updateDemandPrediction(tick);
+    updateOptions(tick);
+    updateOpinions(tick);
+    if (globals.intradayRounds > 1) {
+      tradeIntraday(tick);
+    } else {
+      long[] orders = trade(tick);
+      calculateBuyAndSellPrice(orders[0], orders[1]);
+    }
+    interestIndex *= 1 + globals.interestRate / 365;
+    summary.record(globals.marketPrice, globals.interestRate);
+  }
+
+  /******************* Model ******************/
+
+  private void updateInterestRate(long tick) {
+    double meanReversionSpeed = 0.5;
+    double longTermLevel = 0.83;
+    double dWt = modelRandom.nextGaussian();
+    globals.volatility = MarketIndicators
+        .volatility(globals.historicalPrices, tick, volatilityTimeFrame);
+    globals.interestRate += meanReversionSpeed * (longTermLevel - globals.interestRate)
+        + globals.volatility * dWt;
+  }
+
+  private void updateHistoricalPrices(long tick) {
+    globals.historicalPrices.put(tick, globals.marketPrice);
+    double previousPrice = globals.historicalPrices.get(tick - 1);
+    if (!Double.isNaN(previousPrice)) {
+      double priceReturn = (globals.marketPrice - previousPrice) / previousPrice;
+      globals.pastPriceGains.put(tick, Math.max(priceReturn, 0));
+      globals.pastPriceLosses.put(tick, Math.max(-priceReturn, 0));
+    }
+    globals.traderActivity = uniform(modelRandom, 0.1, 0.5);
+    globals.rsiPeriod = 10 + modelRandom.nextInt(11);
+  }
+
+  /******************* Exchange ******************/
+
+  private void updateDemandPrediction(long tick) {
+    globals.pastNetDemand.put(tick, (double) lastNetDemand);
+    globals.pastTotalDemand.put(tick, (double) totalDemand);
+    int window = (int) Math.floor(globals.derivativeTimeFrame) + 1;
+    int order = globals.orderOfPoly;
+    if (demandFit == null || demandFit.getWindow() != window || demandFit.getOrder() != order) {
+      demandFit = new RollingPolynomialFit(order, window);
+      priceFit = new RollingPolynomialFit(order, window);
+    }
+    demandFit.add(tick, lastNetDemand);
+    priceFit.add(tick, globals.historicalPrices.get(tick));
+    if (tick >= globals.derivativeTimeFrame && demandFit.canFit() && priceFit.canFit()) {
+      globals.coeffs = demandFit.fit(globals.coeffs);
+      globals.priceCoeffs = priceFit.fit(globals.priceCoeffs);
+    }
+  }
+
+  private void calculateBuyAndSellPrice(long buyVolume, long sellVolume) {
+    int buys = (int) buyVolume;
+    int sells = (int) sellVolume;
+    totalDemand = buys + sells;
+    lastNetDemand = buys - sells;
+    movePrice(lastNetDemand);
+  }
+
+  private void movePrice(int netDemand) {
+    if (netDemand == 0) {
+      globals.priceChange = 0;
+      return;
+    }
+    double priceChange = (netDemand / (double) nbTraders) / globals.lambda;
+    double previousPrice = exchangePrice;
+    exchangePrice = exchangePrice + priceChange > 0 ? exchangePrice + priceChange : 0;
+    globals.marketPrice = exchangePrice;
+    globals.priceChange = exchangePrice - previousPrice;
+  }
+
+  /******************* Options and opinions ******************/
+
+  /* A trader has at most one option expiring on a tick, as it buys at most one per tick, so the
+     traders woken up are all different and can be split into chunks. */
+  private void updateOptions(long tick) {
+    int nbDue = optionExpiries.drainDue(tick);
+    long[] due = optionExpiries.getDue();
+    forChunks(0, nbDue, -1, tick, (worker, from, to) -> {
+      for (int i = from; i < to; i++) {
+        int trader = (int) due[i];
+        while (options.hasExpired(trader, tick)) {
+          double toSend = worker.actOnOption(trader, options.isOldestCall(trader),
+              options.oldestStrike(trader));
+          if (toSend >= 0) {
+            sharesToBuy[trader] += toSend;
+          } else {
+            sharesToSell[trader] += Math.abs(toSend);
+          }
+          options.removeOldest(trader);
+        }
+      }
+    });
+  }
+
+  private void updateOpinions(long tick) {
+    for (int retail = 0; retail < retailOpinions.length; retail++) {
+      opinionNetwork.share(retailStart + retail, retailOpinions[retail]);
+    }
+    for (int initiator = 0; initiator < initiatorOpinions.length; initiator++) {
+      initiatorOpinions[initiator] = tick <= globals.timeToSell ? globals.maxOpinion
+          : -globals.maxOpinion;
+      opinionNetwork.share(traders + initiator, initiatorOpinions[initiator]);
+    }
+    opinionNetwork.propagate();
+
+    forChunks(retailStart, hedgeFundStart, retailOpinionPhase, tick, (worker, from, to) -> {
+      for (int trader = from; trader < to; trader++) {
+        int retail = trader - retailStart;
+        double generalOpinion = opinionNetwork.meanOpinion(trader);
+        if (generalOpinion != 0 && tick % 3 == 0) {
+          if (retailDoubts[retail]) {
+            retailOpinions[retail] = -retailOpinions[retail];
+          } else {
+            retailOpinions[retail] = (generalOpinion + retailOpinions[retail]) / 2;
+          }
+          retailDoubts[retail] = worker.random.nextDouble() > 0.9;
+        }
+      }
+    });
+    for (int trader = momentumStart; trader < fundamentalStart; trader++) {
+      momentumOpinions[trader - momentumStart] = opinionNetwork.meanOpinion(trader);
+    }
+  }
+
+  /******************* Trading ******************/
+
+  // Returns the buy and sell volume of the tick
+  private long[] trade(long tick) {
+    long[] orders = new long[2];
+    // Inactive noise traders are only visited to hedge their options or send exercised shares
+    forChunks(noiseStart, momentumStart, noisePhase, tick, (worker, from, to) -> {
+      long nextActive = from + worker.skip(globals.noiseActivity);
+      for (int trader = from; trader < to; trader++) {
+        boolean active = trader == nextActive;
+        if (active) {
+          nextActive += 1 + worker.skip(globals.noiseActivity);
+        }
+        if (active || options.holdsOptions(trader) || sharesToBuy[trader] > 0
+            || sharesToSell[trader] > 0) {
+          worker.noiseTrader(trader, tick, active);
+        }
+      }
+    }, orders);
+    forChunks(momentumStart, fundamentalStart, momentumPhase, tick, (worker, from, to) -> {
+      for (int trader = from; trader < to; trader++) {
+        worker.momentumTrader(trader, tick);
+      }
+    }, orders);
+    if (fundamentalTradersCanTrade(tick)) {
+      forChunks(fundamentalStart, retailStart, fundamentalPhase, tick, (worker, from, to) -> {
+        for (long trader = from + worker.skip(fundamentalTradingProbability); trader < to;
+            trader += 1 + worker.skip(fundamentalTradingProbability)) {
+          worker.fundamentalTrader((int) trader);
+        }
+      }, orders);
+    }
+    forChunks(retailStart, hedgeFundStart, retailPhase, tick, (worker, from, to) -> {
+      for (int trader = from; trader < to; trader++) {
+        worker.retailInvestor(trader, tick);
+      }
+    }, orders);
+    if (hedgeFundsCanTrade(tick)) {
+      forChunks(hedgeFundStart, marketMaker, -1, tick, (worker, from, to) -> {
+        for (int trader = from; trader < to; trader++) {
+          worker.hedgeFund(trader, tick);
+        }
+      }, orders);
+    }
+    forChunks(marketMaker, traders, -1, tick,
+        (worker, from, to) -> worker.marketMaker(marketMaker, tick), orders);
+    return orders;
+  }
+
+  private boolean fundamentalTradersCanTrade(long tick) {
+    return tick > globals.rsiPeriod && (globals.indicators.rsi > globals.overBuyThresh
+        || globals.indicators.rsi < globals.overSellThresh);
+  }
+
+  // Past the shorting phase hedge funds only act beyond their take profit or second short levels
+  private boolean hedgeFundsCanTrade(long tick) {
+    double increaseProportion = globals.marketPrice / initialMarketPrice;
+    return tick < hedgeFundShortingPhase || increaseProportion < hedgeFundTakeProfit
+        || increaseProportion > hedgeFundSecondShortSellIncrease;
+  }
+
+  /* Each trader makes the trades of its day in one round, see RandomActivation.round, and the price
+     moves after every round. The traders of a round are too few to share out between cores, so
+     the rounds run one after the other on a single worker kept for the whole run, which draws
+     from one stream and reuses its buffers. Nothing is allocated per round. */
+  private void tradeIntraday(long tick) {
+    int rounds = (int) globals.intradayRounds;
+    sortByRound(tick, rounds);
+    if (intradayWorker == null) {
+      intradayWorker = new Worker(random(intradayPhase, 0, 0));
+    }
+    Worker worker = intradayWorker;
+    boolean fundamentalTradersCanTrade = fundamentalTradersCanTrade(tick);
+    double openPrice = exchangePrice;
+    long buys = 0;
+    long sells = 0;
+    for (int round = 0; round < rounds; round++) {
+      worker.buyVolume = 0;
+      worker.sellVolume = 0;
+      for (int i = roundStarts[round]; i < roundEnds[round]; i++) {
+        int trader = roundTraders[i];
+        if (trader < momentumStart) {
+          worker.noiseTrader(trader, tick, worker.random.nextDouble() < globals.noiseActivity);
+        } else if (trader < fundamentalStart) {
+          worker.momentumTrader(trader, tick);
+        } else if (trader < retailStart) {
+          if (fundamentalTradersCanTrade
+              && worker.random.nextDouble() < fundamentalTradingProbability) {
+            worker.fundamentalTrader(trader);
+          }
+        } else if (trader < hedgeFundStart) {
+          worker.retailInvestor(trader, tick);
+        } else if (trader < marketMaker) {
+          if (hedgeFundsCanTrade(tick)) {
+            worker.hedgeFund(trader, tick);
+          }
+        } else {
+          worker.marketMaker(trader, tick);
+        }
+      }
+      movePrice((int) worker.buyVolume - (int) worker.sellVolume);
+      buys += worker.buyVolume;
+      sells += worker.sellVolume;
+    }
+    scheduleWakeUps(worker);
+    // The demand kept for the market maker is that of the day, the price change is since the open
+    totalDemand = (int) buys + (int) sells;
+    lastNetDemand = (int) buys - (int) sells;
+    globals.priceChange = exchangePrice - openPrice;
+  }
+
+  // Counting sort of the traders by their round of the day
+  private void sortByRound(long tick, int rounds) {
+    if (roundTraders.length != traders || roundStarts.length != rounds) {
+      roundTraders = new int[traders];
+      roundStarts = new int[rounds];
+      roundEnds = new int[rounds];
+    }
+    Arrays.fill(roundEnds, 0);
+    for (int trader = 0; trader < traders; trader++) {
+      roundEnds[(int) RandomActivation.round(seed, trader, tick, rounds)]++;
+    }
+    int start = 0;
+    for (int round = 0; round < rounds; round++) {
+      roundStarts[round] = start;
+      start += roundEnds[round];
+      roundEnds[round] = roundStarts[round];
+    }
+    for (int trader = 0; trader < traders; trader++) {
+      roundTraders[roundEnds[(int) RandomActivation.round(seed, trader, tick, rounds)]++] = trader;
+    }
+  }
+
+  // Portfolios are only valued when a retail investor looks at its own, not every tick
+  private double portfolioValue(int trader) {
+    settleInterest(trader);
+    double price = globals.marketPrice;
+    double value = shares[trader] * price + capital[trader];
+    if (isOptionTrader(trader)) {
+      value += options.intrinsicValue(trader, price, globals.optionShareNumber);
+    }
+    return value;
+  }
+
+  // Brings the trader's capital up to the interest index before it is read or changed
+  private void settleInterest(int trader) {
+    if (capitalIndices[trader] != interestIndex) {
+      capital[trader] *= interestIndex / capitalIndices[trader];
+      capitalIndices[trader] = interestIndex;
+    }
+  }
+
+  private boolean isOptionTrader(int trader) {
+    return trader < fundamentalStart || (trader >= retailStart && trader < marketMaker);
+  }
+
+  /******************* Chunks ******************/
+
+  private interface ChunkAction {
+
+    void run(Worker worker, int from, int to);
+  }
+
+  private void forChunks(int from, int to, int phase, long tick, ChunkAction action) {
+    forChunks(from, to, phase, tick, action, null);
+  }
+
+  /* Adds the buy and sell volume of the chunks to orders when given, phases below 0 draw nothing.
+     The options bought by the chunks are then put in the calendar in chunk order. */
+  private void forChunks(int from, int to, int phase, long tick, ChunkAction action,
+      long[] orders) {
+    int chunks = (to - from + chunkSize - 1) / chunkSize;
+    List<Worker> workers = IntStream.range(0, chunks).parallel().mapToObj(chunk -> {
+      Worker worker = new Worker(phase < 0 ? null : random(phase, tick, chunk));
+      int start = from + chunk * chunkSize;
+      action.run(worker, start, Math.min(to, start + chunkSize));
+      return worker;
+    }).collect(Collectors.toList());
+    if (orders != null) {
+      for (Worker worker : workers) {
+        orders[0] += worker.buyVolume;
+        orders[1] += worker.sellVolume;
+      }
+    }
+    for (Worker worker : workers) {
+      scheduleWakeUps(worker);
+    }
+  }
+
+  private void scheduleWakeUps(Worker worker) {
+    for (int i = 0; i < worker.nbWakeUps; i++) {
+      optionExpiries.schedule(worker.wakeUpTicks[i], worker.wakeUpTraders[i]);
+    }
+    worker.nbWakeUps = 0;
+  }
+
+  private SplittableRandom random(int phase, long tick, int chunk) {
+    long state = mix(seed + 0x9E3779B97F4A7C15L * (phase + 1));
+    state = mix(state + tick);
+    return new SplittableRandom(mix(state + chunk));
+  }
+
+  // The SplitMix64 finalizer
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  private static double uniform(SplittableRandom random, double lower, double upper) {
+    return lower + (upper - lower) * random.nextDouble();
+  }
+
+  private static double uniform(Random random, double lower, double upper) {
+    return lower + (upper - lower) * random.nextDouble();
+  }
+
+  /* The rules of the traders for the traders of one chunk. Orders are added up per chunk, in
+     whole shares as the order flow does. */
+  private final class Worker {
+
+    final SplittableRandom random;
+    final Greeks greeks = new Greeks();
+    long buyVolume = 0;
+    long sellVolume = 0;
+    long[] wakeUpTicks = new long[0];
+    int[] wakeUpTraders = new int[0];
+    int nbWakeUps = 0;
+
+    Worker(SplittableRandom random) {
+      this.random = random;
+    }
+
+    // Traders of the chunk passed over before the next one active with the given probability
+    int skip(double probability) {
+      return RandomActivation.skip(random.nextDouble(), probability);
+    }
+
+    void noiseTrader(int trader, long tick, boolean active) {
+      int noise = trader - noiseStart;
+      if (active) {
+        noiseThresholds[noise] = random.nextDouble();
+        if (Math.abs(noiseThresholds[noise]) > 0.5) {
+          buy(trader, globals.stdVolume);
+        } else {
+          sell(trader, globals.stdVolume);
+        }
+        if (Math.abs(noiseThresholds[noise]) > 0.95) {
+          buyOption(trader, true, tick);
+        } else if (Math.abs(noiseThresholds[noise]) < 0.05) {
+          buyOption(trader, false, tick);
+        }
+      }
+      sendShares(trader);
+      deltaHedge(trader, tick);
+    }
+
+    void momentumTrader(int trader, long tick) {
+      double probToBuy = random.nextDouble();
+      if (tick > globals.longTermAveragePeriod) {
+        double longTermMovingAvg = globals.indicators.longTermMovingAvg;
+        double shortTermMovingAvg = globals.indicators.shortTermMovingAvg;
+        if (shortTermMovingAvg > longTermMovingAvg && probToBuy < globals.traderActivity) {
+          buy(trader, globals.stdVolume);
+        } else if (shortTermMovingAvg < longTermMovingAvg
+            && probToBuy < globals.traderActivity) {
+          sell(trader, globals.stdVolume);
+        }
+      }
+      if (tick > globals.timeToStartOpinionSharing && probToBuy < globals.traderActivity) {
+        buyOption(trader, momentumOpinions[trader - momentumStart] > 0, tick);
+      }
+      deltaHedge(trader, tick);
+      sendShares(trader);
+    }
+
+    // Only run for the traders active on a tick on which fundamental traders can trade
+    void fundamentalTrader(int trader) {
+      double rsi = globals.indicators.rsi;
+      if (rsi > globals.overBuyThresh) {
+        sell(trader, globals.stdVolume);
+      } else if (rsi < globals.overSellThresh) {
+        buy(trader, globals.stdVolume);
+      }
+    }
+
+    void retailInvestor(int trader, long tick) {
+      int retail = trader - retailStart;
+      if (tick % 15 == 0 && tick > 1) {
+        updateSensitivity(trader, retail);
+      }
+      if (tick > globals.timeToStartOpinionSharing && random.nextDouble() > 0.25) {
+        tradeOnOpinion(trader, retailOpinions[retail], retailSensitivities[retail], tick);
+      }
+      deltaHedge(trader, tick);
+      sendShares(trader);
+    }
+
+    private void updateSensitivity(int trader, int retail) {
+      double portfolio = portfolioValue(trader);
+      double sensitivity = retailSensitivities[retail]
+          + (portfolio > retailPreviousPortfolios[retail] ? 0.025 : -0.025);
+      retailSensitivities[retail] = Math.min(Math.max(sensitivity, 0), 1);
+      retailPreviousPortfolios[retail] = portfolio;
+    }
+
+    void hedgeFund(int trader, long tick) {
+      if (tick < hedgeFundShortingPhase) {
+        sell(trader, hedgeFundShortVolume);
+        return;
+      }
+      int hedgeFund = trader - hedgeFundStart;
+      double increaseProportion = globals.marketPrice / initialMarketPrice;
+      if (increaseProportion < hedgeFundTakeProfit) {
+        buy(trader, Math.abs(shares[trader]));
+      }
+      if (increaseProportion > hedgeFundSecondShortSellIncrease
+          && !hedgeFundSecondShorts[hedgeFund]) {
+        sell(trader, hedgeFundShortVolume * increaseProportion);
+        if (tick % hedgeFundShortingPhase == 0) {
+          hedgeFundSecondShorts[hedgeFund] = true;
+        }
+      }
+      if (increaseProportion > hedgeFundCoverPosition && shares[trader] < 0) {
+        buy(trader, Math.abs(shares[trader]));
+      }
+    }
+
+    /* Option purchases are messages sent in the same phase as the market maker acts, which reach
+       it in the next phase where it does not act, so the agent model's market maker never writes
+       options and only adds liquidity against the predicted demand. */
+    void marketMaker(int trader, long tick) {
+      double predictNetDemand = tick <= globals.derivativeTimeFrame ? 0
+          : new PolynomialFunction(globals.coeffs).value(tick);
+      double predictTotalDemand = predictTotalDemand(tick);
+      if (predictTotalDemand > 0
+          && Math.abs(predictNetDemand / predictTotalDemand) > marketMakerMaxThreshold) {
+        long compensation = Math.round(Math.min(Math.abs(predictNetDemand), nbTraders)
+            * marketMakerCompensationFactor);
+        if (predictNetDemand > 0) {
+          sell(trader, compensation);
+        } else {
+          buy(trader, compensation);
+        }
+      }
+    }
+
+    private double predictTotalDemand(long tick) {
+      if (tick == 0) {
+        return 0;
+      } else if (tick < nbBackStepsPrediction) {
+        return globals.pastTotalDemand.sum(0, tick) / tick;
+      }
+      return globals.pastTotalDemand
+          .sum((long) Math.ceil(tick - nbBackStepsPrediction), tick) / nbBackStepsPrediction;
+    }
+
+    /******************* Orders ******************/
+
+    void buy(int trader, double volume) {
+      settleInterest(trader);
+      shares[trader] += volume;
+      capital[trader] -= volume * globals.marketPrice;
+      buyVolume += (long) volume;
+    }
+
+    void sell(int trader, double volume) {
+      settleInterest(trader);
+      double toSell = volume;
+      if (shares[trader] <= 0) {
+        shortStock(trader, (int) volume);
+        toSell = 0;
+      } else if (shares[trader] < volume) {
+        toSell -= shares[trader];
+        shortStock(trader, (int) (volume - shares[trader]));
+      }
+      if (toSell > 0) {
+        shares[trader] -= toSell;
+        capital[trader] += toSell * globals.marketPrice;
+        sellVolume += (long) toSell;
+      }
+    }
+
+    private void shortStock(int trader, int volume) {
+      shares[trader] -= volume;
+      capital[trader] += volume * globals.marketPrice;
+      sellVolume += volume;
+    }
+
+    void sendShares(int trader) {
+      if (sharesToSell[trader] > 0) {
+        shares[trader] -= sharesToSell[trader];
+        sellVolume += (long) sharesToSell[trader];
+      }
+      if (sharesToBuy[trader] > 0) {
+        shares[trader] += sharesToBuy[trader];
+        buyVolume += (long) sharesToBuy[trader];
+      }
+      sharesToBuy[trader] = 0;
+      sharesToSell[trader] = 0;
+    }
+
+    /******************* Options ******************/
+
+    void buyOption(int trader, boolean call, long tick) {
+      double strike = globals.marketPrice
+          * (call ? globals.callStrikeFactor : globals.putStrikeFactor);
+      int timeToExpiry = optionExpiryTimes[trader];
+      double price = OptionPricer.price(call, globals.marketPrice, strike, timeToExpiry,
+          globals.interestRate, globals.volatility, globals.optionShareNumber);
+      options.add(trader, tick + timeToExpiry, strike, call);
+      wakeUp(tick + timeToExpiry, trader);
+      settleInterest(trader);
+      capital[trader] -= price;
+    }
+
+    private void wakeUp(long tick, int trader) {
+      if (nbWakeUps == wakeUpTicks.length) {
+        wakeUpTicks = Arrays.copyOf(wakeUpTicks, Math.max(16, nbWakeUps * 2));
+        wakeUpTraders = Arrays.copyOf(wakeUpTraders, wakeUpTicks.length);
+      }
+      wakeUpTicks[nbWakeUps] = tick;
+      wakeUpTraders[nbWakeUps++] = trader;
+    }
+
+    double actOnOption(int trader, boolean call, double strike) {
+      settleInterest(trader);
+      double price = globals.marketPrice;
+      if (call && price > strike) {
+        capital[trader] += (price - strike) * globals.optionShareNumber;
+        return globals.optionShareNumber;
+      } else if (!call && price < strike) {
+        capital[trader] += (strike - price) * globals.optionShareNumber;
+        return -1 * globals.optionShareNumber;
+      }
+      return 0;
+    }
+
+    void deltaHedge(int trader, long tick) {
+      double totalDelta = Math.round(options.positionDelta(trader, tick, globals, greeks));
+      totalDelta *= hedgeProportions[trader];
+      if (totalDelta == 0) {
+        return;
+      }
+      double hedgePosition = hedgePositions[trader];
+      double absoluteHedge = Math.abs(hedgePosition);
+      double absoluteDelta = Math.abs(totalDelta);
+      double changeInHedge = 0;
+      if (totalDelta >= 0) {
+        if (hedgePosition >= 0) {
+          changeInHedge = -(absoluteDelta + absoluteHedge);
+        } else if (absoluteHedge < absoluteDelta) {
+          changeInHedge = -(absoluteDelta - absoluteHedge);
+        } else if (absoluteHedge > absoluteDelta) {
+          changeInHedge = absoluteHedge - absoluteDelta;
+        }
+      } else {
+        if (hedgePosition <= 0) {
+          changeInHedge = absoluteHedge + absoluteDelta;
+        } else if (absoluteHedge > absoluteDelta) {
+          changeInHedge = -(absoluteHedge - absoluteDelta);
+        } else if (absoluteHedge < absoluteDelta) {
+          changeInHedge = absoluteDelta - absoluteHedge;
+        }
+      }
+      if (changeInHedge < 0) {
+        sell(trader, Math.abs(changeInHedge));
+      } else if (changeInHedge > 0) {
+        buy(trader, changeInHedge);
+      }
+      hedgePositions[trader] += changeInHedge;
+    }
+
+    void tradeOnOpinion(int trader, double generalOpinion, double sensitivity, long tick) {
+      double scaledOpinion = Math.abs(generalOpinion / 20);
+      double sensitiveOpinion =
+          (Math.exp(scaledOpinion * 10 * sensitivity) - 1) / (Math.exp(10 * sensitivity) - 1);
+      if (sensitiveOpinion <= 0) {
+        sensitiveOpinion = 0;
+      } else if (sensitiveOpinion > 1) {
+        sensitiveOpinion = 1;
+      }
+      double sharesTraded = Math.floor(sensitiveOpinion * globals.maxSharesTradedOnOpinion);
+      if (generalOpinion > 0) {
+        buy(trader, Math.abs(sharesTraded));
+      } else {
+        sell(trader, Math.abs(sharesTraded));
+      }
+      if (sensitiveOpinion > optionOpinionThreshold) {
+        buyOption(trader, generalOpinion > 0, tick);
+      }
+    }
+  }
+}
@@ -0,0 +1,158 @@
+package swarmModel.kernel;
+
+import java.util.Arrays;
+import swarmModel.Globals;
+import swarmModel.utils.Greeks;
+
+/* The options held by every trader of the kernel, in flat arrays. A trader always buys its options
+   with the same time to expiry and at most one per tick, so they expire in the order they were
+   bought and never more than that many are held at once. Each trader's options are kept in a ring
+   of that size. The delta of each position is kept as an aggregate as OptionTrader does, moved
+   with the gamma and kept within the range the delta of the options can take until the options,
+   the rate or the volatility change, an option gets too close to expiry to be hedged, or the price
+   or the age of the valuation pass the limits of OptionTrader. */
+final class OptionPositions {
+
+  // Options with fewer ticks than this left to expiry are no longer hedged
+  private static final int hedgeCutoff = 5;
+  private static final double revaluationMove = 0.01;
+  private static final long revaluationAge = 5;
+
+  private final int capacity;
+  private final double[] strikes;
+  private final int[] expiryTicks;
+  private final boolean[] calls;
+  private final int[] heads;
+  private final int[] sizes;
+
+  private final long[] versions;
+  private final long[] valuedVersions;
+  private final long[] nextHedgeCutoffTicks;
+  private final double[] positionDeltas;
+  private final double[] positionGammas;
+  private final double[] minPositionDeltas;
+  private final double[] maxPositionDeltas;
+  private final double[] valuedPrices;
+  private final long[] valuedTicks;
+  private final double[] valuedInterestRates;
+  private final double[] valuedVolatilities;
+
+  OptionPositions(int traders, int capacity) {
+    this.capacity = capacity;
+    strikes = new double[traders * capacity];
+    expiryTicks = new int[traders * capacity];
+    calls = new boolean[traders * capacity];
+    heads = new int[traders];
+    sizes = new int[traders];
+    versions = new long[traders];
+    valuedVersions = new long[traders];
+    nextHedgeCutoffTicks = new long[traders];
+    positionDeltas = new double[traders];
+    positionGammas = new double[traders];
+    minPositionDeltas = new double[traders];
+    maxPositionDeltas = new double[traders];
+    valuedPrices = new double[traders];
+    valuedTicks = new long[traders];
+    valuedInterestRates = new double[traders];
+    valuedVolatilities = new double[traders];
+    Arrays.fill(valuedVersions, -1);
+    Arrays.fill(nextHedgeCutoffTicks, Long.MAX_VALUE);
+    Arrays.fill(valuedInterestRates, Double.NaN);
+    Arrays.fill(valuedVolatilities, Double.NaN);
+  }
+
+  void add(int trader, long expiryTick, double strike, boolean call) {
+    if (sizes[trader] == capacity) {
+      throw new IllegalStateException("Trader " + trader + " holds more options than expected");
+    }
+    int slot = trader * capacity + (heads[trader] + sizes[trader]) % capacity;
+    strikes[slot] = strike;
+    expiryTicks[slot] = (int) expiryTick;
+    calls[slot] = call;
+    sizes[trader]++;
+    versions[trader]++;
+  }
+
+  boolean holdsOptions(int trader) {
+    return sizes[trader] > 0;
+  }
+
+  // True when the oldest option of the trader has expired by the given tick
+  boolean hasExpired(int trader, long tick) {
+    return sizes[trader] > 0 && expiryTicks[trader * capacity + heads[trader]] <= tick;
+  }
+
+  double oldestStrike(int trader) {
+    return strikes[trader * capacity + heads[trader]];
+  }
+
+  boolean isOldestCall(int trader) {
+    return calls[trader * capacity + heads[trader]];
+  }
+
+  void removeOldest(int trader) {
+    heads[trader] = (heads[trader] + 1) % capacity;
+    sizes[trader]--;
+    versions[trader]++;
+  }
+
+  // What the options would pay if exercised now, as OptionTrader.calculateOptionPortfolioValue
+  double intrinsicValue(int trader, double price, double shareNumber) {
+    double value = 0;
+    for (int i = 0; i < sizes[trader]; i++) {
+      int slot = trader * capacity + (heads[trader] + i) % capacity;
+      value += Math.max((calls[slot] ? price - strikes[slot] : strikes[slot] - price) * shareNumber,
+          0);
+    }
+    return value;
+  }
+
+  double positionDelta(int trader, long tick, Globals globals, Greeks greeks) {
+    double price = globals.marketPrice;
+    if (versions[trader] != valuedVersions[trader] || tick >= nextHedgeCutoffTicks[trader]
+        || globals.interestRate != valuedInterestRates[trader]
+        || globals.volatility != valuedVolatilities[trader]
+        || Math.abs(price - valuedPrices[trader]) > revaluationMove * valuedPrices[trader]
+        || tick - valuedTicks[trader] >= revaluationAge) {
+      revalue(trader, tick, globals, greeks);
+    }
+    double delta = positionDeltas[trader]
+        + positionGammas[trader] * (price - valuedPrices[trader]);
+    return Math.min(Math.max(delta, minPositionDeltas[trader]), maxPositionDeltas[trader]);
+  }
+
+  private void revalue(int trader, long tick, Globals globals, Greeks greeks) {
+    double delta = 0;
+    double gamma = 0;
+    double minDelta = 0;
+    double maxDelta = 0;
+    long nextCutoff = Long.MAX_VALUE;
+    for (int i = 0; i < sizes[trader]; i++) {
+      int slot = trader * capacity + (heads[trader] + i) % capacity;
+      int timeToExpiry = (int) (expiryTicks[slot] - tick);
+      if (timeToExpiry < hedgeCutoff) {
+        continue;
+      }
+      greeks.compute(calls[slot], globals.marketPrice, strikes[slot], timeToExpiry,
+          globals.interestRate, globals.volatility, globals.optionShareNumber);
+      delta += greeks.delta;
+      gamma += greeks.gamma;
+      if (calls[slot]) {
+        maxDelta += globals.optionShareNumber;
+      } else {
+        minDelta -= globals.optionShareNumber;
+      }
+      nextCutoff = Math.min(nextCutoff, expiryTicks[slot] - hedgeCutoff + 1);
+    }
+    positionDeltas[trader] = delta;
+    positionGammas[trader] = gamma;
+    minPositionDeltas[trader] = minDelta;
+    maxPositionDeltas[trader] = maxDelta;
+    nextHedgeCutoffTicks[trader] = nextCutoff;
+    valuedVersions[trader] = versions[trader];
+    valuedPrices[trader] = globals.marketPrice;
+    valuedTicks[trader] = tick;
+    valuedInterestRates[trader] = globals.interestRate;
+    valuedVolatilities[trader] = globals.volatility;
+  }
+}
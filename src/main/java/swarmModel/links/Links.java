@@ -5,5 +5,4 @@ import simudyne.core.graph.Link;
 public class Links {
   public static class TradeLink extends Link.Empty {}
   public static class OpinionLink extends Link.Empty {}
-  public static class BorrowLink extends Link.Empty {}
 }
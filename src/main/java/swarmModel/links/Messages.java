@@ -13,12 +13,6 @@ public class Messages {
     public double volume;
   }
 
-  public static class MarketPriceMessage extends Message {
-
-    public double price;
-    public double priceChange;
-  }
-
   public static class PutOptionBought extends Message {
 
     public Option option;
@@ -33,18 +27,4 @@ public class Messages {
 
     public double opinion;
   }
-
-  public static class BorrowRequest extends Message {
-    public double borrowAmount;
-  }
-
-  public static class BorrowOutcome extends Message {
-    public double lendAmount;
-    public boolean isLending;
-  }
-
-  public static class PayBackLoan extends Message {
-    public double originalLoanRepayment;
-    public double interestPaidBack;
-  }
 }
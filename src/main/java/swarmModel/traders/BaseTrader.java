@@ -1,68 +1,136 @@
 package swarmModel.traders;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map.Entry;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import org.apache.commons.math3.analysis.polynomials.PolynomialFunction;
 import simudyne.core.abm.Action;
 import simudyne.core.abm.Agent;
 import simudyne.core.annotations.Variable;
 import simudyne.core.functions.SerializableConsumer;
+import swarmModel.AggregateOutput;
+import swarmModel.Checkpoint;
 import swarmModel.Globals;
+import swarmModel.TickProfiler;
 import swarmModel.links.Links.TradeLink;
 import swarmModel.links.Messages.BuyOrderPlaced;
 import swarmModel.links.Messages.SellOrderPlaced;
 import swarmModel.utils.Option;
+import swarmModel.utils.RandomActivation;
+import swarmModel.utils.RandomStream;
 
-public abstract class BaseTrader extends Agent<Globals> {
+public abstract class BaseTrader extends Agent<Globals> implements Checkpoint.AgentState {
 
-  @Variable
+  // As of capitalIndex, read through getCapital from outside the trader's own actions
   public double capital = 0;
 
   @Variable
   public double shares = 0;
 
-  @Variable
-  public double portfolio = capital;
-
-  protected final double initialMarketPrice = 15;
+  protected static final double initialMarketPrice = 15;
   private static final double nbBackStepsPrediction = 5;
 
-  public List<Option> soldOptions = new ArrayList<>();
+  private RandomStream randomStream;
+  private double capitalIndex = 1;
+  private int wealthType = -1;
 
   @Override
   public void init() {
     super.init();
-    capital = 10000;
+    capitalIndex = getGlobals().interestIndex;
+    getGlobals().marketWealth.addTrader(wealthType());
+    setCapital(10000);
+  }
+
+  private static Action<BaseTrader> action(String phase,
+      SerializableConsumer<BaseTrader> consumer) {
+    return traderAction(BaseTrader.class, phase, consumer);
+  }
+
+  // Every action of a trader first brings its capital up to date, see settleInterest
+  protected static <T extends BaseTrader> Action<T> traderAction(Class<T> type, String phase,
+      SerializableConsumer<T> consumer) {
+    return Action.create(type, TickProfiler.profile(phase, trader -> {
+      trader.settleInterest();
+      consumer.accept(trader);
+    }));
   }
 
-  private static Action<BaseTrader> action(SerializableConsumer<BaseTrader> consumer) {
-    return Action.create(BaseTrader.class, consumer);
+  // Fills of the earlier rounds of a day, the last one is settled with the portfolio values
+  public static Action<BaseTrader> settleRound() {
+    return action("settleRound", BaseTrader::settleTrades);
   }
 
-  public static Action<BaseTrader> updatePortfolioValues() {
-    return action(trader -> {
-      trader.updateCapitalForInterest();
-      trader.updatePortfolioValue();
+  /* Takes in the fills and loans of the tick and records the trader in the aggregate output. The
+     model only runs it on the ticks that need one of these, see TradingModel.needsSettlement */
+  public static Action<BaseTrader> settleTick() {
+    return action("settleTick", trader -> {
+      trader.settleTrades();
+      trader.settleLoan();
+      AggregateOutput.recordTrader(trader);
     });
   }
 
+  public static Action<BaseTrader> saveState() {
+    return action("saveState", trader -> Checkpoint.save(trader.getID(), trader));
+  }
+
+  public static Action<BaseTrader> restoreState() {
+    return action("restoreState", trader -> Checkpoint.restore(trader.getID(), trader));
+  }
+
+  // Model tick, which carries on from the checkpoint's when the run was restored from one
+  public long tick() {
+    return getContext().getTick() + getGlobals().firstTick;
+  }
+
+  // With intraday rounds a trader only trades in its round of the day, see Globals.intradayRounds
+  protected boolean isTradingRound() {
+    long rounds = getGlobals().intradayRounds;
+    return rounds <= 1 || RandomActivation.round(getGlobals().streamSeed, getID(), tick(), rounds)
+        == getGlobals().intradayRound;
+  }
+
   /* We allow buying when we have 0 capital since we are
      looking at overall portfolio value as an indicator of wealth */
   public void buy(double volume) {
-    shares += volume;
-    capital -= volume * getGlobals().marketPrice;
+    // Orders on the book are paid for at the prices they fill at, once matched
+    if (getGlobals().limitOrderBook) {
+      buyValuesUpdate(volume);
+      return;
+    }
+    addShares(volume);
+    addCapital(-volume * getGlobals().marketPrice);
     buyValuesUpdate(volume);
   }
 
   public void buyValuesUpdate(double volume) {
     getDoubleAccumulator("buys").add(volume);
-    getLinks(TradeLink.class).send(BuyOrderPlaced.class, (msg, link) -> {
-      msg.volume = volume;
-    });
+    AggregateOutput.addBuys(volume);
+    if (getGlobals().limitOrderBook) {
+      getGlobals().bookOrders.market(getID(), true, volume);
+    } else if (getGlobals().aggregateOrderFlow) {
+      getGlobals().orderFlow.addBuy(volume);
+    } else {
+      getLinks(TradeLink.class).send(BuyOrderPlaced.class, (msg, link) -> {
+        msg.volume = volume;
+      });
+      if (TickProfiler.isRecording()) {
+        TickProfiler.messagesSent(getLinks(TradeLink.class).size());
+      }
+    }
   }
 
   public void sell(double volume) {
+    if (getGlobals().limitOrderBook) {
+      // What is sold beyond the shares held is a short sale, settled with the rest once matched
+      int shortVolume = (int) (volume - Math.max(shares, 0));
+      if (shortVolume > 0) {
+        recordShort(shortVolume);
+      }
+      sellValuesUpdate(volume);
+      return;
+    }
     double toSell = volume;
     // If doesn't have enough shares short sell
     if (shares <= 0) {
@@ -74,38 +142,165 @@ public abstract class BaseTrader extends Agent<Globals> {
     }
     // If still has shares sell these
     if (toSell > 0) {
-      shares -= toSell;
-      capital += toSell * getGlobals().marketPrice;
+      addShares(-toSell);
+      addCapital(toSell * getGlobals().marketPrice);
       sellValuesUpdate(toSell);
     }
   }
 
   public void sellValuesUpdate(double volume) {
     getDoubleAccumulator("sells").add(volume);
-    getLinks(TradeLink.class).send(SellOrderPlaced.class, (msg, link) -> msg.volume = volume);
+    AggregateOutput.addSells(volume);
+    if (getGlobals().limitOrderBook) {
+      getGlobals().bookOrders.market(getID(), false, volume);
+    } else if (getGlobals().aggregateOrderFlow) {
+      getGlobals().orderFlow.addSell(volume);
+    } else {
+      getLinks(TradeLink.class).send(SellOrderPlaced.class, (msg, link) -> msg.volume = volume);
+      if (TickProfiler.isRecording()) {
+        TickProfiler.messagesSent(getLinks(TradeLink.class).size());
+      }
+    }
+  }
+
+  // Capital at the current interest index, without settling it, as traders skipped are not settled
+  @Variable(name = "capital")
+  public final double getCapital() {
+    return capital * getGlobals().interestIndex / capitalIndex;
+  }
+
+  /* Portfolios are valued when read, by strategies and outputs, rather than for every trader every
+     tick. */
+  @Variable(name = "portfolio")
+  public final double getPortfolio() {
+    return shares * getGlobals().marketPrice + getCapital() + getOptionValue();
+  }
+
+  // Value of the options held, for the traders that have any
+  protected double getOptionValue() {
+    return 0;
+  }
+
+  /* Every change to the capital and shares of a trader goes through these, so the totals of its
+     type in Globals.marketWealth follow it */
+  protected void addCapital(double amount) {
+    capital += amount;
+    getGlobals().marketWealth.addCapital(wealthType(), amount, capitalIndex);
+  }
+
+  protected void setCapital(double value) {
+    addCapital(value - capital);
+  }
+
+  protected void addShares(double volume) {
+    shares += volume;
+    getGlobals().marketWealth.addShares(wealthType(), volume);
+  }
+
+  // Options are added by the holder as bought, one contract, and by the writer as sold, minus one
+  protected void addOption(Option option, double contracts) {
+    getGlobals().marketWealth.addOption(wealthType(), option.isCallOption(),
+        option.getExercisePrice(), option.getExpiryTick(), contracts);
+  }
+
+  // Index of the trader's type in AggregateOutput, under which its wealth is added up
+  protected int wealthType() {
+    if (wealthType < 0) {
+      wealthType = AggregateOutput.traderType(getClass());
+    }
+    return wealthType;
+  }
+
+  // Traders that borrow take in their loan here, see Borrower
+  protected void settleLoan() {
+  }
+
+  /* Interest on capital is paid through Globals.interestIndex, which grows once per tick, instead
+     of on every trader every tick. Capital is as of the index it was last settled at, and is
+     brought up to date when the trader is next visited. */
+  protected void settleInterest() {
+    double index = getGlobals().interestIndex;
+    if (index != capitalIndex) {
+      capital *= index / capitalIndex;
+      capitalIndex = index;
+    }
+  }
+
+  // Draws of the trader's decisions, created on first use from the seed of the run
+  public RandomStream randomStream() {
+    if (randomStream == null) {
+      randomStream = RandomStream.of(getGlobals().streamSeed, getClass().getSimpleName(), getID());
+    }
+    return randomStream;
+  }
+
+  /******************* Checkpoints ******************/
+
+  // Subclasses with state of their own write it after this
+  @Override
+  public void writeState(DataOutput out) throws IOException {
+    out.writeDouble(capital);
+    out.writeDouble(shares);
+    out.writeDouble(capitalIndex);
+    out.writeBoolean(randomStream != null);
+    if (randomStream != null) {
+      randomStream.writeTo(out);
+    }
+  }
+
+  @Override
+  public void readState(DataInput in) throws IOException {
+    // The state read replaces the trader's initial state in the totals of its type
+    getGlobals().marketWealth.addHoldings(wealthType(), -shares, -capital, capitalIndex);
+    capital = in.readDouble();
+    shares = in.readDouble();
+    capitalIndex = in.readDouble();
+    getGlobals().marketWealth.addHoldings(wealthType(), shares, capital, capitalIndex);
+    RandomStream stream = in.readBoolean() ? RandomStream.readFrom(in) : null;
+    randomStream = Checkpoint.isReseeded() ? null : stream;
+  }
+
+  /******************* Order book ******************/
+
+  /* Limit orders rest in the book until filled or cancelled, only used with the order book. They
+     are not counted as buys or sells, the liquidity they add shows in the depth of the book. */
+  public void placeLimitOrder(boolean buy, double volume, double price) {
+    getGlobals().bookOrders.limit(getID(), buy, volume, price);
   }
 
-  public void updatePortfolioValue() {
-    portfolio = shares * getGlobals().marketPrice + capital;
+  public void cancelOrders() {
+    getGlobals().bookOrders.cancelAll(getID());
   }
 
-  public void updateCapitalForInterest() {
-    double dailyInterest = getGlobals().interestRate / 365;
-    capital *= (1 + dailyInterest);
+  // Takes in the shares and cash from the orders filled on this tick
+  public void settleTrades() {
+    if (!getGlobals().limitOrderBook) {
+      return;
+    }
+    double[] settlement = getGlobals().bookOrders.settlement(getID());
+    if (settlement != null) {
+      addShares(settlement[0]);
+      addCapital(settlement[1]);
+    }
   }
 
   /******************* Short Selling ******************/
 
   // Trader borrows shares and sells them, creating a margin account
   public void shortStock(int volume) {
-    shares -= volume;
-    capital += volume * getGlobals().marketPrice;
-    getDoubleAccumulator("shorts").add(volume);
+    addShares(-volume);
+    addCapital(volume * getGlobals().marketPrice);
+    recordShort(volume);
 
     // Update sell order numbers
     sellValuesUpdate(volume);
   }
 
+  private void recordShort(int volume) {
+    getDoubleAccumulator("shorts").add(volume);
+    AggregateOutput.addShorts(volume);
+  }
+
   public boolean hasShortPosition() {
     return shares < 0;
   }
@@ -113,24 +308,22 @@ public abstract class BaseTrader extends Agent<Globals> {
   /********* Borrowing and Price predictions **********/
 
   protected double predictTotalDemand() {
-    if (getContext().getTick() == 0) {
+    if (tick() == 0) {
       return 0;
-    } else if (getContext().getTick() < nbBackStepsPrediction) {
-      return getGlobals().pastTotalDemand.entrySet().stream().mapToDouble(Entry::getValue).sum()
-          / getContext().getTick();
+    } else if (tick() < nbBackStepsPrediction) {
+      return getGlobals().pastTotalDemand.sum(0, tick()) / tick();
     }
-    double demandPrediction = getGlobals().pastTotalDemand.entrySet().stream()
-        .filter(a -> a.getKey() >= getContext().getTick() - nbBackStepsPrediction)
-        .mapToDouble(Entry::getValue).sum();
+    double demandPrediction = getGlobals().pastTotalDemand
+        .sum((long) Math.ceil(tick() - nbBackStepsPrediction), tick());
     return demandPrediction / nbBackStepsPrediction;
   }
 
   // Predicts the net demand at the current time step using a polynomial fitted to the last 10 points
   public double predictNetDemand(double tickOffset) {
-    if (getContext().getTick() <= getGlobals().derivativeTimeFrame) {
+    if (tick() <= getGlobals().derivativeTimeFrame) {
       return 0;
     }
     return new PolynomialFunction(getGlobals().coeffs)
-        .value(getContext().getTick() + tickOffset);
+        .value(tick() + tickOffset);
   }
 }
@@ -1,11 +1,11 @@
 package swarmModel.traders;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import org.apache.commons.math3.random.RandomGenerator;
-import simudyne.core.abm.Action;
 import simudyne.core.annotations.Variable;
-import simudyne.core.functions.SerializableConsumer;
-import swarmModel.links.Links;
-import swarmModel.links.Messages;
+import swarmModel.utils.LendingPool;
 import swarmModel.utils.Option;
 
 public abstract class Borrower extends OptionTrader {
@@ -18,54 +18,75 @@ public abstract class Borrower extends OptionTrader {
 
   RandomGenerator random;
   public double amountToBorrow = 0;
-  private int interestRepaymentStep = 5;
+  // Drawn on the first settlement, so that nothing is drawn for it unless borrowing is on
+  private int interestRepaymentStep = 0;
   public boolean isTrading = true;
   public boolean canBorrow = true;
+  private double loanIndex = 0;
 
   @Override
   public void init() {
     super.init();
     random = this.getPrng().generator;
-    interestRepaymentStep = getPrng().generator.nextInt(8) + 5;
+    loanIndex = getGlobals().loanInterestIndex;
   }
 
-  private static Action<Borrower> action(SerializableConsumer<Borrower> consumer) {
-    return Action.create(Borrower.class, consumer);
+  @Override
+  public void writeState(DataOutput out) throws IOException {
+    super.writeState(out);
+    out.writeDouble(amountBorrowed);
+    out.writeDouble(accruedInterest);
+    out.writeDouble(amountToBorrow);
+    out.writeInt(interestRepaymentStep);
+    out.writeBoolean(isTrading);
+    out.writeBoolean(canBorrow);
+    out.writeDouble(loanIndex);
   }
 
-  public static Action<Borrower> processBorrowing() {
-    return action(trader -> {
-      // If we do have negative capital after our trading activity, borrow money
-      trader.getLinks(Links.BorrowLink.class).send(Messages.BorrowRequest.class, (msg, link) -> {
-        msg.borrowAmount = Math.abs(trader.amountToBorrow);
-      });
+  @Override
+  public void readState(DataInput in) throws IOException {
+    super.readState(in);
+    amountBorrowed = in.readDouble();
+    accruedInterest = in.readDouble();
+    amountToBorrow = in.readDouble();
+    interestRepaymentStep = in.readInt();
+    isTrading = in.readBoolean();
+    canBorrow = in.readBoolean();
+    loanIndex = in.readDouble();
+  }
 
-      // We pay back part of our loan every few time steps
-      if (trader.getContext().getTick() % trader.interestRepaymentStep == 0) {
-        trader.payBackLoan();
-      }
-    });
+  /* Called at the end of every tick once the pool has cleared the requests: takes the part of the
+     tick's request that was lent, accrues interest on the loan and every few ticks pays some back.
+     Interest is accrued from Globals.loanInterestIndex, so it covers every tick since the last
+     settlement whichever tick that was. */
+  @Override
+  protected void settleLoan() {
+    if (!getGlobals().borrowing) {
+      return;
+    }
+    if (interestRepaymentStep == 0) {
+      interestRepaymentStep = 5 + (int) (randomStream().uniform() * 8);
+    }
+    LendingPool pool = getGlobals().lendingPool;
+    double loan = amountToBorrow * pool.getLentFraction();
+    double index = getGlobals().loanInterestIndex;
+    accruedInterest += amountBorrowed * (index - loanIndex);
+    loanIndex = index;
+    amountBorrowed += loan;
+    addCapital(loan);
+    canBorrow = pool.isLending();
+    amountToBorrow = 0;
+
+    // We pay back part of our loan every few time steps
+    if (tick() % interestRepaymentStep == 0) {
+      payBackLoan();
+    }
   }
 
-  public static Action<Borrower> actOnLoan() {
-    return action(trader -> {
-      double loan = trader.getMessagesOfType(Messages.BorrowOutcome.class).stream()
-          .mapToDouble(m -> m.lendAmount)
-          .sum();
-
-      boolean bankLending = trader.getMessagesOfType(Messages.BorrowOutcome.class).stream()
-          .allMatch(
-              m -> m.isLending
-          );
-
-      // Update amount borrowed to account for interest
-      trader.accruedInterest += (trader.amountBorrowed * (trader.getLendingRate() / 365));
-      trader.amountBorrowed += loan;
-      trader.capital += loan;
-      trader.canBorrow = bankLending;
-
-      trader.amountToBorrow = 0;
-    });
+  // Only what is asked for is sent to the pool, nothing when the trader needs no loan
+  private void requestLoan(double amount) {
+    amountToBorrow += amount;
+    getGlobals().lendingPool.request(amount);
   }
 
   private void payBackLoan() {
@@ -76,21 +97,18 @@ public abstract class Borrower extends OptionTrader {
     // Then we pay back what we can of the loan itself using a part of the profit made
     double paidBackLoan = payBackProportionOfLoan();
 
-    getLinks(Links.BorrowLink.class).send(Messages.PayBackLoan.class, (msg, link) -> {
-      msg.originalLoanRepayment = paidBackLoan;
-      msg.interestPaidBack = interestPaid;
-    });
+    getGlobals().lendingPool.repay(paidBackLoan, interestPaid);
   }
 
   private double payBackInterest() {
     double interestPaidBack = 0;
     if (accruedInterest > 0) {
       if (capital > accruedInterest) {
-        capital -= accruedInterest;
+        addCapital(-accruedInterest);
         interestPaidBack = accruedInterest;
         accruedInterest = 0;
       } else if (capital < accruedInterest) {
-        capital = 0;
+        setCapital(0);
         accruedInterest -= capital;
         interestPaidBack += capital;
         if (shares * getGlobals().marketPrice > accruedInterest) {
@@ -107,7 +125,7 @@ public abstract class Borrower extends OptionTrader {
     double paidBack = 0;
 
     // Is in insurmountable debt, stop trading completely
-    if (!canBorrow && portfolio < 0) {
+    if (!canBorrow && getPortfolio() < 0) {
       isTrading = false;
     }
 
@@ -123,14 +141,15 @@ public abstract class Borrower extends OptionTrader {
           if (increaseFromInterest < priceChangePrediction) {
             // Price is expected to rise more than interestRates so use capital to pay back
             if (shares > 0) {
-              paidBack += Math.min(amountBorrowed / 2, capital / 2);
-              capital -= Math.min(amountBorrowed / 2, capital / 2);
+              double repayment = Math.min(amountBorrowed / 2, capital / 2);
+              paidBack += repayment;
+              addCapital(-repayment);
             }
             // We have a short position so we choose to cover this first with our capital
             else {
               double s = Math.floor(capital / getGlobals().marketPrice);
               sharesToBuy += s;
-              capital -= s;
+              addCapital(-s);
             }
           }
           // Interest rates are predicted to be more profitable so sell shares and keep capital
@@ -167,13 +186,17 @@ public abstract class Borrower extends OptionTrader {
 
   @Override
   public void putValuesUpdate(Option option) {
+    if (!getGlobals().borrowing) {
+      super.putValuesUpdate(option);
+      return;
+    }
     if ((option.getExercisePrice() - getGlobals().projectedPrice) * getGlobals().profitFactor
         > (getOptionPremium(option) * getGlobals().interestRate)) {
       if (capital < option.getOptionPrice()) {
         if (!canBorrow) {
           return;
         }
-        amountToBorrow += option.getOptionPrice() - capital;
+        requestLoan(option.getOptionPrice() - capital);
       }
       super.putValuesUpdate(option);
     }
@@ -181,13 +204,17 @@ public abstract class Borrower extends OptionTrader {
 
   @Override
   public void callValuesUpdate(Option option) {
+    if (!getGlobals().borrowing) {
+      super.callValuesUpdate(option);
+      return;
+    }
     if ((getGlobals().projectedPrice - option.getExercisePrice()) * getGlobals().profitFactor
         > (getOptionPremium(option) * getGlobals().interestRate)) {
       if (capital < option.getOptionPrice()) {
         if (!canBorrow) {
           return;
         }
-        amountToBorrow += option.getOptionPrice() - capital;
+        requestLoan(option.getOptionPrice() - capital);
       }
       super.callValuesUpdate(option);
     }
@@ -196,11 +223,11 @@ public abstract class Borrower extends OptionTrader {
   @Override
   public void buy(double volume) {
     if (isTrading) {
-      if (capital < 0) {
+      if (capital < 0 && getGlobals().borrowing) {
         if (!canBorrow) {
           return;
         }
-        amountToBorrow += volume * getGlobals().marketPrice;
+        requestLoan(volume * getGlobals().marketPrice);
       }
       super.buy(volume);
     }
@@ -213,10 +240,6 @@ public abstract class Borrower extends OptionTrader {
     }
   }
 
-  private double getLendingRate() {
-    return getGlobals().interestRate + getGlobals().interestMargin;
-  }
-
   private double getOptionPremium(Option option) {
     if (option.isCallOption()) {
       // The option is out of the money so its price does not include intrinsic value
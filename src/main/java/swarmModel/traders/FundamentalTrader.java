@@ -1,85 +1,69 @@
 package swarmModel.traders;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import simudyne.core.abm.Action;
 import simudyne.core.annotations.Variable;
 import simudyne.core.functions.SerializableConsumer;
+import swarmModel.Globals;
 
-public class FundamentalTrader extends BaseTrader {
+public class FundamentalTrader extends Borrower {
 
   //Helper function for ease of interpretation
-  private static Action<FundamentalTrader> action(
+  private static Action<FundamentalTrader> action(String phase,
       SerializableConsumer<FundamentalTrader> consumer) {
-    return Action.create(FundamentalTrader.class, consumer);
+    return traderAction(FundamentalTrader.class, phase, consumer);
   }
 
   @Variable
   public double rsi = 50;
 
-  private boolean isTrading = true;
+  private boolean isActive = true;
+
+  @Override
+  public void writeState(DataOutput out) throws IOException {
+    super.writeState(out);
+    out.writeDouble(rsi);
+    out.writeBoolean(isActive);
+  }
+
+  @Override
+  public void readState(DataInput in) throws IOException {
+    super.readState(in);
+    rsi = in.readDouble();
+    isActive = in.readBoolean();
+  }
+
+  // Fundamental traders borrow for shares only
+  @Override
+  protected boolean tradesOptions() {
+    return false;
+  }
+
+  /* Fundamental traders only trade past the RSI look back and with the RSI beyond a threshold, on
+     other ticks the model does not run processInformation at all. */
+  public static boolean canTrade(long tick, Globals globals) {
+    return tick > globals.rsiPeriod && (globals.indicators.rsi > globals.overBuyThresh
+        || globals.indicators.rsi < globals.overSellThresh);
+  }
 
   public static Action<FundamentalTrader> processInformation() {
-    return action(
+    return action("processInformation",
         trader -> {
-          if (trader.getContext().getTick() > trader.getGlobals().rsiPeriod && trader.isTrading) {
-            trader.rsi = trader.calculateRSI();
+          if (!trader.isTradingRound()) {
+            return;
+          }
+          // Drawn when it is used, the trader is not visited on the ticks it could not trade
+          trader.isActive = trader.randomStream().normal() < 0.1;
+          if (trader.tick() > trader.getGlobals().rsiPeriod && trader.isActive) {
+            trader.rsi = trader.getGlobals().indicators.rsi;
             if (trader.rsi > trader.getGlobals().overBuyThresh) {
               trader.sell(trader.getGlobals().stdVolume);
             } else if (trader.rsi < trader.getGlobals().overSellThresh) {
               trader.buy(trader.getGlobals().stdVolume);
             }
           }
-          trader.isTrading = trader.getPrng().normal(0, 1).sample() < 0.1;
         });
   }
-
-
-  public double calculateRSI() {
-    double[] histPrices = new double[(int) getGlobals().rsiPeriod];
-    for (int i = 0; i < getGlobals().rsiPeriod; i++) {
-      histPrices[i] = getGlobals().historicalPrices
-          .get(getContext().getTick() - (getGlobals().rsiPeriod + 1) + i);
-    }
-
-    double[] histReturns = new double[(int) getGlobals().rsiPeriod - 1];
-
-    double cumulativeGain = 0;
-    double cumulativeLoss = 0;
-
-    for (int j = 1; j <= getGlobals().rsiPeriod - 1; j++) {
-      histReturns[j - 1] = (histPrices[j] - histPrices[j - 1]) / histPrices[j - 1];
-      if (histReturns[j - 1] > 0) {
-        cumulativeGain += histReturns[j - 1];
-      } else if (histReturns[j - 1] < 0) {
-        cumulativeLoss += Math.abs(histReturns[j - 1]);
-      }
-    }
-
-    double avgGainInitial = cumulativeGain / getGlobals().rsiPeriod;
-    double avgLossInitial = cumulativeLoss / getGlobals().rsiPeriod;
-
-    double currentPrice = getGlobals().historicalPrices.get(getContext().getTick() - 1);
-    double prevPrice = getGlobals().historicalPrices.get(getContext().getTick() - 2);
-
-    double currentReturn = (currentPrice - prevPrice) / prevPrice;
-
-    double currentGain = 0;
-    double currentLoss = 0;
-
-    if (currentReturn > 0) {
-      currentGain = currentReturn;
-    } else if (currentReturn < 0) {
-      currentLoss = Math.abs(currentReturn);
-    }
-
-    double avgGain =
-        ((getGlobals().rsiPeriod - 1) * avgGainInitial + currentGain) / getGlobals().rsiPeriod;
-    double avgLoss =
-        ((getGlobals().rsiPeriod - 1) * avgLossInitial + currentLoss) / getGlobals().rsiPeriod;
-
-    if (avgLoss == 0) {
-      return 100;
-    } else {
-      return 100 - (100 / (1 + (avgGain / avgLoss)));
-    }
-  }
 }
@@ -1,41 +1,68 @@
 package swarmModel.traders;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import simudyne.core.abm.Action;
 import simudyne.core.functions.SerializableConsumer;
+import swarmModel.Globals;
 
 /* Holds a very large initial short position which leads to
    having to cover this position as the price increases */
 public class HedgeFund extends OptionTrader {
 
-  private final double shortingPhase = 5;
-  private final double shortVolume = 500;
-  private final double secondShortSellIncrease = 1.5;
-  private final double coverPosition = 2.5;
-  private final double takeProfit = 0.5;
+  private static final double shortingPhase = 5;
+  private static final double shortVolume = 500;
+  private static final double secondShortSellIncrease = 1.5;
+  private static final double coverPosition = 2.5;
+  private static final double takeProfit = 0.5;
   private boolean secondShort = false;
 
-  private static Action<HedgeFund> action(SerializableConsumer<HedgeFund> consumer) {
-    return Action.create(HedgeFund.class, consumer);
+  @Override
+  public void writeState(DataOutput out) throws IOException {
+    super.writeState(out);
+    out.writeBoolean(secondShort);
+  }
+
+  @Override
+  public void readState(DataInput in) throws IOException {
+    super.readState(in);
+    secondShort = in.readBoolean();
+  }
+
+  private static Action<HedgeFund> action(String phase, SerializableConsumer<HedgeFund> consumer) {
+    return traderAction(HedgeFund.class, phase, consumer);
+  }
+
+  /* Past the shorting phase a hedge fund only acts once the price has fallen below its take profit
+     level or risen above its second short level, on other ticks the model does not run it. */
+  public static boolean canTrade(long tick, Globals globals) {
+    double increaseProportion = globals.marketPrice / initialMarketPrice;
+    return tick < shortingPhase || increaseProportion < takeProfit
+        || increaseProportion > secondShortSellIncrease;
   }
 
   public static Action<HedgeFund> processInformation() {
-    return action(trader -> {
-      if (trader.getContext().getTick() < trader.shortingPhase) {
-        trader.sell(trader.shortVolume);
+    return action("processInformation", trader -> {
+      if (!trader.isTradingRound()) {
+        return;
+      }
+      if (trader.tick() < shortingPhase) {
+        trader.sell(shortVolume);
       } else {
-        double increaseProportion = trader.getGlobals().marketPrice / trader.initialMarketPrice;
-        if (increaseProportion < trader.takeProfit) {
+        double increaseProportion = trader.getGlobals().marketPrice / initialMarketPrice;
+        if (increaseProportion < takeProfit) {
           trader.buy(Math.abs(trader.shares));
         }
         // Second short selling phase to try and make the market fall
-        if (increaseProportion > trader.secondShortSellIncrease && !trader.secondShort) {
-          trader.sell(trader.shortVolume * increaseProportion);
-          if (trader.getContext().getTick() % trader.shortingPhase == 0) {
+        if (increaseProportion > secondShortSellIncrease && !trader.secondShort) {
+          trader.sell(shortVolume * increaseProportion);
+          if (trader.tick() % shortingPhase == 0) {
             trader.secondShort = true;
           }
         }
         // Cover position if the stock carries on increasing to minimise loss
-        if (increaseProportion > trader.coverPosition) {
+        if (increaseProportion > coverPosition) {
           if (trader.hasShortPosition()) {
             trader.buy(Math.abs(trader.shares));
           }
@@ -3,15 +3,20 @@ package swarmModel.traders;
 /* For the purpose of this model we take a single individual as the perpetrator
    of the squeeze and then opinions are dynamically propagated via other retail investors */
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import simudyne.core.abm.Action;
 import simudyne.core.abm.Agent;
 import simudyne.core.annotations.Variable;
 import simudyne.core.functions.SerializableConsumer;
+import swarmModel.Checkpoint;
 import swarmModel.Globals;
+import swarmModel.TickProfiler;
 import swarmModel.links.Links.OpinionLink;
 import swarmModel.links.Messages.OpinionShared;
 
-public class Initiator extends Agent<Globals> {
+public class Initiator extends Agent<Globals> implements Checkpoint.AgentState {
 
   @Variable
   public double opinion;
@@ -22,23 +27,59 @@ public class Initiator extends Agent<Globals> {
     this.opinion = getGlobals().maxOpinion;
   }
 
-  private static Action<Initiator> action(SerializableConsumer<Initiator> consumer) {
-    return Action.create(Initiator.class, consumer);
+  private static Action<Initiator> action(String phase, SerializableConsumer<Initiator> consumer) {
+    return Action.create(Initiator.class, TickProfiler.profile(phase, consumer));
+  }
+
+  public static Action<Initiator> saveState() {
+    return action("saveState", trader -> Checkpoint.save(trader.getID(), trader));
+  }
+
+  public static Action<Initiator> restoreState() {
+    return action("restoreState", trader -> Checkpoint.restore(trader.getID(), trader));
+  }
+
+  @Override
+  public void writeState(DataOutput out) throws IOException {
+    out.writeDouble(opinion);
+  }
+
+  @Override
+  public void readState(DataInput in) throws IOException {
+    opinion = in.readDouble();
+  }
+
+  private long tick() {
+    return getContext().getTick() + getGlobals().firstTick;
+  }
+
+  public static Action<Initiator> registerOpinionLinks() {
+    return action("registerOpinionLinks", trader -> trader.getGlobals().opinionNetwork
+        .register(trader.getID(), trader.getLinks(OpinionLink.class)));
   }
 
   public static Action<Initiator> shareOpinion() {
-    return action(
+    return action("shareOpinion",
         trader -> {
-          if (trader.getContext().getTick() <= trader.getGlobals().timeToSell) {
+          if (trader.tick() <= trader.getGlobals().timeToSell) {
             trader.opinion = trader.getGlobals().maxOpinion;
-            trader.getLinks(OpinionLink.class).send(OpinionShared.class, (msg, link) ->
-                msg.opinion = trader.opinion);
+            trader.sendOpinion();
           }
-          if (trader.getContext().getTick() > trader.getGlobals().timeToSell) {
+          if (trader.tick() > trader.getGlobals().timeToSell) {
             trader.opinion = - trader.getGlobals().maxOpinion;
-            trader.getLinks(OpinionLink.class).send(OpinionShared.class, (msg, link) ->
-                msg.opinion = trader.opinion);
+            trader.sendOpinion();
           }
         });
   }
+
+  private void sendOpinion() {
+    if (getGlobals().sparseOpinions) {
+      getGlobals().opinionNetwork.share(getID(), opinion);
+    } else {
+      getLinks(OpinionLink.class).send(OpinionShared.class, (msg, link) -> msg.opinion = opinion);
+      if (TickProfiler.isRecording()) {
+        TickProfiler.messagesSent(getLinks(OpinionLink.class).size());
+      }
+    }
+  }
 }
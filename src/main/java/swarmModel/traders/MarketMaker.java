@@ -1,9 +1,16 @@
 package swarmModel.traders;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
 import simudyne.core.abm.Action;
 import simudyne.core.functions.SerializableConsumer;
+import swarmModel.ModelMetrics;
+import swarmModel.ModelMetrics.Hub;
 import swarmModel.links.Messages;
 import swarmModel.utils.Option;
+import swarmModel.utils.OptionSeriesBook;
 
 public class MarketMaker extends BaseTrader {
 
@@ -14,13 +21,44 @@ public class MarketMaker extends BaseTrader {
   private int sharesToBuy = 0;
   private int sharesToSell = 0;
 
+  /* Options written are aggregated by series, strikes are bucketed to the cent. Purchases are sent
+     in the phase the market maker trades in and reach it in the next, where it does not act, so
+     as in the original model the book stays empty and only the storage of the options changed. */
+  private static final double strikeBucketWidth = 0.01;
+  public OptionSeriesBook soldOptions = new OptionSeriesBook(strikeBucketWidth);
+
+  @Override
+  public void writeState(DataOutput out) throws IOException {
+    super.writeState(out);
+    out.writeInt(sharesToBuy);
+    out.writeInt(sharesToSell);
+    soldOptions.writeTo(out);
+  }
+
+  @Override
+  public void readState(DataInput in) throws IOException {
+    super.readState(in);
+    sharesToBuy = in.readInt();
+    sharesToSell = in.readInt();
+    getGlobals().marketWealth.addOptions(wealthType(), soldOptions, 1);
+    soldOptions = OptionSeriesBook.readFrom(in);
+    getGlobals().marketWealth.addOptions(wealthType(), soldOptions, -1);
+  }
+
   // Helper function for ease of interpretation
-  private static Action<MarketMaker> action(SerializableConsumer<MarketMaker> consumer) {
-    return Action.create(MarketMaker.class, consumer);
+  private static Action<MarketMaker> action(String phase,
+      SerializableConsumer<MarketMaker> consumer) {
+    return traderAction(MarketMaker.class, phase, consumer);
   }
 
   public static Action<MarketMaker> processInformation() {
-    return action(marketMaker -> {
+    return action("processInformation", marketMaker -> {
+      if (!marketMaker.isTradingRound()) {
+        return;
+      }
+      long start = System.nanoTime();
+      marketMaker.soldOptions.expire(marketMaker.tick());
+
       double predictNetDemand = marketMaker.predictNetDemand(0);
       double predictTotalDemand = marketMaker.predictTotalDemand();
       if (predictTotalDemand > 0) {
@@ -37,37 +75,69 @@ public class MarketMaker extends BaseTrader {
         }
       }
 
-      marketMaker.sellCallOptions();
-      marketMaker.sellPutOptions();
+      if (marketMaker.getGlobals().limitOrderBook) {
+        marketMaker.quote();
+      }
+
+      int optionsSold = marketMaker.sellCallOptions() + marketMaker.sellPutOptions();
 
       marketMaker.sell(marketMaker.sharesToSell);
       marketMaker.buy(marketMaker.sharesToBuy);
 
       marketMaker.sharesToBuy = 0;
       marketMaker.sharesToSell = 0;
-
+      ModelMetrics.hubAction(Hub.MARKET_MAKER, start, optionsSold);
     });
   }
 
 
+  /* Replaces its quotes in the book with a ladder on each side of the price. Each level holds the
+     volume which moved the price by one tick without a book, so within the ladder the price moves
+     as before, and demand beyond it runs into whatever the other traders left in the book. */
+  private void quote() {
+    double tickSize = getGlobals().bookTickSize;
+    double levelVolume = Math.ceil(getNumberOfTraders() * getGlobals().lambda * tickSize);
+    double price = Math.round(getGlobals().marketPrice / tickSize) * tickSize;
+    cancelOrders();
+    for (int level = 1; level <= getGlobals().marketMakerQuoteLevels; level++) {
+      if (price - level * tickSize > 0) {
+        placeLimitOrder(true, levelVolume, price - level * tickSize);
+      }
+      placeLimitOrder(false, levelVolume, price + level * tickSize);
+    }
+  }
+
+  // The options sold are owed, so they take away from the portfolio
+  @Override
+  protected double getOptionValue() {
+    return -soldOptions.intrinsicValue(getGlobals().marketPrice, getGlobals().optionShareNumber);
+  }
+
   /*********** OPTION SELLING **********/
 
-  public void sellPutOptions() {
-    getMessagesOfType(Messages.PutOptionBought.class).stream().forEach(putOptionBought -> {
+  // Both return the number of options sold
+  public int sellPutOptions() {
+    List<Messages.PutOptionBought> messages = getMessagesOfType(Messages.PutOptionBought.class);
+    messages.forEach(putOptionBought -> {
       Option option = putOptionBought.option;
       soldOptions.add(option);
-      capital += option.getOptionPrice();
+      addOption(option, -1);
+      addCapital(option.getOptionPrice());
       sharesToSell += getGlobals().optionShareNumber;
     });
+    return messages.size();
   }
 
-  public void sellCallOptions() {
-    getMessagesOfType(Messages.CallOptionBought.class).stream().forEach(callOptionBought -> {
+  public int sellCallOptions() {
+    List<Messages.CallOptionBought> messages = getMessagesOfType(Messages.CallOptionBought.class);
+    messages.forEach(callOptionBought -> {
       Option option = callOptionBought.option;
       soldOptions.add(option);
-      capital += option.getOptionPrice();
+      addOption(option, -1);
+      addCapital(option.getOptionPrice());
       sharesToBuy += getGlobals().optionShareNumber;
     });
+    return messages.size();
   }
 
   public long getNumberOfTraders() {
@@ -1,9 +1,13 @@
 package swarmModel.traders;
 
-import java.util.Map;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
 import simudyne.core.abm.Action;
 import simudyne.core.annotations.Variable;
 import simudyne.core.functions.SerializableConsumer;
+import swarmModel.ModelMetrics;
 import swarmModel.links.Messages;
 
 
@@ -11,7 +15,7 @@ import swarmModel.links.Messages;
    This agent is an example implementation of a moving average trading strategy
 */
 
-public class MomentumTrader extends OptionTrader {
+public class MomentumTrader extends Borrower {
 
   @Variable(name = "Long Term Moving Average")
   public double longTermMovingAvg;
@@ -22,29 +26,52 @@ public class MomentumTrader extends OptionTrader {
   @Variable(name = "General Opinion")
   public double opinion = 0;
 
+  @Override
+  public void writeState(DataOutput out) throws IOException {
+    super.writeState(out);
+    out.writeDouble(longTermMovingAvg);
+    out.writeDouble(shortTermMovingAvg);
+    out.writeDouble(opinion);
+  }
+
+  @Override
+  public void readState(DataInput in) throws IOException {
+    super.readState(in);
+    longTermMovingAvg = in.readDouble();
+    shortTermMovingAvg = in.readDouble();
+    opinion = in.readDouble();
+  }
+
   // Helper function for ease of interpretation
-  private static Action<MomentumTrader> action(SerializableConsumer<MomentumTrader> consumer) {
-    return Action.create(MomentumTrader.class, consumer);
+  private static Action<MomentumTrader> action(String phase,
+      SerializableConsumer<MomentumTrader> consumer) {
+    return traderAction(MomentumTrader.class, phase, consumer);
   }
 
   public static Action<MomentumTrader> updateOpinion(){
-    return action(trader -> {
-      trader.opinion = trader.getMessagesOfType(Messages.OpinionShared.class).stream()
-          .mapToDouble(opinion -> opinion.opinion).average().orElse(0);
+    return action("updateOpinion", trader -> {
+      if (trader.getGlobals().sparseOpinions) {
+        trader.opinion = trader.getGlobals().opinionNetwork.meanOpinion(trader.getID());
+      } else {
+        List<Messages.OpinionShared> opinions =
+            trader.getMessagesOfType(Messages.OpinionShared.class);
+        ModelMetrics.messagesRead(opinions.size());
+        trader.opinion = opinions.stream()
+            .mapToDouble(opinion -> opinion.opinion).average().orElse(0);
+      }
     });
   }
 
   public static Action<MomentumTrader> processInformation() {
-    return action(
+    return action("processInformation",
         trader -> {
-          double probToBuy = trader.getPrng().uniform(0, 1).sample();
-          if (trader.getContext().getTick() > trader.getGlobals().longTermAveragePeriod) {
-            trader.longTermMovingAvg = trader
-                .getTermMovingAvg(trader.getGlobals().longTermAveragePeriod,
-                    trader.getGlobals().historicalPrices);
-            trader.shortTermMovingAvg = trader
-                .getTermMovingAvg(trader.getGlobals().shortTermAveragePeriod,
-                    trader.getGlobals().historicalPrices);
+          if (!trader.isTradingRound()) {
+            return;
+          }
+          double probToBuy = trader.randomStream().uniform();
+          if (trader.tick() > trader.getGlobals().longTermAveragePeriod) {
+            trader.longTermMovingAvg = trader.getGlobals().indicators.longTermMovingAvg;
+            trader.shortTermMovingAvg = trader.getGlobals().indicators.shortTermMovingAvg;
 
             if (trader.shortTermMovingAvg > trader.longTermMovingAvg && probToBuy < trader
                 .getGlobals().traderActivity) {
@@ -56,7 +83,7 @@ public class MomentumTrader extends OptionTrader {
           }
 
           // Momentum buy medium-term options based on the general population
-          if (trader.getContext().getTick() > trader.getGlobals().timeToStartOpinionSharing
+          if (trader.tick() > trader.getGlobals().timeToStartOpinionSharing
               && probToBuy < trader.getGlobals().traderActivity) {
 
             if (trader.opinion > 0) {
@@ -71,12 +98,4 @@ public class MomentumTrader extends OptionTrader {
           trader.sendShares();
         });
   }
-
-
-  public double getTermMovingAvg(long nbDays, Map<Long, Double> historicalPrices) {
-    double totalPrice = historicalPrices.entrySet().stream()
-        .filter(a -> a.getKey() >= getContext().getTick() - nbDays).mapToDouble(Map.Entry::getValue)
-        .sum();
-    return totalPrice / (nbDays);
-  }
 }
@@ -1,5 +1,8 @@
 package swarmModel.traders;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import org.apache.commons.math3.random.RandomGenerator;
 import simudyne.core.abm.Action;
 import simudyne.core.annotations.Variable;
@@ -15,23 +18,41 @@ public class NoiseTrader extends OptionTrader {
   @Override
   public void init() {
     super.init();
-    capital = 5000;
+    setCapital(5000);
     random = this.getPrng().generator;
     tradingThresh = getPrng().uniform(0, 1).sample();
   }
 
-  private static Action<NoiseTrader> action(SerializableConsumer<NoiseTrader> consumer) {
-    return Action.create(NoiseTrader.class, consumer);
+  @Override
+  public void writeState(DataOutput out) throws IOException {
+    super.writeState(out);
+    out.writeDouble(tradingThresh);
+  }
+
+  @Override
+  public void readState(DataInput in) throws IOException {
+    super.readState(in);
+    tradingThresh = in.readDouble();
+  }
+
+  private static Action<NoiseTrader> action(String phase,
+      SerializableConsumer<NoiseTrader> consumer) {
+    return traderAction(NoiseTrader.class, phase, consumer);
   }
 
   public static Action<NoiseTrader> processInformation() {
-    return action(
+    return action("processInformation",
         trader -> {
+          if (!trader.isTradingRound()) {
+            return;
+          }
           trader.updateThreshold();
-          double probToBuy = trader.getPrng().uniform(0, 1).sample();
+          double probToBuy = trader.randomStream().uniform();
           if (probToBuy < trader.getGlobals().noiseActivity) {
             // Random stock liquidity adding
-            if (Math.abs(trader.tradingThresh) > 0.5) {
+            if (trader.getGlobals().limitOrderBook) {
+              trader.placeNoiseOrder();
+            } else if (Math.abs(trader.tradingThresh) > 0.5) {
               trader.buy(trader.getGlobals().stdVolume);
             } else {
               trader.sell(trader.getGlobals().stdVolume);
@@ -50,7 +71,17 @@ public class NoiseTrader extends OptionTrader {
         });
   }
 
+  /* Replaces the trader's order in the book with one around the market price, which either fills
+     at once or rests in the book as liquidity for the other traders */
+  private void placeNoiseOrder() {
+    double offset = randomStream().uniform(-1, 1) * getGlobals().noiseLimitRange;
+    boolean buy = Math.abs(tradingThresh) > 0.5;
+    cancelOrders();
+    placeLimitOrder(buy, getGlobals().stdVolume,
+        getGlobals().marketPrice * (1 + (buy ? offset : -offset)));
+  }
+
   public void updateThreshold() {
-    tradingThresh = getPrng().uniform(0, 1).sample();
+    tradingThresh = randomStream().uniform();
   }
 }
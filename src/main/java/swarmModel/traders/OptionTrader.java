@@ -1,14 +1,19 @@
 package swarmModel.traders;
 
-import java.util.ArrayList;
-import java.util.List;
-import org.apache.commons.math3.distribution.NormalDistribution;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import simudyne.core.abm.Action;
 import simudyne.core.annotations.Variable;
 import simudyne.core.functions.SerializableConsumer;
+import swarmModel.AggregateOutput;
+import swarmModel.TickProfiler;
 import swarmModel.links.Links;
 import swarmModel.links.Messages;
+import swarmModel.utils.Greeks;
 import swarmModel.utils.Option;
+import swarmModel.utils.OptionBook;
+import swarmModel.utils.OptionPricer;
 import swarmModel.utils.Option.type;
 
 public class OptionTrader extends BaseTrader {
@@ -28,104 +33,205 @@ public class OptionTrader extends BaseTrader {
   public double sharesToBuy = 0;
   private double hedgeProportion;
 
-  public List<Option> boughtOptions = new ArrayList<>();
+  // Options with fewer ticks than this left to expiry are no longer hedged
+  private static final int hedgeCutoff = 5;
+  // Relative price move and number of ticks after which the position greeks are recomputed
+  private static final double revaluationMove = 0.01;
+  private static final long revaluationAge = 5;
+  private final Greeks greeks = new Greeks();
+  private double positionDelta = 0;
+  private double positionGamma = 0;
+  // Range the delta of the hedged options can take, from all puts to all calls in the money
+  private double minPositionDelta = 0;
+  private double maxPositionDelta = 0;
+  private double valuedPrice = 0;
+  private long valuedTick = 0;
+  private double valuedInterestRate = Double.NaN;
+  private double valuedVolatility = Double.NaN;
+  private long valuedBookVersion = -1;
+  private long nextHedgeCutoffTick = Long.MAX_VALUE;
+
+  public OptionBook boughtOptions = new OptionBook();
 
   @Override
   public void init() {
     super.init();
-    optionExpiryTime = (int) Math.floor(getPrng().uniform(10, 25).sample());
-    hedgeProportion = getPrng().uniform(0.4, 1).sample();
+    if (tradesOptions()) {
+      optionExpiryTime = (int) Math.floor(getPrng().uniform(10, 25).sample());
+      hedgeProportion = getPrng().uniform(0.4, 1).sample();
+    }
+  }
+
+  // Borrowers that never buy options draw nothing for them
+  protected boolean tradesOptions() {
+    return true;
   }
 
-  private static Action<OptionTrader> action(SerializableConsumer<OptionTrader> consumer) {
-    return Action.create(OptionTrader.class, consumer);
+  private static Action<OptionTrader> action(String phase,
+      SerializableConsumer<OptionTrader> consumer) {
+    return traderAction(OptionTrader.class, phase, consumer);
+  }
+
+  @Override
+  protected double getOptionValue() {
+    return calculateOptionPortfolioValue();
   }
 
   @Override
-  public void updatePortfolioValue() {
-    portfolio = shares * getGlobals().marketPrice + capital + calculateOptionPortfolioValue();
+  public void writeState(DataOutput out) throws IOException {
+    super.writeState(out);
+    out.writeDouble(hedgePosition);
+    out.writeDouble(putOptions);
+    out.writeDouble(callOptions);
+    out.writeInt(optionExpiryTime);
+    out.writeDouble(sharesToSell);
+    out.writeDouble(sharesToBuy);
+    out.writeDouble(hedgeProportion);
+    out.writeDouble(positionDelta);
+    out.writeDouble(positionGamma);
+    out.writeDouble(minPositionDelta);
+    out.writeDouble(maxPositionDelta);
+    out.writeDouble(valuedPrice);
+    out.writeLong(valuedTick);
+    out.writeDouble(valuedInterestRate);
+    out.writeDouble(valuedVolatility);
+    out.writeLong(valuedBookVersion);
+    out.writeLong(nextHedgeCutoffTick);
+    boughtOptions.writeTo(out);
+  }
+
+  @Override
+  public void readState(DataInput in) throws IOException {
+    super.readState(in);
+    hedgePosition = in.readDouble();
+    putOptions = in.readDouble();
+    callOptions = in.readDouble();
+    optionExpiryTime = in.readInt();
+    sharesToSell = in.readDouble();
+    sharesToBuy = in.readDouble();
+    hedgeProportion = in.readDouble();
+    positionDelta = in.readDouble();
+    positionGamma = in.readDouble();
+    minPositionDelta = in.readDouble();
+    maxPositionDelta = in.readDouble();
+    valuedPrice = in.readDouble();
+    valuedTick = in.readLong();
+    valuedInterestRate = in.readDouble();
+    valuedVolatility = in.readDouble();
+    valuedBookVersion = in.readLong();
+    nextHedgeCutoffTick = in.readLong();
+    for (Option option : boughtOptions) {
+      addOption(option, -1);
+    }
+    boughtOptions = OptionBook.readFrom(in);
+    for (Option option : boughtOptions) {
+      addOption(option, 1);
+    }
   }
 
   /******************* Options Trading ******************/
 
   // Each option is valid for 10 shares of the stock (used to simplify values instead of 100)
   public void buyPutOption(int expiryTime, double exercisePrice) {
-    Option option = new Option(expiryTime, exercisePrice, type.PUT, getGlobals().marketPrice);
+    Option option = new Option(tick() + expiryTime, exercisePrice, type.PUT,
+        getGlobals().marketPrice);
     option.setOptionPrice(calculateOptionPrice(option));
     putValuesUpdate(option);
   }
 
   public void putValuesUpdate(Option option) {
     getDoubleAccumulator("putOptionsBought").add(1);
+    AggregateOutput.putOptionBought();
     putOptions += 1;
     getLinks(Links.TradeLink.class)
         .send(Messages.PutOptionBought.class, (msg, link) -> msg.option = option);
+    if (TickProfiler.isRecording()) {
+      TickProfiler.messagesSent(getLinks(Links.TradeLink.class).size());
+    }
     boughtOptions.add(option);
-    capital -= option.getOptionPrice();
+    addOption(option, 1);
+    getGlobals().optionExpiries.schedule(option.getExpiryTick(), getID());
+    addCapital(-option.getOptionPrice());
   }
 
   public void buyCallOption(int expiryTime, double exercisePrice) {
-    Option option = new Option(expiryTime, exercisePrice, type.CALL, getGlobals().marketPrice);
+    Option option = new Option(tick() + expiryTime, exercisePrice, type.CALL,
+        getGlobals().marketPrice);
     option.setOptionPrice(calculateOptionPrice(option));
     callValuesUpdate(option);
   }
 
   public void callValuesUpdate(Option option) {
     getDoubleAccumulator("callOptionsBought").add(1);
+    AggregateOutput.callOptionBought();
     callOptions += 1;
     getLinks(Links.TradeLink.class)
         .send(Messages.CallOptionBought.class, (msg, link) -> msg.option = option);
+    if (TickProfiler.isRecording()) {
+      TickProfiler.messagesSent(getLinks(Links.TradeLink.class).size());
+    }
     boughtOptions.add(option);
-    capital -= option.getOptionPrice();
+    addOption(option, 1);
+    getGlobals().optionExpiries.schedule(option.getExpiryTick(), getID());
+    addCapital(-option.getOptionPrice());
   }
 
-  // Update each Option on every time step
+  /* Exercise the options expiring on this time step, only these are looked at. The model only
+     runs this on ticks on which some option expires, see Globals.optionExpiries, and then visits
+     every option trader, most of which find nothing due in their book. */
   public static Action<OptionTrader> updateOptions() {
-    return action(trader -> {
-      if (trader.getContext().getTick() > 0) {
-        List<Option> expiredOptions = new ArrayList<>();
-        for (Option option : trader.boughtOptions) {
-          boolean expired = option.timeStep();
-          if (expired) {
-            double toSend = trader.actOnOption(option);
-            if (toSend >= 0) {
-              trader.sharesToBuy += toSend;
-            } else {
-              trader.sharesToSell += Math.abs(toSend);
-            }
-            expiredOptions.add(option);
-            if (option.isCallOption()) {
-              trader.callOptions--;
-            } else {
-              trader.putOptions--;
-            }
+    return action("updateOptions", trader -> {
+      if (trader.tick() > 0) {
+        Option option;
+        while ((option = trader.boughtOptions.pollExpired(trader.tick())) != null) {
+          double toSend = trader.actOnOption(option);
+          if (toSend >= 0) {
+            trader.sharesToBuy += toSend;
+          } else {
+            trader.sharesToSell += Math.abs(toSend);
+          }
+          if (option.isCallOption()) {
+            trader.callOptions--;
+          } else {
+            trader.putOptions--;
           }
         }
-        trader.boughtOptions.removeAll(expiredOptions);
       }
     });
   }
 
   public double actOnOption(Option option) {
     if (option.isCallOption() && getGlobals().marketPrice > option.getExercisePrice()) {
-      capital +=
-          (getGlobals().marketPrice - option.getExercisePrice()) * getGlobals().optionShareNumber;
+      addCapital(
+          (getGlobals().marketPrice - option.getExercisePrice()) * getGlobals().optionShareNumber);
       return getGlobals().optionShareNumber;
     } else if (!option.isCallOption() && getGlobals().marketPrice < option.getExercisePrice()) {
-      capital +=
-          (option.getExercisePrice() - getGlobals().marketPrice) * getGlobals().optionShareNumber;
+      addCapital(
+          (option.getExercisePrice() - getGlobals().marketPrice) * getGlobals().optionShareNumber);
       return -1 * getGlobals().optionShareNumber;
     }
     return 0;
   }
 
   public void sendShares() {
+    // On the book the shares of exercised options are bought and sold at the market
+    if (getGlobals().limitOrderBook) {
+      if (sharesToSell > 0) {
+        sell(sharesToSell);
+      }
+      if (sharesToBuy > 0) {
+        buy(sharesToBuy);
+      }
+      sharesToBuy = 0;
+      sharesToSell = 0;
+      return;
+    }
     if (sharesToSell > 0) {
-      shares -= sharesToSell;
+      addShares(-sharesToSell);
       sellValuesUpdate(sharesToSell);
     }
     if (sharesToBuy > 0) {
-      shares += sharesToBuy;
+      addShares(sharesToBuy);
       buyValuesUpdate(sharesToBuy);
     }
     sharesToBuy = 0;
@@ -145,105 +251,72 @@ public class OptionTrader extends BaseTrader {
             0);
       }
     }
-    for (Option option : soldOptions) {
-      if (option.isCallOption()) {
-        value -= Math.max(
-            (getGlobals().marketPrice - option.getExercisePrice()) * getGlobals().optionShareNumber,
-            0);
-      } else {
-        value -= Math.max(
-            (option.getExercisePrice() - getGlobals().marketPrice) * getGlobals().optionShareNumber,
-            0);
-      }
-    }
     return value;
   }
 
-  public double calculateD1(Option option) {
-    double stockPrice = getGlobals().marketPrice;
-    double exercisePrice = option.getExercisePrice();
-    double r = getGlobals().interestRate;
-    double timeToExpiry = option.getTimeToExpiry();
-    // Time to expiry is represented in years for these calculations, each timeStep = 1 day
-    timeToExpiry = timeToExpiry / 365;
-    return (1 / (getGlobals().volatility * Math.sqrt(timeToExpiry))) * (
-        Math.log(stockPrice / exercisePrice)
-            + (r + Math.pow(getGlobals().volatility, 2) / 2) * timeToExpiry);
-  }
-
+  // Prices repeat across traders within a tick so the shared pricer memoises them
   public double calculateOptionPrice(Option option) {
-    /* Black Scholes Equation: Cost = Stock price * N(d1) - Exercise price * e^(-interestRate * timeToExpiry) * N(d2)
-       where N(d1) and N(d2) are cumulative distribution functions for the normal distribution */
-    double stockPrice = getGlobals().marketPrice;
-    double exercisePrice = option.getExercisePrice();
-    double r = getGlobals().interestRate;
-    double timeToExpiry = option.getTimeToExpiry();
-    // Time to expiry is represented in years for these calculations, each timeStep = 1 day
-    timeToExpiry = timeToExpiry / 365;
-    double d1 = calculateD1(option);
-    double d2 = d1 - getGlobals().volatility * timeToExpiry;
-    if (option.isCallOption()) {
-      double optionPrice = (stockPrice * getNormalDistribution(d1)
-          - exercisePrice * Math.exp(-r * timeToExpiry)
-          * getNormalDistribution(d2)) * getGlobals().optionShareNumber;
-      if (optionPrice > 0) {
-        return optionPrice;
-      }
-      return 0;
-    } else {
-      double optionPrice = (getNormalDistribution(-d2) * exercisePrice
-          * Math.exp(-r * timeToExpiry)
-          - getNormalDistribution(-d1) * stockPrice) * getGlobals().optionShareNumber;
-      if (optionPrice > 0) {
-        return optionPrice;
-      }
-      return 0;
-    }
-  }
-
-  private double getNormalDistribution(double d) {
-    NormalDistribution normalDistribution = new NormalDistribution();
-    return normalDistribution.cumulativeProbability(d);
+    return OptionPricer.price(option.isCallOption(), getGlobals().marketPrice,
+        option.getExercisePrice(), option.getTimeToExpiry(tick()),
+        getGlobals().interestRate, getGlobals().volatility, getGlobals().optionShareNumber);
   }
 
   /*********************** Hedging  ***********************/
 
-  public double calcualteDelta(Option option) {
-    double delta = 0;
-    // We do not want to update the hedge if the option is close to expiry
-    if (option.getTimeToExpiry() < 5){
-      return 0;
+  /* The delta of the whole option position is kept as an aggregate. It is recomputed analytically
+     from every option when the book or the rate and volatility change, an option gets too close
+     to expiry to be hedged, the price has moved by more than revaluationMove or the valuation is
+     revaluationAge ticks old, for the time decay. In between it is moved with the position gamma,
+     within the range the delta of the options can take, so hedging does not have to visit each
+     option every tick. */
+  public double getPositionDelta() {
+    long tick = tick();
+    double price = getGlobals().marketPrice;
+    if (boughtOptions.getVersion() != valuedBookVersion || tick >= nextHedgeCutoffTick
+        || getGlobals().interestRate != valuedInterestRate
+        || getGlobals().volatility != valuedVolatility
+        || Math.abs(price - valuedPrice) > revaluationMove * valuedPrice
+        || tick - valuedTick >= revaluationAge) {
+      revaluePositionGreeks(tick);
     }
+    double delta = positionDelta + positionGamma * (price - valuedPrice);
+    return Math.min(Math.max(delta, minPositionDelta), maxPositionDelta);
+  }
 
-    double currentOptionPrice = calculateOptionPrice(option);
-    double initialOptionPrice = option.getOptionPrice();
-
-    // This is the value of delta for 100 shares since this is what an option represents
-    delta = ((currentOptionPrice - initialOptionPrice) / (getGlobals().marketPrice - option
-        .getInitialStockPrice()));
-
-    // The value of delta for each individual option contract is between -1 and 1
-    if (option.isCallOption()){
-      if (delta > getGlobals().optionShareNumber){
-        delta = getGlobals().optionShareNumber;
-      }
-      if (delta < 0){
-        delta = 0;
-      }
-    } else {
-      if (delta < - getGlobals().optionShareNumber){
-        delta = - getGlobals().optionShareNumber;
+  private void revaluePositionGreeks(long tick) {
+    positionDelta = 0;
+    positionGamma = 0;
+    minPositionDelta = 0;
+    maxPositionDelta = 0;
+    nextHedgeCutoffTick = Long.MAX_VALUE;
+    for (Option option : boughtOptions) {
+      // We do not want to update the hedge if the option is close to expiry
+      if (option.getTimeToExpiry(tick) < hedgeCutoff) {
+        continue;
       }
-      if (delta > 0){
-        delta = 0;
+      greeks.compute(option.isCallOption(), getGlobals().marketPrice, option.getExercisePrice(),
+          option.getTimeToExpiry(tick), getGlobals().interestRate, getGlobals().volatility,
+          getGlobals().optionShareNumber);
+      positionDelta += greeks.delta;
+      positionGamma += greeks.gamma;
+      if (option.isCallOption()) {
+        maxPositionDelta += getGlobals().optionShareNumber;
+      } else {
+        minPositionDelta -= getGlobals().optionShareNumber;
       }
+      nextHedgeCutoffTick = Math.min(nextHedgeCutoffTick,
+          option.getExpiryTick() - hedgeCutoff + 1);
     }
-    return delta;
+    valuedBookVersion = boughtOptions.getVersion();
+    valuedPrice = getGlobals().marketPrice;
+    valuedTick = tick;
+    valuedInterestRate = getGlobals().interestRate;
+    valuedVolatility = getGlobals().volatility;
   }
 
   public void deltaHedge() {
     // Calculates the total delta of the portfolio
-    double totalDelta = Math.round(boughtOptions.stream().mapToDouble(this::calcualteDelta).sum());
+    double totalDelta = Math.round(getPositionDelta());
     totalDelta *= hedgeProportion;
     double changeInHedge = 0;
     double absoluteHedge = Math.abs(hedgePosition);
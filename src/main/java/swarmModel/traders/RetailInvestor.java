@@ -1,13 +1,18 @@
 package swarmModel.traders;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
 import simudyne.core.abm.Action;
 import simudyne.core.annotations.Variable;
 import simudyne.core.functions.SerializableConsumer;
+import swarmModel.ModelMetrics;
+import swarmModel.TickProfiler;
 import swarmModel.links.Links.OpinionLink;
-import swarmModel.links.Messages;
 import swarmModel.links.Messages.OpinionShared;
 
-public class RetailInvestor extends OptionTrader {
+public class RetailInvestor extends Borrower {
 
   @Variable
   public double opinion;
@@ -23,26 +28,67 @@ public class RetailInvestor extends OptionTrader {
   @Override
   public void init() {
     super.init();
-    capital = 1000;
+    setCapital(1000);
     opinion = getPrng().uniform(-10, 10).sample();
     sensitivity = getPrng().uniform(0, 1).sample();
   }
 
-  private static Action<RetailInvestor> action(SerializableConsumer<RetailInvestor> consumer) {
-    return Action.create(RetailInvestor.class, consumer);
+  @Override
+  public void writeState(DataOutput out) throws IOException {
+    super.writeState(out);
+    out.writeDouble(opinion);
+    out.writeDouble(sensitivity);
+    out.writeBoolean(doubt);
+    out.writeDouble(previousPortfolio);
+  }
+
+  @Override
+  public void readState(DataInput in) throws IOException {
+    super.readState(in);
+    opinion = in.readDouble();
+    sensitivity = in.readDouble();
+    doubt = in.readBoolean();
+    previousPortfolio = in.readDouble();
+  }
+
+  private static Action<RetailInvestor> action(String phase,
+      SerializableConsumer<RetailInvestor> consumer) {
+    return traderAction(RetailInvestor.class, phase, consumer);
+  }
+
+  // Only needed once, before the first opinions are shared over the sparse opinion network
+  public static Action<RetailInvestor> registerOpinionLinks() {
+    return action("registerOpinionLinks", trader -> trader.getGlobals().opinionNetwork
+        .register(trader.getID(), trader.getLinks(OpinionLink.class)));
   }
 
   public static Action<RetailInvestor> shareOpinion() {
     // Opinions will be ignored by processInformation until it is time to start sharing opinion
-    return action(trader -> trader.getLinks(OpinionLink.class)
-        .send(OpinionShared.class, (msg, link) -> msg.opinion = trader.opinion));
+    return action("shareOpinion", trader -> {
+      if (trader.getGlobals().sparseOpinions) {
+        trader.getGlobals().opinionNetwork.share(trader.getID(), trader.opinion);
+      } else {
+        trader.getLinks(OpinionLink.class)
+            .send(OpinionShared.class, (msg, link) -> msg.opinion = trader.opinion);
+        if (TickProfiler.isRecording()) {
+          TickProfiler.messagesSent(trader.getLinks(OpinionLink.class).size());
+        }
+      }
+    });
   }
 
   public static Action<RetailInvestor> updateOpinion() {
-    return action(trader -> {
-      double generalOpinion = trader.getMessagesOfType(Messages.OpinionShared.class).stream()
-          .mapToDouble(opinion -> opinion.opinion).average().orElse(0);
-      if (generalOpinion != 0 && trader.getContext().getTick() % 3 == 0) {
+    return action("updateOpinion", trader -> {
+      double generalOpinion;
+      if (trader.getGlobals().sparseOpinions) {
+        generalOpinion = trader.getGlobals().opinionNetwork.meanOpinion(trader.getID());
+      } else {
+        List<OpinionShared> opinions = trader.getMessagesOfType(OpinionShared.class);
+        ModelMetrics.messagesRead(opinions.size());
+        generalOpinion = opinions.stream()
+            .mapToDouble(opinion -> opinion.opinion).average().orElse(0);
+      }
+      if (generalOpinion != 0 && trader.tick() % 3 == 0) {
 
         if (trader.doubt) {
           // If the trader has doubts, they reverse their opinion
@@ -52,18 +98,21 @@ public class RetailInvestor extends OptionTrader {
              every 3 time steps if they do not doubt*/
           trader.opinion = (generalOpinion + trader.opinion) / 2;
         }
-        trader.doubt = trader.getPrng().uniform(0, 1).sample() > 0.9;
+        trader.doubt = trader.randomStream().uniform() > 0.9;
       }
     });
   }
 
   public static Action<RetailInvestor> processInformation() {
-    return action(trader -> {
+    return action("processInformation", trader -> {
+      if (!trader.isTradingRound()) {
+        return;
+      }
       // We update the sensitivity of the traders opinion trading every 5 steps
-      if (trader.getContext().getTick() % 15 == 0 && trader.getContext().getTick() > 1) {
+      if (trader.tick() % 15 == 0 && trader.tick() > 1) {
         trader.updateSensitivity();
       }
-      if (trader.getContext().getTick() > trader.getGlobals().timeToStartOpinionSharing) {
+      if (trader.tick() > trader.getGlobals().timeToStartOpinionSharing) {
         if (trader.isTrading()) {
           trader.tradeOnOpinion(trader.opinion, trader.sensitivity);
         }
@@ -75,6 +124,7 @@ public class RetailInvestor extends OptionTrader {
 
   // Updates sensitivity based on how well the trader has been doing recently
   public void updateSensitivity() {
+    double portfolio = getPortfolio();
     if (portfolio > previousPortfolio) {
       sensitivity += 0.025;
     } else {
@@ -90,6 +140,6 @@ public class RetailInvestor extends OptionTrader {
   }
 
   private boolean isTrading() {
-    return getPrng().uniform(0, 1).sample() > 0.25;
+    return randomStream().uniform() > 0.25;
   }
 }
@@ -0,0 +1,170 @@
+package swarmModel.utils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Orders for the limit order book, placed by traders during a tick and matched by the exchange
+   once they have all acted. Each thread writes into a buffer of its own, so placing an order is a
+   few array stores. All orders of a tick are taken as placed at the same time, so they are matched
+   in an order which does not depend on threads: cancellations first, then limit orders, then
+   market orders, and within each the owners in an order shuffled by the tick, each owner's orders
+   in the order it placed them. The fills are then added up per owner for the traders to settle. */
+public class BookOrders implements Serializable {
+
+  private static final byte cancelAll = 0;
+  private static final byte limitBuy = 1;
+  private static final byte limitSell = 2;
+  private static final byte marketBuy = 3;
+  private static final byte marketSell = 4;
+
+  // Orders of a tick are sorted on a key holding the group, a hash of the owner and the index
+  private static final int indexBits = 24;
+  private static final int hashBits = 61 - indexBits;
+
+  private final List<Buffer> buffers = Collections.synchronizedList(new ArrayList<>());
+  private transient volatile ThreadLocal<Buffer> buffer;
+
+  // Shares and cash received by each owner in the last match
+  private volatile Map<Long, double[]> settlements = Collections.emptyMap();
+
+  private static final class Buffer implements Serializable {
+
+    byte[] types = new byte[256];
+    long[] owners = new long[256];
+    long[] quantities = new long[256];
+    double[] prices = new double[256];
+    int size = 0;
+
+    void add(byte type, long owner, long quantity, double price) {
+      if (size == types.length) {
+        types = Arrays.copyOf(types, size * 2);
+        owners = Arrays.copyOf(owners, size * 2);
+        quantities = Arrays.copyOf(quantities, size * 2);
+        prices = Arrays.copyOf(prices, size * 2);
+      }
+      types[size] = type;
+      owners[size] = owner;
+      quantities[size] = quantity;
+      prices[size] = price;
+      size++;
+    }
+  }
+
+  // Created on first use, so it is also there once the globals have been copied
+  private Buffer buffer() {
+    ThreadLocal<Buffer> threadBuffer = buffer;
+    if (threadBuffer == null) {
+      synchronized (buffers) {
+        if (buffer == null) {
+          buffer = ThreadLocal.withInitial(() -> {
+            Buffer newBuffer = new Buffer();
+            buffers.add(newBuffer);
+            return newBuffer;
+          });
+        }
+        threadBuffer = buffer;
+      }
+    }
+    return threadBuffer.get();
+  }
+
+  // Volumes are truncated to whole shares, as with the order flow
+  public void market(long owner, boolean buy, double volume) {
+    if ((long) volume > 0) {
+      buffer().add(buy ? marketBuy : marketSell, owner, (long) volume, Double.NaN);
+    }
+  }
+
+  public void limit(long owner, boolean buy, double volume, double price) {
+    if ((long) volume > 0) {
+      buffer().add(buy ? limitBuy : limitSell, owner, (long) volume, price);
+    }
+  }
+
+  // Cancels the orders of the owner still in the book
+  public void cancelAll(long owner) {
+    buffer().add(cancelAll, owner, 0, Double.NaN);
+  }
+
+  /* Matches the orders placed since the last match and adds up the fills per owner, returns the
+     number of orders. Must not run while orders are being placed. */
+  public int match(OrderBook book, long tick) {
+    List<Buffer> placed;
+    synchronized (buffers) {
+      placed = new ArrayList<>(buffers);
+    }
+    int orders = 0;
+    for (Buffer threadBuffer : placed) {
+      orders += threadBuffer.size;
+    }
+    if (orders >= 1 << indexBits) {
+      throw new IllegalStateException(orders + " orders in one tick, at most "
+          + ((1 << indexBits) - 1) + " can be matched");
+    }
+    byte[] types = new byte[orders];
+    long[] owners = new long[orders];
+    long[] quantities = new long[orders];
+    double[] prices = new double[orders];
+    long[] keys = new long[orders];
+    int order = 0;
+    for (Buffer threadBuffer : placed) {
+      for (int i = 0; i < threadBuffer.size; i++, order++) {
+        types[order] = threadBuffer.types[i];
+        owners[order] = threadBuffer.owners[i];
+        quantities[order] = threadBuffer.quantities[i];
+        prices[order] = threadBuffer.prices[i];
+        long group = types[order] == cancelAll ? 0 : types[order] <= limitSell ? 1 : 2;
+        long ownerHash = mix(owners[order] ^ mix(tick)) >>> (64 - hashBits);
+        keys[order] = group << 61 | ownerHash << indexBits | order;
+      }
+      threadBuffer.size = 0;
+    }
+    Arrays.sort(keys);
+
+    book.clearFills();
+    book.resetTakerVolumes();
+    for (long key : keys) {
+      int i = (int) (key & ((1 << indexBits) - 1));
+      switch (types[i]) {
+        case cancelAll:
+          book.cancelAll(owners[i]);
+          break;
+        case limitBuy:
+        case limitSell:
+          book.limit(types[i] == limitBuy, owners[i], prices[i], quantities[i]);
+          break;
+        default:
+          book.market(types[i] == marketBuy, owners[i], quantities[i]);
+      }
+    }
+    settle(book);
+    return orders;
+  }
+
+  private void settle(OrderBook book) {
+    Map<Long, double[]> byOwner = new HashMap<>();
+    for (int fill = 0; fill < book.getFills(); fill++) {
+      double[] settlement =
+          byOwner.computeIfAbsent(book.getFillOwner(fill), owner -> new double[2]);
+      settlement[0] += book.getFillShares(fill);
+      settlement[1] += book.getFillCash(fill);
+    }
+    settlements = byOwner;
+  }
+
+  // Shares and cash the owner received in the last match, null if none of its orders filled
+  public double[] settlement(long owner) {
+    return settlements.get(owner);
+  }
+
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
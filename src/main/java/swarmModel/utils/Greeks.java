@@ -0,0 +1,38 @@
+package swarmModel.utils;
+
+import java.io.Serializable;
+
+/* Analytic Black Scholes sensitivities of one option contract, all derived from a single
+   evaluation of d1. Values are per contract, so they are scaled by the number of shares an
+   option is for. The holder is reused between calls to avoid allocating per option. */
+public final class Greeks implements Serializable {
+
+  // Time to expiry is represented in years for these calculations, each timeStep = 1 day
+  private static final double daysPerYear = 365;
+
+  public double delta;
+  public double gamma;
+  public double vega;
+
+  public Greeks compute(boolean isCall, double stockPrice, double exercisePrice,
+      int timeToExpiry, double interestRate, double volatility, double shareNumber) {
+    double years = timeToExpiry / daysPerYear;
+    double d1 = OptionPricer.d1(stockPrice, exercisePrice, years, interestRate, volatility);
+    if (volatility <= 0 || years <= 0 || Double.isNaN(d1) || Double.isInfinite(d1)) {
+      // Without any uncertainty left the option behaves like its payoff
+      double inTheMoney = isCall ? (stockPrice > exercisePrice ? 1 : 0)
+          : (stockPrice < exercisePrice ? -1 : 0);
+      delta = inTheMoney * shareNumber;
+      gamma = 0;
+      vega = 0;
+      return this;
+    }
+    double sqrtYears = Math.sqrt(years);
+    double density = Math.exp(-d1 * d1 / 2) / 2.5066282746310002;
+    double callDelta = OptionPricer.normalCdf(d1);
+    delta = (isCall ? callDelta : callDelta - 1) * shareNumber;
+    gamma = density / (stockPrice * volatility * sqrtYears) * shareNumber;
+    vega = stockPrice * density * sqrtYears * shareNumber;
+    return this;
+  }
+}
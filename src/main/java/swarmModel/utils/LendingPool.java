@@ -0,0 +1,94 @@
+package swarmModel.utils;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.LongAdder;
+
+/* The lender of the model, in place of a bank agent sent a request by every borrower each tick.
+   Borrowers add what they ask for and what they pay back directly, and only when it is not zero.
+   The totals are adders striped across threads as in OrderFlow, so concurrent borrowers rarely
+   contend, and they are kept in whole cents so they do not depend on the order of the threads.
+   Once per tick the model clears all the requests of the tick together: they are lent in full
+   while the pool has the capital, otherwise every request gets the same fraction of what it asked.
+   Each borrower keeps its own loan and takes its share of its request, see Borrower. */
+public class LendingPool implements Serializable {
+
+  private static final double cents = 100;
+
+  private final LongAdder requested = new LongAdder();
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder loansRepaid = new LongAdder();
+  private final LongAdder interestPaid = new LongAdder();
+
+  private double capitalToLend;
+  private double moneyLent = 0;
+  private double profitFromInterest = 0;
+  private double lentFraction = 0;
+  private boolean lending = true;
+
+  public LendingPool(double capitalToLend) {
+    this.capitalToLend = capitalToLend;
+  }
+
+  public void request(double amount) {
+    if (amount > 0) {
+      requested.add(Math.round(amount * cents));
+      requests.increment();
+    }
+  }
+
+  public void repay(double loan, double interest) {
+    if (loan != 0) {
+      loansRepaid.add(Math.round(loan * cents));
+    }
+    if (interest != 0) {
+      interestPaid.add(Math.round(interest * cents));
+    }
+  }
+
+  /* Takes in the repayments, then lends what it can of the requests added since the last clearing.
+     Returns the number of requests. */
+  public long clear() {
+    double repaid = loansRepaid.sumThenReset() / cents;
+    double interest = interestPaid.sumThenReset() / cents;
+    capitalToLend += repaid + interest;
+    profitFromInterest += interest;
+    moneyLent -= repaid;
+
+    double total = requested.sumThenReset() / cents;
+    lending = capitalToLend > 0;
+    if (!lending) {
+      lentFraction = 0;
+    } else if (total > capitalToLend) {
+      lentFraction = capitalToLend / total;
+      moneyLent += capitalToLend;
+      capitalToLend = 0;
+    } else {
+      lentFraction = 1;
+      capitalToLend -= total;
+      moneyLent += total;
+    }
+    return requests.sumThenReset();
+  }
+
+  // Fraction of each request of the last clearing that was lent
+  public double getLentFraction() {
+    return lentFraction;
+  }
+
+  // False once the pool has run out of capital, borrowers then stop asking
+  public boolean isLending() {
+    return lending;
+  }
+
+  public double getCapitalToLend() {
+    return capitalToLend;
+  }
+
+  public double getMoneyLent() {
+    return moneyLent;
+  }
+
+  public double getProfitFromInterest() {
+    return profitFromInterest;
+  }
+}
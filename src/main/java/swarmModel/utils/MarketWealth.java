@@ -0,0 +1,109 @@
+package swarmModel.utils;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/* Shares, capital and options held by each type of trader, kept up to date by the traders as they
+   trade rather than summed over every trader each tick, so the wealth of a type is read without
+   visiting its traders.
+   Capital is held in units of the interest index, as each trader's capital grows with the index
+   between its settlements, see BaseTrader.settleInterest. Options are aggregated by series in an
+   OptionSeriesBook per type, bought options counting as positive contracts and sold ones as
+   negative, and must be expired every tick. */
+public class MarketWealth implements Serializable {
+
+  // As in the market maker's book of the options it sold
+  private static final double strikeBucketWidth = 0.01;
+
+  private final LongAdder[] traders;
+  private final DoubleAdder[] shares;
+  private final DoubleAdder[] capital;
+  private final OptionSeriesBook[] options;
+
+  public MarketWealth(int types) {
+    traders = new LongAdder[types];
+    shares = new DoubleAdder[types];
+    capital = new DoubleAdder[types];
+    options = new OptionSeriesBook[types];
+    for (int type = 0; type < types; type++) {
+      traders[type] = new LongAdder();
+      shares[type] = new DoubleAdder();
+      capital[type] = new DoubleAdder();
+      options[type] = new OptionSeriesBook(strikeBucketWidth);
+    }
+  }
+
+  public int getTypes() {
+    return traders.length;
+  }
+
+  public void addTrader(int type) {
+    traders[type].increment();
+  }
+
+  public void addShares(int type, double volume) {
+    shares[type].add(volume);
+  }
+
+  // Capital of a trader settled at the given interest index
+  public void addCapital(int type, double amount, double interestIndex) {
+    capital[type].add(amount / interestIndex);
+  }
+
+  // Shares and capital of one trader, negative to take them out as when a trader is restored
+  public void addHoldings(int type, double shares, double capital, double interestIndex) {
+    addShares(type, shares);
+    addCapital(type, capital, interestIndex);
+  }
+
+  public void addOption(int type, boolean isCall, double exercisePrice, long expiryTick,
+      double contracts) {
+    OptionSeriesBook book = options[type];
+    synchronized (book) {
+      book.add(isCall, exercisePrice, expiryTick, contracts);
+    }
+  }
+
+  public void addOptions(int type, OptionSeriesBook other, double sign) {
+    OptionSeriesBook book = options[type];
+    synchronized (book) {
+      book.addAll(other, sign);
+    }
+  }
+
+  public void expire(long tick) {
+    for (OptionSeriesBook book : options) {
+      synchronized (book) {
+        book.expire(tick);
+      }
+    }
+  }
+
+  public long getTraders(int type) {
+    return traders[type].sum();
+  }
+
+  public double getShares(int type) {
+    return shares[type].sum();
+  }
+
+  public double getCapital(int type, double interestIndex) {
+    return capital[type].sum() * interestIndex;
+  }
+
+  // What the options would pay if exercised now, exact unless the price falls in a strike bucket
+  public double getOptionValue(int type, double marketPrice, double shareNumber) {
+    OptionSeriesBook book = options[type];
+    synchronized (book) {
+      return book.intrinsicValue(marketPrice, shareNumber);
+    }
+  }
+
+  // The sum of the portfolio values of the type's traders
+  public double getWealth(int type, double marketPrice, double shareNumber,
+      double interestIndex) {
+    return getShares(type) * marketPrice + getCapital(type, interestIndex)
+        + getOptionValue(type, marketPrice, shareNumber);
+  }
+}
@@ -0,0 +1,155 @@
+package swarmModel.utils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import simudyne.core.graph.Link;
+
+/* The opinion links between agents as a sparse matrix in compressed sparse rows, so opinions can
+   be averaged without sending a message along every link. Each agent which shares its opinion
+   registers the agents its links point to once, then every tick it writes its opinion into a
+   vector, one averaging pass computes for every agent the mean opinion shared with it, and each
+   receiver reads its mean back. Rows are the receivers and their entries the senders, a pair
+   linked twice counts twice, as the two messages did. Only opinions written since the last pass
+   are averaged, like messages which only arrive when sent. */
+public class OpinionNetwork implements Serializable {
+
+  // Rows above this are averaged on all cores
+  private static final int parallelRows = 1 << 16;
+  // Ids spread over less than this many times the number of nodes are looked up in a table
+  private static final int maxIdSpread = 4;
+
+  private final Map<Long, long[]> registeredLinks = new ConcurrentHashMap<>();
+  // Agent id of each node, sorted so a node is found by binary search
+  private long[] ids = new long[0];
+  // Node of each id from the first, -1 for ids which are not nodes, when the ids are close together
+  private long firstId = 0;
+  private int[] idNodes = null;
+  private int[] rowStart = new int[1];
+  private int[] senders = new int[0];
+  private double[] opinions = new double[0];
+  private boolean[] shared = new boolean[0];
+  private double[] meanOpinions = new double[0];
+  private boolean built = false;
+
+  public boolean isBuilt() {
+    return built;
+  }
+
+  // Called by every sender before the network is built, with its opinion links
+  public void register(long sender, Iterable<? extends Link> links) {
+    LongStream.Builder receivers = LongStream.builder();
+    for (Link link : links) {
+      receivers.add(link.getTo());
+    }
+    register(sender, receivers.build().toArray());
+  }
+
+  public void register(long sender, long... receivers) {
+    if (built) {
+      throw new IllegalStateException("The opinion network is already built");
+    }
+    registeredLinks.put(sender, receivers);
+  }
+
+  public void build() {
+    ids = registeredLinks.entrySet().stream()
+        .flatMapToLong(entry -> LongStream.concat(LongStream.of(entry.getKey()),
+            Arrays.stream(entry.getValue())))
+        .sorted().distinct().toArray();
+    int nodes = ids.length;
+    long idSpan = nodes == 0 ? 0 : ids[nodes - 1] - ids[0] + 1;
+    if (nodes > 0 && idSpan < (long) maxIdSpread * nodes && idSpan < Integer.MAX_VALUE) {
+      firstId = ids[0];
+      idNodes = new int[(int) idSpan];
+      Arrays.fill(idNodes, -1);
+      for (int node = 0; node < nodes; node++) {
+        idNodes[(int) (ids[node] - firstId)] = node;
+      }
+    }
+    rowStart = new int[nodes + 1];
+    for (long[] receivers : registeredLinks.values()) {
+      for (long receiver : receivers) {
+        rowStart[node(receiver) + 1]++;
+      }
+    }
+    for (int row = 0; row < nodes; row++) {
+      rowStart[row + 1] += rowStart[row];
+    }
+    senders = new int[rowStart[nodes]];
+    int[] filled = Arrays.copyOf(rowStart, nodes);
+    // Senders in id order, so the entries of each row do not depend on the order of registration
+    for (int sender = 0; sender < nodes; sender++) {
+      long[] receivers = registeredLinks.get(ids[sender]);
+      if (receivers != null) {
+        for (long receiver : receivers) {
+          senders[filled[node(receiver)]++] = sender;
+        }
+      }
+    }
+    opinions = new double[nodes];
+    shared = new boolean[nodes];
+    meanOpinions = new double[nodes];
+    registeredLinks.clear();
+    built = true;
+  }
+
+  // Node of an agent, -1 when it is not linked to any other
+  private int node(long id) {
+    if (idNodes != null) {
+      long offset = id - firstId;
+      return offset >= 0 && offset < idNodes.length ? idNodes[(int) offset] : -1;
+    }
+    int node = Arrays.binarySearch(ids, id);
+    return node < 0 ? -1 : node;
+  }
+
+  public int getNodes() {
+    return ids.length;
+  }
+
+  public int getLinks() {
+    return senders.length;
+  }
+
+  // Each node is only written by its own agent, so senders can share concurrently
+  public void share(long id, double opinion) {
+    int node = node(id);
+    if (node >= 0) {
+      opinions[node] = opinion;
+      shared[node] = true;
+    }
+  }
+
+  // Averages the opinions shared with every node since the last pass
+  public void propagate() {
+    IntStream rows = IntStream.range(0, ids.length);
+    if (ids.length > parallelRows) {
+      rows = rows.parallel();
+    }
+    rows.forEach(this::averageRow);
+    Arrays.fill(shared, false);
+  }
+
+  private void averageRow(int row) {
+    double sum = 0;
+    int count = 0;
+    for (int entry = rowStart[row]; entry < rowStart[row + 1]; entry++) {
+      int sender = senders[entry];
+      if (shared[sender]) {
+        sum += opinions[sender];
+        count++;
+      }
+    }
+    meanOpinions[row] = count == 0 ? 0 : sum / count;
+  }
+
+  // Mean opinion shared with the agent on the last pass, 0 when none was
+  public double meanOpinion(long id) {
+    int node = node(id);
+    return node < 0 ? 0 : meanOpinions[node];
+  }
+}
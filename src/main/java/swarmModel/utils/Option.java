@@ -1,31 +1,30 @@
 package swarmModel.utils;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 public class Option {
 
   public enum type {CALL, PUT}
 
   private double optionPrice = 0;
 
-  // This is represented as the number of steps until it expires
-  private int timeToExpiry;
+  // Tick on which the option expires
+  private final long expiryTick;
 
   private final double exercisePrice;
   private final double initialStockPrice;
   private final type optionType;
 
 
-  public Option(int timeToExpiry, double exercisePrice, type optionType, double initialStockPrice) {
-    this.timeToExpiry = timeToExpiry;
+  public Option(long expiryTick, double exercisePrice, type optionType, double initialStockPrice) {
+    this.expiryTick = expiryTick;
     this.exercisePrice = exercisePrice;
     this.optionType = optionType;
     this.initialStockPrice = initialStockPrice;
   }
 
-  public boolean timeStep() {
-    timeToExpiry--;
-    return timeToExpiry == 0;
-  }
-
   public double getInitialStockPrice() {
     return initialStockPrice;
   }
@@ -38,8 +37,13 @@ public class Option {
     this.optionPrice = optionPrice;
   }
 
-  public int getTimeToExpiry() {
-    return timeToExpiry;
+  public long getExpiryTick() {
+    return expiryTick;
+  }
+
+  // Represented as the number of steps until the option expires
+  public int getTimeToExpiry(long tick) {
+    return (int) (expiryTick - tick);
   }
 
   public boolean isCallOption() {
@@ -50,4 +54,19 @@ public class Option {
     return exercisePrice;
   }
 
+  public void writeTo(DataOutput out) throws IOException {
+    out.writeLong(expiryTick);
+    out.writeDouble(exercisePrice);
+    out.writeBoolean(isCallOption());
+    out.writeDouble(initialStockPrice);
+    out.writeDouble(optionPrice);
+  }
+
+  public static Option readFrom(DataInput in) throws IOException {
+    Option option = new Option(in.readLong(), in.readDouble(),
+        in.readBoolean() ? type.CALL : type.PUT, in.readDouble());
+    option.setOptionPrice(in.readDouble());
+    return option;
+  }
+
 }
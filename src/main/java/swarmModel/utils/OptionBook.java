@@ -0,0 +1,133 @@
+package swarmModel.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/* Options held by a trader, filed by expiry tick in a timing wheel. Each bucket holds the options
+   expiring on ticks equal to its index modulo the wheel size, so on every tick only the bucket for
+   that tick has to be looked at. Options expiring more than a full turn of the wheel away simply
+   stay in their bucket until their own tick comes round. */
+public class OptionBook implements Iterable<Option>, Serializable {
+
+  private static final int wheelSize = 32;
+
+  private final ArrayList<Option>[] buckets;
+  private int size = 0;
+  // Incremented whenever an option is added or removed
+  private long version = 0;
+
+  @SuppressWarnings("unchecked")
+  public OptionBook() {
+    buckets = (ArrayList<Option>[]) new ArrayList[wheelSize];
+  }
+
+  public void add(Option option) {
+    int slot = slot(option.getExpiryTick());
+    if (buckets[slot] == null) {
+      buckets[slot] = new ArrayList<>();
+    }
+    buckets[slot].add(option);
+    size++;
+    version++;
+  }
+
+  // Removes and returns an option expired by the given tick, or null if there are none left
+  public Option pollExpired(long tick) {
+    ArrayList<Option> bucket = buckets[slot(tick)];
+    if (bucket == null) {
+      return null;
+    }
+    for (int i = bucket.size() - 1; i >= 0; i--) {
+      Option option = bucket.get(i);
+      if (option.getExpiryTick() <= tick) {
+        // Order within a bucket does not matter, so move the last option into the gap
+        Option last = bucket.remove(bucket.size() - 1);
+        if (i < bucket.size()) {
+          bucket.set(i, last);
+        }
+        size--;
+        version++;
+        return option;
+      }
+    }
+    return null;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  // Buckets are written in order so the options are iterated in the same order once read back
+  public void writeTo(DataOutput out) throws IOException {
+    out.writeLong(version);
+    out.writeInt(size);
+    for (int slot = 0; slot < wheelSize; slot++) {
+      if (buckets[slot] == null || buckets[slot].isEmpty()) {
+        continue;
+      }
+      out.writeByte(slot);
+      out.writeInt(buckets[slot].size());
+      for (Option option : buckets[slot]) {
+        option.writeTo(out);
+      }
+    }
+  }
+
+  public static OptionBook readFrom(DataInput in) throws IOException {
+    OptionBook book = new OptionBook();
+    book.version = in.readLong();
+    int size = in.readInt();
+    while (book.size < size) {
+      int slot = in.readByte();
+      int bucketSize = in.readInt();
+      book.buckets[slot] = new ArrayList<>(bucketSize);
+      for (int i = 0; i < bucketSize; i++) {
+        book.buckets[slot].add(Option.readFrom(in));
+      }
+      book.size += bucketSize;
+    }
+    return book;
+  }
+
+  @Override
+  public Iterator<Option> iterator() {
+    return new Iterator<Option>() {
+      private int slot = 0;
+      private int index = 0;
+
+      @Override
+      public boolean hasNext() {
+        while (slot < wheelSize && (buckets[slot] == null || index >= buckets[slot].size())) {
+          slot++;
+          index = 0;
+        }
+        return slot < wheelSize;
+      }
+
+      @Override
+      public Option next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return buckets[slot].get(index++);
+      }
+    };
+  }
+
+  private static int slot(long tick) {
+    return (int) (tick & (wheelSize - 1));
+  }
+}
@@ -0,0 +1,135 @@
+package swarmModel.utils;
+
+/* Black Scholes pricing shared by all option traders. The normal CDF uses Hart's rational
+   approximation, which is accurate to double precision and needs no distribution object.
+   Strikes are derived from the market price and repeat across traders within a tick, so prices
+   are memoised in a small cache per thread keyed on every input of the formula. */
+public final class OptionPricer {
+
+  // Time to expiry is represented in years for these calculations, each timeStep = 1 day
+  private static final double daysPerYear = 365;
+
+  private static final ThreadLocal<PriceCache> cache = ThreadLocal.withInitial(PriceCache::new);
+
+  private OptionPricer() {
+  }
+
+  public static double price(boolean isCall, double stockPrice, double exercisePrice,
+      int timeToExpiry, double interestRate, double volatility, double shareNumber) {
+    return cache.get()
+        .price(isCall, stockPrice, exercisePrice, timeToExpiry, interestRate, volatility,
+            shareNumber);
+  }
+
+  /* Black Scholes Equation:
+     Cost = Stock price * N(d1) - Exercise price * e^(-interestRate * timeToExpiry) * N(d2)
+     where N(d1) and N(d2) are cumulative distribution functions for the normal distribution
+     and d2 = d1 - volatility * sqrt(timeToExpiry), so delta in Greeks is the slope of this price */
+  public static double computePrice(boolean isCall, double stockPrice, double exercisePrice,
+      int timeToExpiry, double interestRate, double volatility, double shareNumber) {
+    double years = timeToExpiry / daysPerYear;
+    double d1 = d1(stockPrice, exercisePrice, years, interestRate, volatility);
+    double d2 = d1 - volatility * Math.sqrt(years);
+    double discountedExercisePrice = exercisePrice * Math.exp(-interestRate * years);
+    double optionPrice;
+    if (isCall) {
+      optionPrice = (stockPrice * normalCdf(d1) - discountedExercisePrice * normalCdf(d2))
+          * shareNumber;
+    } else {
+      optionPrice = (normalCdf(-d2) * discountedExercisePrice - normalCdf(-d1) * stockPrice)
+          * shareNumber;
+    }
+    if (optionPrice > 0) {
+      return optionPrice;
+    }
+    return 0;
+  }
+
+  public static double d1(double stockPrice, double exercisePrice, double years,
+      double interestRate, double volatility) {
+    return (1 / (volatility * Math.sqrt(years))) * (Math.log(stockPrice / exercisePrice)
+        + (interestRate + volatility * volatility / 2) * years);
+  }
+
+  // Hart (1968) as given by West, "Better approximations to cumulative normal functions"
+  public static double normalCdf(double x) {
+    if (Double.isNaN(x)) {
+      return Double.NaN;
+    }
+    double absX = Math.abs(x);
+    double cumulative;
+    if (absX > 37) {
+      cumulative = 0;
+    } else {
+      double exponential = Math.exp(-absX * absX / 2);
+      if (absX < 7.07106781186547) {
+        double numerator = 3.52624965998911E-02 * absX + 0.700383064443688;
+        numerator = numerator * absX + 6.37396220353165;
+        numerator = numerator * absX + 33.912866078383;
+        numerator = numerator * absX + 112.079291497871;
+        numerator = numerator * absX + 221.213596169931;
+        numerator = numerator * absX + 220.206867912376;
+        double denominator = 8.83883476483184E-02 * absX + 1.75566716318264;
+        denominator = denominator * absX + 16.064177579207;
+        denominator = denominator * absX + 86.7807322029461;
+        denominator = denominator * absX + 296.564248779674;
+        denominator = denominator * absX + 637.333633378831;
+        denominator = denominator * absX + 793.826512519948;
+        denominator = denominator * absX + 440.413735824752;
+        cumulative = exponential * numerator / denominator;
+      } else {
+        double fraction = absX + 0.65;
+        fraction = absX + 4 / fraction;
+        fraction = absX + 3 / fraction;
+        fraction = absX + 2 / fraction;
+        fraction = absX + 1 / fraction;
+        cumulative = exponential / fraction / 2.506628274631;
+      }
+    }
+    return x > 0 ? 1 - cumulative : cumulative;
+  }
+
+  // Direct mapped cache, a colliding entry simply replaces the previous one
+  private static final class PriceCache {
+
+    private static final int size = 1024;
+
+    private final boolean[] filled = new boolean[size];
+    private final boolean[] isCall = new boolean[size];
+    private final double[] stockPrice = new double[size];
+    private final double[] exercisePrice = new double[size];
+    private final int[] timeToExpiry = new int[size];
+    private final double[] interestRate = new double[size];
+    private final double[] volatility = new double[size];
+    private final double[] shareNumber = new double[size];
+    private final double[] price = new double[size];
+
+    double price(boolean call, double stock, double exercise, int expiry, double rate,
+        double vol, double shares) {
+      long hash = Double.doubleToLongBits(exercise) * 31 + expiry;
+      hash = hash * 31 + Double.doubleToLongBits(stock);
+      hash = hash * 2 + (call ? 1 : 0);
+      hash ^= hash >>> 32;
+      hash ^= hash >>> 16;
+      int slot = (int) hash & (size - 1);
+
+      if (filled[slot] && isCall[slot] == call && exercisePrice[slot] == exercise
+          && timeToExpiry[slot] == expiry && stockPrice[slot] == stock
+          && interestRate[slot] == rate && volatility[slot] == vol
+          && shareNumber[slot] == shares) {
+        return price[slot];
+      }
+      double result = computePrice(call, stock, exercise, expiry, rate, vol, shares);
+      filled[slot] = true;
+      isCall[slot] = call;
+      stockPrice[slot] = stock;
+      exercisePrice[slot] = exercise;
+      timeToExpiry[slot] = expiry;
+      interestRate[slot] = rate;
+      volatility[slot] = vol;
+      shareNumber[slot] = shares;
+      price[slot] = result;
+      return result;
+    }
+  }
+}
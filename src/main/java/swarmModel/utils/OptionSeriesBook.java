@@ -0,0 +1,198 @@
+package swarmModel.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/* Option positions aggregated by series, where a series is the option type, the strike rounded to
+   a bucket and the expiry tick. Each series keeps the number of contracts, the sum of their strikes
+   and the strike range, which is enough to value it exactly unless the market price falls inside
+   the bucket. Series are filed in a timing wheel by expiry tick so expired ones are dropped by
+   only looking at the current tick's bucket, and memory stays bounded by the live series. */
+public class OptionSeriesBook implements Serializable {
+
+  private static final int wheelSize = 32;
+
+  private final double strikeBucketWidth;
+  private final ArrayList<Series>[] wheel;
+  private int seriesCount = 0;
+  private double contracts = 0;
+
+  @SuppressWarnings("unchecked")
+  public OptionSeriesBook(double strikeBucketWidth) {
+    this.strikeBucketWidth = strikeBucketWidth;
+    this.wheel = (ArrayList<Series>[]) new ArrayList[wheelSize];
+  }
+
+  public void add(Option option) {
+    add(option.isCallOption(), option.getExercisePrice(), option.getExpiryTick(), 1);
+  }
+
+  public void add(boolean isCall, double exercisePrice, long expiryTick, double nbContracts) {
+    Series series = series(isCall, Math.round(exercisePrice / strikeBucketWidth), expiryTick);
+    series.contracts += nbContracts;
+    series.strikeSum += exercisePrice * nbContracts;
+    series.minStrike = Math.min(series.minStrike, exercisePrice);
+    series.maxStrike = Math.max(series.maxStrike, exercisePrice);
+    contracts += nbContracts;
+  }
+
+  // Adds, or with a sign of -1 takes away, every series of a book of the same bucket width
+  public void addAll(OptionSeriesBook other, double sign) {
+    for (ArrayList<Series> bucket : other.wheel) {
+      if (bucket == null) {
+        continue;
+      }
+      for (Series added : bucket) {
+        Series series = series(added.isCall, added.strikeBucket, added.expiryTick);
+        series.contracts += sign * added.contracts;
+        series.strikeSum += sign * added.strikeSum;
+        series.minStrike = Math.min(series.minStrike, added.minStrike);
+        series.maxStrike = Math.max(series.maxStrike, added.maxStrike);
+        contracts += sign * added.contracts;
+      }
+    }
+  }
+
+  private Series series(boolean isCall, long strikeBucket, long expiryTick) {
+    int slot = slot(expiryTick);
+    if (wheel[slot] == null) {
+      wheel[slot] = new ArrayList<>();
+    }
+    for (Series candidate : wheel[slot]) {
+      if (candidate.isCall == isCall && candidate.strikeBucket == strikeBucket
+          && candidate.expiryTick == expiryTick) {
+        return candidate;
+      }
+    }
+    Series series = new Series(isCall, strikeBucket, expiryTick);
+    wheel[slot].add(series);
+    seriesCount++;
+    return series;
+  }
+
+  // Drops every series which has expired by the given tick
+  public void expire(long tick) {
+    ArrayList<Series> bucket = wheel[slot(tick)];
+    if (bucket == null) {
+      return;
+    }
+    for (int i = bucket.size() - 1; i >= 0; i--) {
+      Series series = bucket.get(i);
+      if (series.expiryTick <= tick) {
+        Series last = bucket.remove(bucket.size() - 1);
+        if (i < bucket.size()) {
+          bucket.set(i, last);
+        }
+        seriesCount--;
+        contracts -= series.contracts;
+      }
+    }
+  }
+
+  // Value of exercising every option in the book now, for the number of shares per option given
+  public double intrinsicValue(double marketPrice, double shareNumber) {
+    double value = 0;
+    for (ArrayList<Series> bucket : wheel) {
+      if (bucket == null) {
+        continue;
+      }
+      for (Series series : bucket) {
+        value += series.intrinsicValue(marketPrice);
+      }
+    }
+    return value * shareNumber;
+  }
+
+  public int getSeriesCount() {
+    return seriesCount;
+  }
+
+  public double getContracts() {
+    return contracts;
+  }
+
+  public void writeTo(DataOutput out) throws IOException {
+    out.writeDouble(strikeBucketWidth);
+    out.writeInt(seriesCount);
+    out.writeDouble(contracts);
+    for (int slot = 0; slot < wheelSize; slot++) {
+      if (wheel[slot] == null) {
+        continue;
+      }
+      for (Series series : wheel[slot]) {
+        out.writeBoolean(series.isCall);
+        out.writeLong(series.strikeBucket);
+        out.writeLong(series.expiryTick);
+        out.writeDouble(series.contracts);
+        out.writeDouble(series.strikeSum);
+        out.writeDouble(series.minStrike);
+        out.writeDouble(series.maxStrike);
+      }
+    }
+  }
+
+  public static OptionSeriesBook readFrom(DataInput in) throws IOException {
+    OptionSeriesBook book = new OptionSeriesBook(in.readDouble());
+    book.seriesCount = in.readInt();
+    book.contracts = in.readDouble();
+    for (int i = 0; i < book.seriesCount; i++) {
+      Series series = new Series(in.readBoolean(), in.readLong(), in.readLong());
+      series.contracts = in.readDouble();
+      series.strikeSum = in.readDouble();
+      series.minStrike = in.readDouble();
+      series.maxStrike = in.readDouble();
+      int slot = slot(series.expiryTick);
+      if (book.wheel[slot] == null) {
+        book.wheel[slot] = new ArrayList<>();
+      }
+      book.wheel[slot].add(series);
+    }
+    return book;
+  }
+
+  private static int slot(long tick) {
+    return (int) (tick & (wheelSize - 1));
+  }
+
+  private static final class Series implements Serializable {
+
+    private final boolean isCall;
+    private final long strikeBucket;
+    private final long expiryTick;
+    private double contracts = 0;
+    private double strikeSum = 0;
+    private double minStrike = Double.POSITIVE_INFINITY;
+    private double maxStrike = Double.NEGATIVE_INFINITY;
+
+    private Series(boolean isCall, long strikeBucket, long expiryTick) {
+      this.isCall = isCall;
+      this.strikeBucket = strikeBucket;
+      this.expiryTick = expiryTick;
+    }
+
+    private double intrinsicValue(double marketPrice) {
+      if (contracts == 0) {
+        return 0;
+      }
+      if (isCall) {
+        if (marketPrice >= maxStrike) {
+          return contracts * marketPrice - strikeSum;
+        } else if (marketPrice <= minStrike) {
+          return 0;
+        }
+        // The price is within the bucket so value it at the average strike
+        return contracts * Math.max(marketPrice - strikeSum / contracts, 0);
+      } else {
+        if (marketPrice <= minStrike) {
+          return strikeSum - contracts * marketPrice;
+        } else if (marketPrice >= maxStrike) {
+          return 0;
+        }
+        return contracts * Math.max(strikeSum / contracts - marketPrice, 0);
+      }
+    }
+  }
+}
@@ -0,0 +1,456 @@
+package swarmModel.utils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/* Limit order book matching in price then time priority, kept in primitive arrays so matching
+   allocates nothing once the arrays have grown to the size of the book. Prices are whole ticks of
+   the given size. Each price level is a queue of orders linked through their node indices, bids
+   and asks share the levels since a level can only hold one side at a time, and nodes of filled or
+   cancelled orders are pooled for later orders. The orders of each owner are also linked so they
+   can all be cancelled at once.
+
+   Every fill is recorded for both sides, as shares and cash received by the owner, until the fills
+   are cleared. The book is not thread safe, orders are meant to be gathered first and matched by a
+   single thread, see BookOrders. */
+public class OrderBook implements Serializable {
+
+  private static final int none = -1;
+
+  private final double tickSize;
+
+  // Price levels, indexed by price in ticks
+  private int[] levelHeads;
+  private int[] levelTails;
+  private long[] levelQuantities;
+  private int bestBid = none;
+  private int bestAsk = none;
+  private long bidQuantity = 0;
+  private long askQuantity = 0;
+
+  // Order nodes, free nodes are linked through nodeNext
+  private long[] nodeQuantities;
+  private long[] nodeOwners;
+  private int[] nodeLevels;
+  private boolean[] nodeBuys;
+  private int[] nodeNext;
+  private int[] nodePrevious;
+  private int[] nodeOwnerNext;
+  private int[] nodeOwnerPrevious;
+  private int[] nodeGenerations;
+  private int usedNodes = 0;
+  private int freeNode = none;
+
+  // Open addressing map from owner to the head of its list of orders, owners are never removed
+  private long[] ownerKeys;
+  private int[] ownerHeads;
+  private boolean[] ownerUsed;
+  private int owners = 0;
+
+  private long[] fillOwners;
+  private long[] fillShares;
+  private double[] fillCash;
+  private int fills = 0;
+
+  private double lastPrice = Double.NaN;
+  private long takerBuyVolume = 0;
+  private long takerSellVolume = 0;
+
+  public OrderBook(double tickSize) {
+    if (!(tickSize > 0)) {
+      throw new IllegalArgumentException("The tick size must be positive, got " + tickSize);
+    }
+    this.tickSize = tickSize;
+    levelHeads = new int[1024];
+    levelTails = new int[1024];
+    levelQuantities = new long[1024];
+    Arrays.fill(levelHeads, none);
+    Arrays.fill(levelTails, none);
+    growNodes(1024);
+    ownerKeys = new long[1024];
+    ownerHeads = new int[1024];
+    ownerUsed = new boolean[1024];
+    fillOwners = new long[1024];
+    fillShares = new long[1024];
+    fillCash = new double[1024];
+  }
+
+  public double getTickSize() {
+    return tickSize;
+  }
+
+  // Nearest tick to the price, at least one tick as orders cannot be placed at zero
+  public int toTicks(double price) {
+    long ticks = Math.round(price / tickSize);
+    if (ticks >= Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Price " + price + " is beyond the book");
+    }
+    return (int) Math.max(ticks, 1);
+  }
+
+  public double toPrice(int ticks) {
+    return ticks * tickSize;
+  }
+
+  /******************* Orders ******************/
+
+  /* Matches the order against the other side up to its limit price and leaves the rest in the
+     book. Returns the id of the resting order, -1 if it was filled entirely. */
+  public long limit(boolean buy, long owner, double price, long quantity) {
+    int limitTicks = toTicks(price);
+    long remaining = match(buy, owner, limitTicks, quantity);
+    if (remaining == 0) {
+      return -1;
+    }
+    return rest(buy, owner, limitTicks, remaining);
+  }
+
+  // Matches the order against the other side, whatever is not filled is dropped
+  public long market(boolean buy, long owner, long quantity) {
+    return quantity - match(buy, owner, buy ? Integer.MAX_VALUE : 0, quantity);
+  }
+
+  // Returns false if the order was already filled or cancelled
+  public boolean cancel(long orderId) {
+    int node = (int) orderId;
+    if (orderId < 0 || node >= usedNodes || nodeGenerations[node] != (int) (orderId >>> 32)
+        || nodeQuantities[node] == 0) {
+      return false;
+    }
+    removeNode(node);
+    return true;
+  }
+
+  // Returns the number of orders cancelled
+  public int cancelAll(long owner) {
+    int slot = ownerSlot(owner);
+    if (!ownerUsed[slot]) {
+      return 0;
+    }
+    int cancelled = 0;
+    while (ownerHeads[slot] != none) {
+      removeNode(ownerHeads[slot]);
+      cancelled++;
+    }
+    return cancelled;
+  }
+
+  // Returns the quantity left after matching against levels at or better than the limit
+  private long match(boolean buy, long owner, int limitTicks, long quantity) {
+    if (quantity <= 0) {
+      return 0;
+    }
+    long remaining = quantity;
+    while (remaining > 0) {
+      int level = buy ? bestAsk : bestBid;
+      if (level == none || (buy ? level > limitTicks : level < limitTicks)) {
+        break;
+      }
+      double price = toPrice(level);
+      while (remaining > 0 && levelHeads[level] != none) {
+        int maker = levelHeads[level];
+        long traded = Math.min(remaining, nodeQuantities[maker]);
+        remaining -= traded;
+        nodeQuantities[maker] -= traded;
+        levelQuantities[level] -= traded;
+        if (buy) {
+          askQuantity -= traded;
+          takerBuyVolume += traded;
+        } else {
+          bidQuantity -= traded;
+          takerSellVolume += traded;
+        }
+        addFill(owner, buy ? traded : -traded, (buy ? -traded : traded) * price);
+        addFill(nodeOwners[maker], buy ? -traded : traded, (buy ? traded : -traded) * price);
+        lastPrice = price;
+        if (nodeQuantities[maker] == 0) {
+          removeNode(maker);
+        }
+      }
+    }
+    return remaining;
+  }
+
+  private long rest(boolean buy, long owner, int level, long quantity) {
+    ensureLevel(level);
+    int node = newNode();
+    nodeQuantities[node] = quantity;
+    nodeOwners[node] = owner;
+    nodeLevels[node] = level;
+    nodeBuys[node] = buy;
+    nodeNext[node] = none;
+    nodePrevious[node] = levelTails[level];
+    if (levelTails[level] == none) {
+      levelHeads[level] = node;
+    } else {
+      nodeNext[levelTails[level]] = node;
+    }
+    levelTails[level] = node;
+    levelQuantities[level] += quantity;
+
+    int slot = ownerSlot(owner);
+    if (!ownerUsed[slot]) {
+      ownerUsed[slot] = true;
+      ownerKeys[slot] = owner;
+      ownerHeads[slot] = none;
+      owners++;
+      slot = growOwnersIfNeeded(slot, owner);
+    }
+    nodeOwnerPrevious[node] = none;
+    nodeOwnerNext[node] = ownerHeads[slot];
+    if (ownerHeads[slot] != none) {
+      nodeOwnerPrevious[ownerHeads[slot]] = node;
+    }
+    ownerHeads[slot] = node;
+
+    if (buy) {
+      bidQuantity += quantity;
+      if (bestBid == none || level > bestBid) {
+        bestBid = level;
+      }
+    } else {
+      askQuantity += quantity;
+      if (bestAsk == none || level < bestAsk) {
+        bestAsk = level;
+      }
+    }
+    return ((long) nodeGenerations[node] << 32) | node;
+  }
+
+  // Takes the node out of its level and its owner's list and returns it to the pool
+  private void removeNode(int node) {
+    int level = nodeLevels[node];
+    boolean buy = nodeBuys[node];
+    long quantity = nodeQuantities[node];
+    levelQuantities[level] -= quantity;
+    if (buy) {
+      bidQuantity -= quantity;
+    } else {
+      askQuantity -= quantity;
+    }
+    if (nodePrevious[node] == none) {
+      levelHeads[level] = nodeNext[node];
+    } else {
+      nodeNext[nodePrevious[node]] = nodeNext[node];
+    }
+    if (nodeNext[node] == none) {
+      levelTails[level] = nodePrevious[node];
+    } else {
+      nodePrevious[nodeNext[node]] = nodePrevious[node];
+    }
+
+    if (nodeOwnerPrevious[node] == none) {
+      ownerHeads[ownerSlot(nodeOwners[node])] = nodeOwnerNext[node];
+    } else {
+      nodeOwnerNext[nodeOwnerPrevious[node]] = nodeOwnerNext[node];
+    }
+    if (nodeOwnerNext[node] != none) {
+      nodeOwnerPrevious[nodeOwnerNext[node]] = nodeOwnerPrevious[node];
+    }
+
+    if (levelHeads[level] == none) {
+      if (buy && level == bestBid) {
+        bestBid = nextBid(level);
+      } else if (!buy && level == bestAsk) {
+        bestAsk = nextAsk(level);
+      }
+    }
+    nodeQuantities[node] = 0;
+    nodeGenerations[node]++;
+    nodeNext[node] = freeNode;
+    freeNode = node;
+  }
+
+  // Levels between the best bid and ask are empty, so the next best is found by walking outwards
+  private int nextBid(int level) {
+    if (bidQuantity == 0) {
+      return none;
+    }
+    for (int next = level - 1; next >= 0; next--) {
+      if (levelHeads[next] != none) {
+        return next;
+      }
+    }
+    return none;
+  }
+
+  private int nextAsk(int level) {
+    if (askQuantity == 0) {
+      return none;
+    }
+    for (int next = level + 1; next < levelHeads.length; next++) {
+      if (levelHeads[next] != none) {
+        return next;
+      }
+    }
+    return none;
+  }
+
+  /******************* State of the book ******************/
+
+  public boolean hasBid() {
+    return bestBid != none;
+  }
+
+  public boolean hasAsk() {
+    return bestAsk != none;
+  }
+
+  // NaN when the side is empty
+  public double getBestBid() {
+    return bestBid == none ? Double.NaN : toPrice(bestBid);
+  }
+
+  public double getBestAsk() {
+    return bestAsk == none ? Double.NaN : toPrice(bestAsk);
+  }
+
+  public long getBidQuantity() {
+    return bidQuantity;
+  }
+
+  public long getAskQuantity() {
+    return askQuantity;
+  }
+
+  public long getQuantityAt(double price) {
+    int level = toTicks(price);
+    return level < levelQuantities.length ? levelQuantities[level] : 0;
+  }
+
+  // Price of the last fill, NaN before any
+  public double getLastPrice() {
+    return lastPrice;
+  }
+
+  // Volume filled by incoming buy and sell orders since the last reset
+  public long getTakerBuyVolume() {
+    return takerBuyVolume;
+  }
+
+  public long getTakerSellVolume() {
+    return takerSellVolume;
+  }
+
+  public void resetTakerVolumes() {
+    takerBuyVolume = 0;
+    takerSellVolume = 0;
+  }
+
+  /******************* Fills ******************/
+
+  public int getFills() {
+    return fills;
+  }
+
+  public long getFillOwner(int fill) {
+    return fillOwners[fill];
+  }
+
+  // Shares received, negative for a sale
+  public long getFillShares(int fill) {
+    return fillShares[fill];
+  }
+
+  // Cash received, negative for a purchase
+  public double getFillCash(int fill) {
+    return fillCash[fill];
+  }
+
+  public void clearFills() {
+    fills = 0;
+  }
+
+  private void addFill(long owner, long shares, double cash) {
+    if (fills == fillOwners.length) {
+      fillOwners = Arrays.copyOf(fillOwners, fills * 2);
+      fillShares = Arrays.copyOf(fillShares, fills * 2);
+      fillCash = Arrays.copyOf(fillCash, fills * 2);
+    }
+    fillOwners[fills] = owner;
+    fillShares[fills] = shares;
+    fillCash[fills] = cash;
+    fills++;
+  }
+
+  /******************* Storage ******************/
+
+  private int newNode() {
+    if (freeNode != none) {
+      int node = freeNode;
+      freeNode = nodeNext[node];
+      return node;
+    }
+    if (usedNodes == nodeQuantities.length) {
+      growNodes(usedNodes * 2);
+    }
+    return usedNodes++;
+  }
+
+  private void growNodes(int size) {
+    nodeQuantities = nodeQuantities == null ? new long[size] : Arrays.copyOf(nodeQuantities, size);
+    nodeOwners = nodeOwners == null ? new long[size] : Arrays.copyOf(nodeOwners, size);
+    nodeLevels = nodeLevels == null ? new int[size] : Arrays.copyOf(nodeLevels, size);
+    nodeBuys = nodeBuys == null ? new boolean[size] : Arrays.copyOf(nodeBuys, size);
+    nodeNext = nodeNext == null ? new int[size] : Arrays.copyOf(nodeNext, size);
+    nodePrevious = nodePrevious == null ? new int[size] : Arrays.copyOf(nodePrevious, size);
+    nodeOwnerNext = nodeOwnerNext == null ? new int[size] : Arrays.copyOf(nodeOwnerNext, size);
+    nodeOwnerPrevious =
+        nodeOwnerPrevious == null ? new int[size] : Arrays.copyOf(nodeOwnerPrevious, size);
+    nodeGenerations =
+        nodeGenerations == null ? new int[size] : Arrays.copyOf(nodeGenerations, size);
+  }
+
+  private void ensureLevel(int level) {
+    if (level < levelHeads.length) {
+      return;
+    }
+    int size = levelHeads.length;
+    while (size <= level) {
+      size *= 2;
+    }
+    int previous = levelHeads.length;
+    levelHeads = Arrays.copyOf(levelHeads, size);
+    levelTails = Arrays.copyOf(levelTails, size);
+    levelQuantities = Arrays.copyOf(levelQuantities, size);
+    Arrays.fill(levelHeads, previous, size, none);
+    Arrays.fill(levelTails, previous, size, none);
+  }
+
+  // Slot of the owner, or the empty slot where it would go
+  private int ownerSlot(long owner) {
+    int mask = ownerKeys.length - 1;
+    int slot = (int) mix(owner) & mask;
+    while (ownerUsed[slot] && ownerKeys[slot] != owner) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  // Keeps the map at most half full, returns the slot of the owner just added
+  private int growOwnersIfNeeded(int slot, long owner) {
+    if (owners * 2 <= ownerKeys.length) {
+      return slot;
+    }
+    long[] keys = ownerKeys;
+    int[] heads = ownerHeads;
+    boolean[] used = ownerUsed;
+    ownerKeys = new long[keys.length * 2];
+    ownerHeads = new int[keys.length * 2];
+    ownerUsed = new boolean[keys.length * 2];
+    for (int i = 0; i < keys.length; i++) {
+      if (used[i]) {
+        int newSlot = ownerSlot(keys[i]);
+        ownerUsed[newSlot] = true;
+        ownerKeys[newSlot] = keys[i];
+        ownerHeads[newSlot] = heads[i];
+      }
+    }
+    return ownerSlot(owner);
+  }
+
+  private static long mix(long z) {
+    z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+    return z ^ (z >>> 33);
+  }
+}
@@ -0,0 +1,31 @@
+package swarmModel.utils;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.LongAdder;
+
+/* Running totals of the buy and sell volume placed during a tick. Traders add their orders
+   directly and the exchange reads and resets the totals once per tick, so no order messages
+   are needed. The adders are striped across threads, so concurrent traders rarely contend.
+   Each order is truncated to a whole number of shares, as the exchange did with the messages. */
+public class OrderFlow implements Serializable {
+
+  private final LongAdder buyVolume = new LongAdder();
+  private final LongAdder sellVolume = new LongAdder();
+
+  public void addBuy(double volume) {
+    buyVolume.add((long) volume);
+  }
+
+  public void addSell(double volume) {
+    sellVolume.add((long) volume);
+  }
+
+  // Returns the buy volume placed since the last drain and resets it
+  public long drainBuys() {
+    return buyVolume.sumThenReset();
+  }
+
+  public long drainSells() {
+    return sellVolume.sumThenReset();
+  }
+}
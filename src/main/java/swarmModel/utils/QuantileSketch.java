@@ -0,0 +1,118 @@
+package swarmModel.utils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/* Mergeable sketch of the distribution of a stream of values, in the manner of KLL. Values go into
+   a buffer of capacity k at level 0. A full level is sorted and every other value moves up a level,
+   where it stands for twice as many values, starting with the first or the second in turns so the
+   ranks are not pushed one way. Below k values the quantiles are exact, beyond that the rank error
+   grows as log(n / k) / k while the memory stays at k values per level. */
+public class QuantileSketch implements Serializable {
+
+  private final int capacity;
+  private double[][] levels = new double[1][];
+  private int[] sizes = new int[1];
+  private long count = 0;
+  private long compactions = 0;
+
+  public QuantileSketch(int capacity) {
+    if (capacity < 2) {
+      throw new IllegalArgumentException("Sketch capacity must be at least 2");
+    }
+    this.capacity = capacity;
+  }
+
+  public void add(double value) {
+    append(0, value);
+    count++;
+    compact();
+  }
+
+  // Adds every value seen by the other sketch, which must have the same capacity
+  public void merge(QuantileSketch other) {
+    if (other.capacity != capacity) {
+      throw new IllegalArgumentException("Cannot merge sketches of different capacities");
+    }
+    for (int level = 0; level < other.levels.length; level++) {
+      for (int i = 0; i < other.sizes[level]; i++) {
+        append(level, other.levels[level][i]);
+      }
+    }
+    count += other.count;
+    compact();
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  // Smallest value whose rank is at least q times the count, NaN when empty
+  public double quantile(double q) {
+    int items = 0;
+    for (int size : sizes) {
+      items += size;
+    }
+    if (items == 0) {
+      return Double.NaN;
+    }
+    double[] values = new double[items];
+    int[] itemLevels = new int[items];
+    Integer[] order = new Integer[items];
+    int item = 0;
+    for (int level = 0; level < levels.length; level++) {
+      for (int i = 0; i < sizes[level]; i++, item++) {
+        values[item] = levels[level][i];
+        itemLevels[item] = level;
+        order[item] = item;
+      }
+    }
+    Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+    long rank = Math.max((long) Math.ceil(q * count), 1);
+    long weight = 0;
+    for (int i : order) {
+      weight += 1L << itemLevels[i];
+      if (weight >= rank) {
+        return values[i];
+      }
+    }
+    return values[order[items - 1]];
+  }
+
+  // A merged sketch can have empty levels, so the value may go more than one level up
+  private void append(int level, double value) {
+    if (level >= levels.length) {
+      levels = Arrays.copyOf(levels, level + 1);
+      sizes = Arrays.copyOf(sizes, level + 1);
+    }
+    double[] buffer = levels[level];
+    if (buffer == null) {
+      buffer = new double[Math.min(capacity, 8)];
+    } else if (sizes[level] == buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, sizes[level] + 1));
+    }
+    levels[level] = buffer;
+    buffer[sizes[level]++] = value;
+  }
+
+  private void compact() {
+    for (int level = 0; level < levels.length; level++) {
+      if (sizes[level] < capacity) {
+        continue;
+      }
+      double[] buffer = levels[level];
+      int size = sizes[level];
+      Arrays.sort(buffer, 0, size);
+      // With an odd number of values the largest one stays behind
+      int paired = size & ~1;
+      int offset = (int) (compactions++ & 1);
+      for (int i = offset; i < paired; i += 2) {
+        append(level + 1, buffer[i]);
+      }
+      if (paired < size) {
+        buffer[0] = buffer[size - 1];
+      }
+      sizes[level] = size - paired;
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package swarmModel.utils;
+
+/* Draws which of a run of agents act on a tick when each acts independently with the same
+   probability. Instead of one uniform per agent, the gap to the next active agent is drawn: the
+   number of inactive agents before it is geometric, floor(log(1 - u) / log(1 - p)) for a uniform
+   u, so drawing the active subset costs one uniform per active agent. */
+public final class RandomActivation {
+
+  private RandomActivation() {
+  }
+
+  // Number of agents skipped before the next active one, at most Integer.MAX_VALUE
+  public static int skip(double uniform, double probability) {
+    if (probability >= 1) {
+      return 0;
+    }
+    if (probability <= 0) {
+      return Integer.MAX_VALUE;
+    }
+    return (int) Math.min(Math.floor(Math.log(1 - uniform) / Math.log(1 - probability)),
+        Integer.MAX_VALUE);
+  }
+
+  /* Round of the day in which an agent acts when there are several, uniform over the rounds. It
+     is a function of the seed, the agent and the day alone, so it is the same whoever asks. */
+  public static long round(long runSeed, long agent, long day, long rounds) {
+    return (long) (RandomStream.uniform(runSeed, agent, day) * rounds);
+  }
+}
@@ -0,0 +1,125 @@
+package swarmModel.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+
+/* Stream of random numbers for one agent, drawn in blocks into primitive buffers so a draw is an
+   array read and nothing is allocated per draw. The generator is SplitMix64, the generator of
+   java.util.SplittableRandom, whose state is a single long, so a stream is cheap to create for
+   each agent, to copy and to save. Each stream is seeded from the run's seed, the agent's group
+   and its id, so what an agent draws depends on neither the other agents nor the threads. */
+public class RandomStream implements Serializable {
+
+  private static final long golden = 0x9E3779B97F4A7C15L;
+  private static final int blockSize = 32;
+
+  private long state;
+  private final double[] uniforms = new double[blockSize];
+  private int nextUniform = blockSize;
+  private double[] normals;
+  private int nextNormal = blockSize;
+
+  public RandomStream(long seed) {
+    this.state = seed;
+  }
+
+  public static RandomStream of(long runSeed, String group, long id) {
+    long groupSeed = mix(runSeed ^ mix(hash(group)));
+    return new RandomStream(mix(groupSeed + golden * (id + 1)));
+  }
+
+  // Uniform in [0, 1)
+  public double uniform() {
+    if (nextUniform == blockSize) {
+      for (int i = 0; i < blockSize; i++) {
+        uniforms[i] = (nextLong() >>> 11) * 0x1.0p-53;
+      }
+      nextUniform = 0;
+    }
+    return uniforms[nextUniform++];
+  }
+
+  public double uniform(double lower, double upper) {
+    return lower + (upper - lower) * uniform();
+  }
+
+  // Standard normal, drawn in pairs with the Box-Muller transform
+  public double normal() {
+    if (nextNormal == blockSize) {
+      if (normals == null) {
+        normals = new double[blockSize];
+      }
+      for (int i = 0; i < blockSize; i += 2) {
+        // 1 - u is in (0, 1], so the logarithm is finite
+        double radius = Math.sqrt(-2 * Math.log(1 - (nextLong() >>> 11) * 0x1.0p-53));
+        double angle = 2 * Math.PI * (nextLong() >>> 11) * 0x1.0p-53;
+        normals[i] = radius * Math.cos(angle);
+        normals[i + 1] = radius * Math.sin(angle);
+      }
+      nextNormal = 0;
+    }
+    return normals[nextNormal++];
+  }
+
+  public double normal(double mean, double standardDeviation) {
+    return mean + standardDeviation * normal();
+  }
+
+  // A uniform that only depends on the run's seed, an id and an index, without creating a stream
+  public static double uniform(long runSeed, long id, long index) {
+    long z = mix(mix(runSeed + golden * (id + 1)) + golden * (index + 1));
+    return (z >>> 11) * 0x1.0p-53;
+  }
+
+  // Only the draws not yet used are written, so the stream carries on where it was
+  public void writeTo(DataOutput out) throws IOException {
+    out.writeLong(state);
+    out.writeByte(nextUniform);
+    for (int i = nextUniform; i < blockSize; i++) {
+      out.writeDouble(uniforms[i]);
+    }
+    out.writeByte(nextNormal);
+    for (int i = nextNormal; i < blockSize; i++) {
+      out.writeDouble(normals[i]);
+    }
+  }
+
+  public static RandomStream readFrom(DataInput in) throws IOException {
+    RandomStream stream = new RandomStream(in.readLong());
+    stream.nextUniform = in.readByte();
+    for (int i = stream.nextUniform; i < blockSize; i++) {
+      stream.uniforms[i] = in.readDouble();
+    }
+    stream.nextNormal = in.readByte();
+    if (stream.nextNormal < blockSize) {
+      stream.normals = new double[blockSize];
+    }
+    for (int i = stream.nextNormal; i < blockSize; i++) {
+      stream.normals[i] = in.readDouble();
+    }
+    return stream;
+  }
+
+  private long nextLong() {
+    state += golden;
+    return mix(state);
+  }
+
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  // FNV-1a, unlike String.hashCode it spreads short names over all 64 bits
+  private static long hash(String group) {
+    long hash = 0xCBF29CE484222325L;
+    for (byte b : group.getBytes(StandardCharsets.UTF_8)) {
+      hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+    }
+    return hash;
+  }
+}
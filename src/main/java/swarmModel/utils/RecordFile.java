@@ -0,0 +1,167 @@
+package swarmModel.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.nio.file.StandardOpenOption;
+
+/* Append only file of fixed width records of little endian doubles, written through memory mapped
+   regions so an append is a few stores with no system call. The layout is meant to be read as is,
+   for instance by numpy with a structured dtype:
+
+     bytes 0-7    magic "SWMREC01"
+     bytes 8-11   int32, length of the header in bytes, where the records start
+     bytes 12-15  int32, number of columns
+     bytes 16-23  int64, number of records written so far
+     bytes 24-    column names in UTF-8 separated by '\n', padded with zeros to a multiple of 8
+
+   The record count is updated after each record, so a reader only sees whole records even while
+   the file is still being written. The file is cut to its records when closed. */
+public class RecordFile implements Closeable {
+
+  private static final byte[] magic = "SWMREC01".getBytes(StandardCharsets.US_ASCII);
+  private static final int countOffset = 16;
+  private static final long regionBytes = 8 << 20;
+
+  private final FileChannel channel;
+  private final int columns;
+  private final int recordBytes;
+  private final long headerBytes;
+  private final long recordsPerRegion;
+  private final MappedByteBuffer header;
+  private MappedByteBuffer region;
+  private long records = 0;
+
+  public RecordFile(Path path, String... columnNames) {
+    if (columnNames.length == 0) {
+      throw new IllegalArgumentException("A record file needs at least one column");
+    }
+    byte[] names = String.join("\n", columnNames).getBytes(StandardCharsets.UTF_8);
+    this.columns = columnNames.length;
+    this.recordBytes = Double.BYTES * columns;
+    this.headerBytes = (24 + names.length + 7) / 8 * 8;
+    this.recordsPerRegion = Math.max(regionBytes / recordBytes, 1);
+    try {
+      channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+      header = channel.map(MapMode.READ_WRITE, 0, headerBytes);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot open the record file " + path, e);
+    }
+    header.order(ByteOrder.LITTLE_ENDIAN);
+    header.put(magic).putInt((int) headerBytes).putInt(columns).putLong(0).put(names);
+  }
+
+  // Column names and records of a file, as read back by read
+  public static final class Contents {
+
+    public final String[] columns;
+    public final double[][] records;
+
+    private Contents(String[] columns, double[][] records) {
+      this.columns = columns;
+      this.records = records;
+    }
+
+    // Index of the named column, -1 if there is none
+    public int column(String name) {
+      return Arrays.asList(columns).indexOf(name);
+    }
+  }
+
+  // Reads the records counted in the header, so a file still being written can be read
+  public static Contents read(Path path) {
+    ByteBuffer bytes;
+    try {
+      bytes = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot read the record file " + path, e);
+    }
+    byte[] fileMagic = new byte[magic.length];
+    bytes.get(fileMagic);
+    if (!Arrays.equals(fileMagic, magic)) {
+      throw new IllegalArgumentException(path + " is not a record file");
+    }
+    int headerLength = bytes.getInt();
+    int columns = bytes.getInt();
+    long records = bytes.getLong();
+    byte[] names = new byte[headerLength - 24];
+    bytes.get(names);
+    String[] columnNames = new String(names, StandardCharsets.UTF_8).replace("\0", "")
+        .split("\n");
+    double[][] values = new double[(int) records][columns];
+    for (double[] record : values) {
+      for (int column = 0; column < columns; column++) {
+        record[column] = bytes.getDouble();
+      }
+    }
+    return new Contents(columnNames, values);
+  }
+
+  public int getColumns() {
+    return columns;
+  }
+
+  public synchronized long getRecords() {
+    return records;
+  }
+
+  public synchronized void append(double[] values) {
+    if (values.length != columns) {
+      throw new IllegalArgumentException(
+          "Expected " + columns + " values per record, got " + values.length);
+    }
+    if (region == null || region.remaining() < recordBytes) {
+      mapNextRegion();
+    }
+    for (double value : values) {
+      region.putDouble(value);
+    }
+    records++;
+    header.putLong(countOffset, records);
+  }
+
+  // Maps the next whole number of records after the last one, which grows the file as needed
+  private void mapNextRegion() {
+    try {
+      region = channel.map(MapMode.READ_WRITE, headerBytes + records * recordBytes,
+          recordsPerRegion * recordBytes);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot grow the record file", e);
+    }
+    region.order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  @Override
+  public synchronized void close() {
+    if (!channel.isOpen()) {
+      return;
+    }
+    try {
+      if (region != null) {
+        region.force();
+      }
+      header.force();
+      region = null;
+      /* Cutting the unused end of the last region can fail on systems which do not allow mapped
+         files to shrink, the record count in the header still tells where the records end. */
+      try {
+        channel.truncate(headerBytes + records * recordBytes);
+      } catch (IOException e) {
+        // The file is left at the size of its mapped regions
+      }
+      channel.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot close the record file", e);
+    }
+  }
+}
@@ -0,0 +1,172 @@
+package swarmModel.utils;
+
+import java.io.Serializable;
+
+/* Least squares polynomial fit over the last `window` consecutive ticks, updated one point at a
+   time. Points are fitted relative to the latest tick, so the sums of the powers of the offsets
+   only depend on how many points are held and are precomputed. The moment sums of the values are
+   summed again from the ring of values at each fit, (order + 1) times window multiply-adds, so no
+   rounding error is carried from one tick to the next, and the normal equations are solved
+   directly. This gives the least squares fit of the window without allocating per tick. */
+public class RollingPolynomialFit implements Serializable {
+
+  private final int order;
+  private final int window;
+
+  // Values in the window, indexed by tick modulo the window size
+  private final double[] values;
+  private int count = 0;
+  private long lastTick = 0;
+
+  // offsetPowerSums[n][k] is the sum of u^k over the offsets u = 0, -1, ..., -(n - 1)
+  private final double[][] offsetPowerSums;
+  // momentSums[k] is the sum of u^k * y over the points in the window, summed at each fit
+  private final double[] momentSums;
+  private final double[][] binomial;
+
+  private final double[][] normalEquations;
+  private final double[] localCoeffs;
+
+  public RollingPolynomialFit(int order, int window) {
+    if (order < 0 || window <= order) {
+      throw new IllegalArgumentException(
+          "A polynomial of order " + order + " cannot be fitted to " + window + " points");
+    }
+    this.order = order;
+    this.window = window;
+    this.values = new double[window];
+    this.momentSums = new double[order + 1];
+    this.normalEquations = new double[order + 1][order + 2];
+    this.localCoeffs = new double[order + 1];
+
+    this.binomial = new double[2 * order + 1][2 * order + 1];
+    for (int n = 0; n <= 2 * order; n++) {
+      binomial[n][0] = 1;
+      for (int k = 1; k <= n; k++) {
+        binomial[n][k] = binomial[n - 1][k - 1] + (k < n ? binomial[n - 1][k] : 0);
+      }
+    }
+
+    this.offsetPowerSums = new double[window + 1][2 * order + 1];
+    for (int n = 1; n <= window; n++) {
+      double offset = -(n - 1);
+      double power = 1;
+      for (int k = 0; k <= 2 * order; k++) {
+        offsetPowerSums[n][k] = offsetPowerSums[n - 1][k] + power;
+        power *= offset;
+      }
+    }
+  }
+
+  // Ticks are expected to be consecutive, any gap restarts the window
+  public void add(long tick, double value) {
+    if (count > 0 && tick == lastTick) {
+      // Replace the latest value
+      values[slot(tick)] = value;
+      return;
+    }
+    if (count > 0 && tick != lastTick + 1) {
+      clear();
+    }
+    // When the window is full the new value takes the slot of the oldest one
+    values[slot(tick)] = value;
+    count = Math.min(count + 1, window);
+    lastTick = tick;
+  }
+
+  public void clear() {
+    count = 0;
+  }
+
+  public boolean canFit() {
+    return count > order;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  public int getOrder() {
+    return order;
+  }
+
+  public int getWindow() {
+    return window;
+  }
+
+  /* Writes the coefficients of the fitted polynomial in the tick, lowest order first, into
+     `coeffs`. A new array is only allocated when the one given does not have order + 1 entries. */
+  public double[] fit(double[] coeffs) {
+    if (!canFit()) {
+      throw new IllegalStateException(
+          "Need at least " + (order + 1) + " points to fit, only have " + count);
+    }
+    double[] result = coeffs != null && coeffs.length == order + 1 ? coeffs : new double[order + 1];
+
+    for (int k = 0; k <= order; k++) {
+      momentSums[k] = 0;
+    }
+    for (int i = 0; i < count; i++) {
+      // The point i ticks before the latest sits at offset -i
+      double value = values[slot(lastTick - i)];
+      double power = 1;
+      for (int k = 0; k <= order; k++) {
+        momentSums[k] += power * value;
+        power *= -i;
+      }
+    }
+    for (int i = 0; i <= order; i++) {
+      for (int j = 0; j <= order; j++) {
+        normalEquations[i][j] = offsetPowerSums[count][i + j];
+      }
+      normalEquations[i][order + 1] = momentSums[i];
+    }
+    solve(normalEquations, localCoeffs);
+
+    // Expand sum of a_i * (t - lastTick)^i into powers of t
+    for (int j = 0; j <= order; j++) {
+      double coeff = 0;
+      double power = 1;
+      for (int i = j; i <= order; i++) {
+        coeff += localCoeffs[i] * binomial[i][j] * power;
+        power *= -lastTick;
+      }
+      result[j] = coeff;
+    }
+    return result;
+  }
+
+  // Gaussian elimination with partial pivoting on the augmented matrix
+  private static void solve(double[][] augmented, double[] solution) {
+    int n = solution.length;
+    for (int column = 0; column < n; column++) {
+      int pivot = column;
+      for (int row = column + 1; row < n; row++) {
+        if (Math.abs(augmented[row][column]) > Math.abs(augmented[pivot][column])) {
+          pivot = row;
+        }
+      }
+      double[] swap = augmented[column];
+      augmented[column] = augmented[pivot];
+      augmented[pivot] = swap;
+
+      for (int row = column + 1; row < n; row++) {
+        double factor = augmented[row][column] / augmented[column][column];
+        for (int k = column; k <= n; k++) {
+          augmented[row][k] -= factor * augmented[column][k];
+        }
+      }
+    }
+    for (int row = n - 1; row >= 0; row--) {
+      double value = augmented[row][n];
+      for (int k = row + 1; k < n; k++) {
+        value -= augmented[row][k] * solution[k];
+      }
+      solution[row] = value / augmented[row][row];
+    }
+  }
+
+  private int slot(long tick) {
+    return (int) Math.floorMod(tick, (long) window);
+  }
+}
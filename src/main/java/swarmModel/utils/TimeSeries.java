@@ -0,0 +1,154 @@
+package swarmModel.utils;
+
+import java.io.Serializable;
+
+/* Tick indexed series of doubles backed by a fixed size ring buffer. Alongside each value we keep
+   running prefix sums of the values, their squares and the number of ticks present, so any window
+   sum, mean or variance is a difference of two slots instead of a scan of the whole history.
+   Only the last `capacity` ticks are retained, windows reaching further back are clipped. */
+public class TimeSeries implements Serializable {
+
+  private final int capacity;
+  private final double[] values;
+  private final boolean[] present;
+  private final double[] prefixSum;
+  private final double[] prefixSumOfSquares;
+  private final long[] prefixCount;
+
+  // One slot more than the capacity is stored so the prefix before the oldest retained tick is kept
+  private long oldestStoredTick = 0;
+  private long lastTick = -1;
+
+  public TimeSeries(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Time series capacity must be positive");
+    }
+    this.capacity = capacity;
+    this.values = new double[capacity + 1];
+    this.present = new boolean[capacity + 1];
+    this.prefixSum = new double[capacity + 1];
+    this.prefixSumOfSquares = new double[capacity + 1];
+    this.prefixCount = new long[capacity + 1];
+  }
+
+  // Ticks must be appended in increasing order, putting the latest tick again overwrites it
+  public void put(long tick, double value) {
+    if (lastTick < oldestStoredTick || tick - lastTick > capacity) {
+      // Nothing stored yet, or the gap is wider than the buffer, so the prefix sums restart here
+      oldestStoredTick = tick;
+      lastTick = tick - 1;
+    } else if (tick < lastTick) {
+      throw new IllegalArgumentException(
+          "Cannot insert tick " + tick + " before latest tick " + lastTick);
+    } else if (tick == lastTick) {
+      lastTick--;
+    }
+
+    // Ticks skipped over are kept as gaps, they carry the prefix sums forward unchanged
+    for (long t = lastTick + 1; t < tick; t++) {
+      write(t, false, 0);
+    }
+    write(tick, true, value);
+    lastTick = tick;
+    oldestStoredTick = Math.max(oldestStoredTick, lastTick - capacity);
+  }
+
+  private void write(long tick, boolean isPresent, double value) {
+    int slot = slot(tick);
+    boolean hasPrevious = tick > oldestStoredTick;
+    int previous = slot(tick - 1);
+    double sum = hasPrevious ? prefixSum[previous] : 0;
+    double sumOfSquares = hasPrevious ? prefixSumOfSquares[previous] : 0;
+    long count = hasPrevious ? prefixCount[previous] : 0;
+
+    values[slot] = value;
+    present[slot] = isPresent;
+    if (isPresent) {
+      sum += value;
+      sumOfSquares += value * value;
+      count++;
+    }
+    prefixSum[slot] = sum;
+    prefixSumOfSquares[slot] = sumOfSquares;
+    prefixCount[slot] = count;
+  }
+
+  public boolean contains(long tick) {
+    return !isEmpty() && tick >= getFirstTick() && tick <= lastTick && present[slot(tick)];
+  }
+
+  // Returns NaN when the tick was never recorded or is no longer retained
+  public double get(long tick) {
+    return contains(tick) ? values[slot(tick)] : Double.NaN;
+  }
+
+  public double latest() {
+    return get(lastTick);
+  }
+
+  // Number of recorded values with fromTick <= tick <= toTick
+  public long count(long fromTick, long toTick) {
+    long from = Math.max(fromTick, getFirstTick());
+    long to = Math.min(toTick, lastTick);
+    if (isEmpty() || from > to) {
+      return 0;
+    }
+    long before = from > oldestStoredTick ? prefixCount[slot(from - 1)] : 0;
+    return prefixCount[slot(to)] - before;
+  }
+
+  public double sum(long fromTick, long toTick) {
+    return windowDifference(prefixSum, fromTick, toTick);
+  }
+
+  public double sumOfSquares(long fromTick, long toTick) {
+    return windowDifference(prefixSumOfSquares, fromTick, toTick);
+  }
+
+  public double mean(long fromTick, long toTick) {
+    long count = count(fromTick, toTick);
+    return count == 0 ? Double.NaN : sum(fromTick, toTick) / count;
+  }
+
+  // Population variance of the values in the window
+  public double variance(long fromTick, long toTick) {
+    long count = count(fromTick, toTick);
+    if (count == 0) {
+      return Double.NaN;
+    }
+    double mean = sum(fromTick, toTick) / count;
+    // Rounding in the prefix sums can leave a tiny negative remainder for flat windows
+    return Math.max(sumOfSquares(fromTick, toTick) / count - mean * mean, 0);
+  }
+
+  private double windowDifference(double[] prefix, long fromTick, long toTick) {
+    long from = Math.max(fromTick, getFirstTick());
+    long to = Math.min(toTick, lastTick);
+    if (isEmpty() || from > to) {
+      return 0;
+    }
+    double before = from > oldestStoredTick ? prefix[slot(from - 1)] : 0;
+    return prefix[slot(to)] - before;
+  }
+
+  public boolean isEmpty() {
+    return lastTick < oldestStoredTick;
+  }
+
+  // Oldest tick which can still be queried
+  public long getFirstTick() {
+    return Math.max(oldestStoredTick, lastTick - capacity + 1);
+  }
+
+  public long getLastTick() {
+    return lastTick;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  private int slot(long tick) {
+    return (int) Math.floorMod(tick, (long) capacity + 1);
+  }
+}
@@ -0,0 +1,73 @@
+package swarmModel.utils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/* Calendar queue of the ticks at which agents have something to do, such as an option expiring.
+   As in OptionBook, wake-ups are filed in a timing wheel by tick modulo the wheel size, so taking
+   those due on a tick only looks at that tick's bucket, whatever the number of agents waiting.
+   Wake-ups more than a turn of the wheel away stay in their bucket until their own tick comes
+   round. Agents are kept as long keys in primitive arrays, ids in the agent model and indices in
+   the kernel. drainDue must be called for every tick in turn, or wake-ups are missed. The agents
+   drained go into a buffer reused from tick to tick, so draining allocates nothing once the buffer
+   has grown to the most wake-ups on a tick. */
+public class WakeUpCalendar implements Serializable {
+
+  private static final int wheelSize = 64;
+
+  private final long[][] ticks = new long[wheelSize][];
+  private final long[][] agents = new long[wheelSize][];
+  private final int[] sizes = new int[wheelSize];
+  private int size = 0;
+  private long[] due = new long[16];
+
+  public synchronized void schedule(long tick, long agent) {
+    int slot = (int) (tick & (wheelSize - 1));
+    int bucketSize = sizes[slot];
+    if (ticks[slot] == null) {
+      ticks[slot] = new long[16];
+      agents[slot] = new long[16];
+    } else if (bucketSize == ticks[slot].length) {
+      ticks[slot] = Arrays.copyOf(ticks[slot], bucketSize * 2);
+      agents[slot] = Arrays.copyOf(agents[slot], bucketSize * 2);
+    }
+    ticks[slot][bucketSize] = tick;
+    agents[slot][bucketSize] = agent;
+    sizes[slot]++;
+    size++;
+  }
+
+  // Removes the agents woken up on the tick and returns how many there are, see getDue
+  public synchronized int drainDue(long tick) {
+    int slot = (int) (tick & (wheelSize - 1));
+    int bucketSize = sizes[slot];
+    long[] bucketTicks = ticks[slot];
+    long[] bucketAgents = agents[slot];
+    if (due.length < bucketSize) {
+      due = new long[Math.max(bucketSize, due.length * 2)];
+    }
+    int nbDue = 0;
+    int kept = 0;
+    for (int i = 0; i < bucketSize; i++) {
+      if (bucketTicks[i] <= tick) {
+        due[nbDue++] = bucketAgents[i];
+      } else {
+        bucketTicks[kept] = bucketTicks[i];
+        bucketAgents[kept++] = bucketAgents[i];
+      }
+    }
+    sizes[slot] = kept;
+    size -= nbDue;
+    return nbDue;
+  }
+
+  /* The agents of the last drainDue come first, in the order they were scheduled. The buffer is
+     overwritten by the next drainDue. */
+  public synchronized long[] getDue() {
+    return due;
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+}
@@ -0,0 +1,160 @@
+package swarmModel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import swarmModel.utils.MarketWealth;
+
+public class CheckpointTest {
+
+  private static final double tolerance = 1e-9;
+  private static final long agentId = 7;
+  private static final long checkpointTick = 41;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path file;
+
+  /* Holdings written and read as BaseTrader does, backing the initial holdings out of the totals
+     of its type and adding the restored ones */
+  private static final class Holder implements Checkpoint.AgentState {
+
+    final MarketWealth wealth;
+    double shares;
+    double capital;
+    double capitalIndex;
+
+    Holder(MarketWealth wealth, double shares, double capital, double capitalIndex) {
+      this.wealth = wealth;
+      this.shares = shares;
+      this.capital = capital;
+      this.capitalIndex = capitalIndex;
+      wealth.addHoldings(0, shares, capital, capitalIndex);
+    }
+
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+      out.writeDouble(shares);
+      out.writeDouble(capital);
+      out.writeDouble(capitalIndex);
+    }
+
+    @Override
+    public void readState(DataInput in) throws IOException {
+      wealth.addHoldings(0, -shares, -capital, capitalIndex);
+      shares = in.readDouble();
+      capital = in.readDouble();
+      capitalIndex = in.readDouble();
+      wealth.addHoldings(0, shares, capital, capitalIndex);
+    }
+  }
+
+  @Before
+  public void saveCheckpoint() throws IOException {
+    file = folder.getRoot().toPath().resolve("run.checkpoint");
+    System.setProperty(Checkpoint.saveProperty, file.toString());
+    System.setProperty(Checkpoint.tickProperty, String.valueOf(checkpointTick));
+    RunSummary.reset();
+    Globals globals = new Globals();
+    Checkpoint.setup(globals);
+    assertEquals(checkpointTick, Checkpoint.getSaveTick());
+
+    // What the run changed by the checkpoint, inputs among them
+    globals.marketPrice = 17.5;
+    globals.interestRate = 0.05;
+    globals.streamSeed = 99;
+    RunSummary.current().record(15, 0.028);
+    RunSummary.current().record(17.5, 0.05);
+    Checkpoint.save(agentId, new Holder(new MarketWealth(1), 3, 1000, 1.2));
+    Checkpoint.write(checkpointTick, globals);
+
+    System.clearProperty(Checkpoint.saveProperty);
+    System.clearProperty(Checkpoint.tickProperty);
+    System.setProperty(Checkpoint.restoreProperty, file.toString());
+    RunSummary.reset();
+  }
+
+  @After
+  public void clearProperties() {
+    System.clearProperty(Checkpoint.saveProperty);
+    System.clearProperty(Checkpoint.tickProperty);
+    System.clearProperty(Checkpoint.restoreProperty);
+    System.clearProperty(Checkpoint.reseedProperty);
+    RunSummary.reset();
+  }
+
+  @Test
+  public void restoresTheStateAndKeepsChangedInputs() throws IOException {
+    Globals globals = new Globals();
+    globals.interestRate = 0.04;
+    globals.streamSeed = 5;
+    MarketWealth wealth = new MarketWealth(1);
+    globals.marketWealth = wealth;
+    Checkpoint.setup(globals);
+
+    assertTrue(Checkpoint.isRestoring());
+    assertFalse(Checkpoint.isReseeded());
+    assertEquals(-1, Checkpoint.getSaveTick());
+    // Given a value other than the checkpointed run's, the input keeps it
+    assertEquals(0.04, globals.interestRate, 0);
+    // Left as the checkpointed run started, the input carries on from the checkpoint
+    assertEquals(17.5, globals.marketPrice, 0);
+    assertEquals(99, globals.streamSeed);
+    assertEquals(checkpointTick + 1, globals.firstTick);
+    assertEquals(wealth, globals.marketWealth);
+    assertEquals("17.5", RunSummary.current().values().get("finalPrice"));
+
+    Holder holder = new Holder(wealth, 0, 10000, 1);
+    Checkpoint.restore(agentId, holder);
+    assertEquals(3, holder.shares, 0);
+    assertEquals(1000, holder.capital, 0);
+    assertEquals(1.2, holder.capitalIndex, 0);
+    assertEquals(3, wealth.getShares(0), tolerance);
+    assertEquals(1000, wealth.getCapital(0, 1.2), tolerance);
+    Checkpoint.restored();
+    assertFalse(Checkpoint.isRestoring());
+  }
+
+  @Test
+  public void reseededRunKeepsItsOwnSeed() {
+    System.setProperty(Checkpoint.reseedProperty, "true");
+    Globals globals = new Globals();
+    globals.streamSeed = 5;
+    Checkpoint.setup(globals);
+    assertTrue(Checkpoint.isReseeded());
+    assertEquals(5, globals.streamSeed);
+    assertEquals(17.5, globals.marketPrice, 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void changedConstantIsRejected() {
+    Globals globals = new Globals();
+    globals.nbNoiseTraders += 1;
+    Checkpoint.setup(globals);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void agentNotInTheCheckpointIsRejected() {
+    Globals globals = new Globals();
+    globals.marketWealth = new MarketWealth(1);
+    Checkpoint.setup(globals);
+    Checkpoint.restore(agentId + 1, new Holder(globals.marketWealth, 0, 0, 1));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void agentsLeftOverAreReported() {
+    Checkpoint.setup(new Globals());
+    Checkpoint.restored();
+  }
+}
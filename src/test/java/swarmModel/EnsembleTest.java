@@ -0,0 +1,144 @@
+package swarmModel;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import swarmModel.utils.RecordFile;
+
+public class EnsembleTest {
+
+  private static final int ticks = 12;
+  private static final double tolerance = 1e-9;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  // Ensembles of the runs split three ways and merged give the rows of a single pass over the runs
+  @Test
+  public void mergedEnsemblesMatchASinglePass() throws IOException {
+    Random random = new Random(11);
+    Ensemble single = new Ensemble("price", "buys");
+    Ensemble[] parts = {new Ensemble("price", "buys"), new Ensemble("price", "buys"),
+        new Ensemble("price", "buys")};
+    for (int run = 0; run < 60; run++) {
+      RecordFile.Contents aggregates = run(random, run);
+      single.addRun(aggregates);
+      parts[run % parts.length].addRun(aggregates);
+    }
+    Ensemble merged = new Ensemble("price", "buys");
+    for (Ensemble part : parts) {
+      merged.merge(part);
+    }
+    assertEquals(single.getRuns(), merged.getRuns());
+
+    List<String[]> expected = rows(single);
+    List<String[]> actual = rows(merged);
+    assertEquals(expected.size(), actual.size());
+    for (int row = 0; row < expected.size(); row++) {
+      String[] expectedRow = expected.get(row);
+      String[] actualRow = actual.get(row);
+      String label = String.join(",", expectedRow);
+      assertEquals(label, Arrays.asList(expectedRow).subList(0, 3),
+          Arrays.asList(actualRow).subList(0, 3));
+      for (int column = 3; column < expectedRow.length; column++) {
+        assertEquals(label, Double.parseDouble(expectedRow[column]),
+            Double.parseDouble(actualRow[column]), tolerance);
+      }
+    }
+  }
+
+  // Runs of different lengths and missing values, checked against statistics of the raw values
+  @Test
+  public void rowsMatchDirectStatistics() throws IOException {
+    Random random = new Random(12);
+    Ensemble ensemble = new Ensemble("price");
+    List<List<Double>> values = new ArrayList<>();
+    for (int tick = 0; tick < ticks; tick++) {
+      values.add(new ArrayList<>());
+    }
+    for (int run = 0; run < 40; run++) {
+      RecordFile.Contents aggregates = run(random, run);
+      ensemble.addRun(aggregates);
+      for (double[] record : aggregates.records) {
+        if (!Double.isNaN(record[1])) {
+          values.get((int) record[0]).add(record[1]);
+        }
+      }
+    }
+    assertEquals(40, ensemble.getRuns());
+
+    List<String[]> rows = rows(ensemble);
+    int row = 0;
+    for (int tick = 0; tick < ticks; tick++) {
+      List<Double> tickValues = values.get(tick);
+      if (tickValues.isEmpty()) {
+        continue;
+      }
+      String[] fields = rows.get(row++);
+      double[] sorted = tickValues.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+      double mean = Arrays.stream(sorted).average().getAsDouble();
+      double squares = Arrays.stream(sorted).map(value -> (value - mean) * (value - mean)).sum();
+      assertEquals(String.valueOf(tick), fields[0]);
+      assertEquals("price", fields[1]);
+      assertEquals(sorted.length, Long.parseLong(fields[2]));
+      assertEquals(mean, Double.parseDouble(fields[3]), tolerance);
+      assertEquals(sorted.length > 1 ? Math.sqrt(squares / (sorted.length - 1)) : 0,
+          Double.parseDouble(fields[4]), tolerance);
+      // Fewer runs than the sketch capacity, so the quantiles are exact
+      for (int quantile = 0; quantile < Ensemble.quantiles.length; quantile++) {
+        int rank = Math.max((int) Math.ceil(Ensemble.quantiles[quantile] * sorted.length), 1);
+        assertEquals(sorted[rank - 1], Double.parseDouble(fields[5 + quantile]), 0);
+      }
+    }
+    assertEquals(rows.size(), row);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void cannotMergeDifferentColumns() {
+    new Ensemble("price").merge(new Ensemble("buys"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void missingColumnIsRejected() throws IOException {
+    new Ensemble("shorts").addRun(run(new Random(13), 0));
+  }
+
+  // Aggregates of one run, some runs stopping early and some prices missing
+  private RecordFile.Contents run(Random random, int run) throws IOException {
+    Path path = folder.getRoot().toPath().resolve("run" + run + ".rec");
+    int runTicks = ticks - random.nextInt(4);
+    try (RecordFile file = new RecordFile(path, "tick", "price", "buys")) {
+      double price = 15;
+      for (int tick = 0; tick < runTicks; tick++) {
+        price += random.nextGaussian();
+        double recorded = random.nextDouble() < 0.1 ? Double.NaN : price;
+        file.append(new double[]{tick, recorded, random.nextInt(100)});
+      }
+    }
+    return RecordFile.read(path);
+  }
+
+  private static List<String[]> rows(Ensemble ensemble) throws IOException {
+    StringWriter text = new StringWriter();
+    try (BufferedWriter writer = new BufferedWriter(text)) {
+      ensemble.writeRows(writer, "");
+    }
+    List<String[]> rows = new ArrayList<>();
+    for (String line : text.toString().split("\\R")) {
+      if (!line.isEmpty()) {
+        rows.add(line.split(","));
+      }
+    }
+    return rows;
+  }
+}
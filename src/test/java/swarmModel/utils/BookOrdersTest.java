@@ -0,0 +1,97 @@
+package swarmModel.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+public class BookOrdersTest {
+
+  private static final double tolerance = 1e-9;
+
+  // Orders of a tick match as if placed together, limit orders before market orders
+  @Test
+  public void limitOrdersMatchBeforeMarketOrders() {
+    OrderBook book = new OrderBook(0.01);
+    BookOrders orders = new BookOrders();
+    orders.market(1, true, 5.9);
+    orders.limit(2, false, 8, 10);
+    orders.limit(3, false, 0.5, 9);
+    assertEquals(2, orders.match(book, 0));
+    assertArrayEquals(new double[]{5, -50}, orders.settlement(1), tolerance);
+    assertArrayEquals(new double[]{-5, 50}, orders.settlement(2), tolerance);
+    assertNull(orders.settlement(3));
+    assertEquals(3, book.getAskQuantity());
+    assertEquals(5, book.getTakerBuyVolume());
+  }
+
+  // Cancellations go first, so they only take out orders of earlier ticks
+  @Test
+  public void cancellationsMatchFirst() {
+    OrderBook book = new OrderBook(0.01);
+    BookOrders orders = new BookOrders();
+    orders.limit(1, true, 4, 9.5);
+    orders.match(book, 0);
+    orders.limit(1, true, 2, 9.6);
+    orders.cancelAll(1);
+    orders.market(2, false, 10);
+    assertEquals(3, orders.match(book, 1));
+    assertArrayEquals(new double[]{2, -2 * 9.6}, orders.settlement(1), tolerance);
+    assertArrayEquals(new double[]{-2, 2 * 9.6}, orders.settlement(2), tolerance);
+    assertEquals(0, book.getBidQuantity());
+  }
+
+  /* Traders placing their orders from every core get the same fills as placing them one after
+     the other, tick after tick */
+  @Test
+  public void matchingDoesNotDependOnThreads() {
+    Random random = new Random(17);
+    int owners = 20000;
+    OrderBook sequentialBook = new OrderBook(0.01);
+    OrderBook concurrentBook = new OrderBook(0.01);
+    BookOrders sequential = new BookOrders();
+    BookOrders concurrent = new BookOrders();
+    for (long tick = 0; tick < 5; tick++) {
+      double[][] placed = new double[owners][];
+      for (int owner = 0; owner < owners; owner++) {
+        placed[owner] = new double[]{random.nextInt(4), random.nextInt(2),
+            1 + random.nextInt(20), 9.5 + random.nextInt(100) * 0.01};
+      }
+      for (int owner = 0; owner < owners; owner++) {
+        place(sequential, owner, placed[owner]);
+      }
+      IntStream.range(0, owners).parallel()
+          .forEach(owner -> place(concurrent, owner, placed[owner]));
+      assertEquals(sequential.match(sequentialBook, tick), concurrent.match(concurrentBook, tick));
+      for (int owner = 0; owner < owners; owner++) {
+        assertArrayEquals("tick " + tick + " owner " + owner, sequential.settlement(owner),
+            concurrent.settlement(owner), 0);
+      }
+      assertEquals(sequentialBook.getLastPrice(), concurrentBook.getLastPrice(), 0);
+      assertEquals(sequentialBook.getBidQuantity(), concurrentBook.getBidQuantity());
+      assertEquals(sequentialBook.getAskQuantity(), concurrentBook.getAskQuantity());
+    }
+  }
+
+  // A cancellation, a limit order, a market order, or a limit order followed by a market order
+  private static void place(BookOrders orders, long owner, double[] order) {
+    boolean buy = order[1] == 1;
+    switch ((int) order[0]) {
+      case 0:
+        orders.cancelAll(owner);
+        break;
+      case 1:
+        orders.limit(owner, buy, order[2], order[3]);
+        break;
+      case 2:
+        orders.market(owner, buy, order[2]);
+        break;
+      default:
+        orders.limit(owner, buy, order[2], order[3]);
+        orders.market(owner, !buy, order[2] / 2);
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package swarmModel.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+public class LendingPoolTest {
+
+  private static final double tolerance = 1e-9;
+
+  @Test
+  public void requestsWithinTheCapitalAreLentInFull() {
+    LendingPool pool = new LendingPool(1000);
+    pool.request(300);
+    pool.request(200.25);
+    pool.request(0);
+    assertEquals(2, pool.clear());
+    assertEquals(1, pool.getLentFraction(), 0);
+    assertEquals(499.75, pool.getCapitalToLend(), tolerance);
+    assertEquals(500.25, pool.getMoneyLent(), tolerance);
+    assertTrue(pool.isLending());
+  }
+
+  // Asked for more than it has, the pool lends everything and each request gets the same fraction
+  @Test
+  public void requestsBeyondTheCapitalAreLentProRata() {
+    LendingPool pool = new LendingPool(1000);
+    pool.request(1500);
+    pool.request(500);
+    assertEquals(2, pool.clear());
+    assertEquals(0.5, pool.getLentFraction(), tolerance);
+    assertEquals(0, pool.getCapitalToLend(), 0);
+    assertEquals(1000, pool.getMoneyLent(), tolerance);
+    assertTrue(pool.isLending());
+
+    // Out of capital, the pool stops lending until something is paid back
+    pool.request(100);
+    assertEquals(1, pool.clear());
+    assertFalse(pool.isLending());
+    assertEquals(0, pool.getLentFraction(), 0);
+    pool.repay(200, 10);
+    pool.request(420);
+    pool.clear();
+    assertTrue(pool.isLending());
+    assertEquals(0.5, pool.getLentFraction(), tolerance);
+    assertEquals(10, pool.getProfitFromInterest(), tolerance);
+    assertEquals(1000 - 200 + 210, pool.getMoneyLent(), tolerance);
+  }
+
+  // Requests and repayments added from every core clear the same as added one by one
+  @Test
+  public void concurrentRequestsClearLikeSequentialOnes() {
+    Random random = new Random(3);
+    double[] amounts = random.doubles(100000, 0, 50).toArray();
+    LendingPool sequential = new LendingPool(1e6);
+    LendingPool concurrent = new LendingPool(1e6);
+    for (int tick = 0; tick < 3; tick++) {
+      for (double amount : amounts) {
+        sequential.request(amount);
+        sequential.repay(amount / 10, amount / 100);
+      }
+      IntStream.range(0, amounts.length).parallel().forEach(i -> {
+        concurrent.request(amounts[i]);
+        concurrent.repay(amounts[i] / 10, amounts[i] / 100);
+      });
+      assertEquals(sequential.clear(), concurrent.clear());
+      assertEquals(sequential.getLentFraction(), concurrent.getLentFraction(), 0);
+      assertEquals(sequential.getCapitalToLend(), concurrent.getCapitalToLend(), 0);
+      assertEquals(sequential.getMoneyLent(), concurrent.getMoneyLent(), 0);
+      assertEquals(sequential.getProfitFromInterest(), concurrent.getProfitFromInterest(), 0);
+    }
+    assertTrue(sequential.getLentFraction() < 1);
+  }
+}
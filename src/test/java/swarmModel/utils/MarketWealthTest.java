@@ -0,0 +1,91 @@
+package swarmModel.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+public class MarketWealthTest {
+
+  private static final double tolerance = 1e-6;
+
+  /* Traders settling their capital at different interest indices and trading from every core,
+     checked each tick against the sum of their own portfolios */
+  @Test
+  public void wealthMatchesTheSumOfThePortfolios() {
+    Random random = new Random(21);
+    int traders = 5000;
+    int[] types = new int[traders];
+    double[] shares = new double[traders];
+    double[] capital = new double[traders];
+    double[] indices = new double[traders];
+    MarketWealth wealth = new MarketWealth(3);
+    double index = 1;
+    for (int trader = 0; trader < traders; trader++) {
+      types[trader] = random.nextInt(3);
+      shares[trader] = random.nextInt(10);
+      capital[trader] = 1000 * random.nextDouble();
+      indices[trader] = index;
+      wealth.addTrader(types[trader]);
+      wealth.addHoldings(types[trader], shares[trader], capital[trader], index);
+    }
+
+    for (long tick = 0; tick < 20; tick++) {
+      double tickIndex = index *= 1.001;
+      double[] volumes = new double[traders];
+      double price = 10 + random.nextDouble();
+      for (int trader = 0; trader < traders; trader++) {
+        volumes[trader] = random.nextDouble() < 0.3 ? random.nextInt(7) - 3 : 0;
+      }
+      /* A trader settles its interest when it trades, which leaves the totals as they are since
+         they grow with the index, then pays for what it bought */
+      IntStream.range(0, traders).parallel().filter(trader -> volumes[trader] != 0)
+          .forEach(trader -> {
+            wealth.addCapital(types[trader], -volumes[trader] * price, tickIndex);
+            wealth.addShares(types[trader], volumes[trader]);
+          });
+      for (int trader = 0; trader < traders; trader++) {
+        if (volumes[trader] != 0) {
+          capital[trader] *= tickIndex / indices[trader];
+          indices[trader] = tickIndex;
+          capital[trader] -= volumes[trader] * price;
+          shares[trader] += volumes[trader];
+        }
+      }
+
+      double[] expected = new double[3];
+      long[] counts = new long[3];
+      for (int trader = 0; trader < traders; trader++) {
+        expected[types[trader]] +=
+            shares[trader] * price + capital[trader] * tickIndex / indices[trader];
+        counts[types[trader]]++;
+      }
+      for (int type = 0; type < 3; type++) {
+        assertEquals(counts[type], wealth.getTraders(type));
+        assertEquals("tick " + tick, expected[type], wealth.getWealth(type, price, 1, tickIndex),
+            tolerance * Math.abs(expected[type]));
+      }
+    }
+  }
+
+  // Options written count against the writer until they expire
+  @Test
+  public void optionsAreValuedUntilTheyExpire() {
+    MarketWealth wealth = new MarketWealth(2);
+    wealth.addOption(0, true, 10, 3, 1);
+    wealth.addOption(0, false, 12, 40, 2);
+    OptionSeriesBook written = new OptionSeriesBook(0.01);
+    written.add(true, 10, 3, 1);
+    written.add(false, 12, 40, 2);
+    wealth.addOptions(1, written, -1);
+
+    assertEquals((11 - 10 + 2 * (12 - 11)) * 100, wealth.getOptionValue(0, 11, 100), 1e-9);
+    assertEquals(-(11 - 10 + 2 * (12 - 11)) * 100, wealth.getOptionValue(1, 11, 100), 1e-9);
+    wealth.expire(3);
+    assertEquals(2 * (12 - 11) * 100, wealth.getOptionValue(0, 11, 100), 1e-9);
+    assertEquals(-2 * (12 - 11) * 100, wealth.getWealth(1, 11, 100, 1), 1e-9);
+    wealth.expire(40);
+    assertEquals(0, wealth.getWealth(0, 11, 100, 1), 0);
+  }
+}
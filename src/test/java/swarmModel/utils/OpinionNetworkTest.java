@@ -0,0 +1,125 @@
+package swarmModel.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+public class OpinionNetworkTest {
+
+  private static final double tolerance = 1e-12;
+
+  @Test
+  public void duplicateLinksCountTwice() {
+    OpinionNetwork network = new OpinionNetwork();
+    network.register(1, 3, 3);
+    network.register(2, 3);
+    network.build();
+    assertEquals(3, network.getNodes());
+    assertEquals(3, network.getLinks());
+    network.share(1, 4);
+    network.share(2, 1);
+    network.propagate();
+    assertEquals(3, network.meanOpinion(3), tolerance);
+  }
+
+  @Test
+  public void onlyOpinionsSharedSinceTheLastPassAreAveraged() {
+    OpinionNetwork network = new OpinionNetwork();
+    network.register(1, 3);
+    network.register(2, 3);
+    network.build();
+    network.share(1, 4);
+    network.propagate();
+    assertEquals(4, network.meanOpinion(3), tolerance);
+    network.propagate();
+    assertEquals(0, network.meanOpinion(3), tolerance);
+    // Senders receive nothing and agents outside the network have no mean
+    assertEquals(0, network.meanOpinion(1), tolerance);
+    assertEquals(0, network.meanOpinion(42), tolerance);
+    network.share(42, 1);
+  }
+
+  // Ids too far apart for a table are found by binary search
+  @Test
+  public void idsFarApartAreFound() {
+    OpinionNetwork network = new OpinionNetwork();
+    network.register(1L << 40, 5, -3);
+    network.register(5, -3);
+    network.build();
+    network.share(1L << 40, 2);
+    network.share(5, 4);
+    network.propagate();
+    assertEquals(2, network.meanOpinion(5), tolerance);
+    assertEquals(3, network.meanOpinion(-3), tolerance);
+    assertEquals(0, network.meanOpinion(6), tolerance);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void cannotRegisterOnceBuilt() {
+    OpinionNetwork network = new OpinionNetwork();
+    network.register(1, 2);
+    network.build();
+    assertTrue(network.isBuilt());
+    network.register(2, 1);
+  }
+
+  // Random links, with duplicates and agents linked both ways, checked against messages summed
+  @Test
+  public void matchesMessagesAlongEveryLink() {
+    checkAgainstMessages(new Random(8), 300, 5);
+  }
+
+  // Enough receivers for the pass to run on all cores
+  @Test
+  public void matchesMessagesWhenAveragedInParallel() {
+    checkAgainstMessages(new Random(9), 70000, 3);
+  }
+
+  private static void checkAgainstMessages(Random random, int agents, int maxLinks) {
+    OpinionNetwork network = new OpinionNetwork();
+    Map<Long, long[]> links = new HashMap<>();
+    for (long sender = 0; sender < agents; sender++) {
+      if (random.nextDouble() < 0.8) {
+        long[] receivers = new long[random.nextInt(maxLinks + 1)];
+        for (int i = 0; i < receivers.length; i++) {
+          receivers[i] = 1000 + random.nextInt(agents);
+        }
+        // Ids start away from zero, so node indices and ids differ
+        links.put(1000 + sender, receivers);
+        network.register(1000 + sender, receivers);
+      }
+    }
+    network.build();
+
+    for (int tick = 0; tick < 3; tick++) {
+      Map<Long, Double> opinions = new HashMap<>();
+      for (long sender : links.keySet()) {
+        if (random.nextDouble() < 0.7) {
+          double opinion = random.nextGaussian();
+          opinions.put(sender, opinion);
+          network.share(sender, opinion);
+        }
+      }
+      network.propagate();
+
+      Map<Long, List<Double>> received = new HashMap<>();
+      for (Map.Entry<Long, Double> opinion : opinions.entrySet()) {
+        for (long receiver : links.get(opinion.getKey())) {
+          received.computeIfAbsent(receiver, id -> new ArrayList<>()).add(opinion.getValue());
+        }
+      }
+      for (long agent = 1000; agent < 1000 + agents; agent++) {
+        List<Double> messages = received.get(agent);
+        double expected = messages == null ? 0
+            : messages.stream().mapToDouble(Double::doubleValue).average().getAsDouble();
+        assertEquals("agent " + agent, expected, network.meanOpinion(agent), 1e-9);
+      }
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package swarmModel.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+public class OptionBookTest {
+
+  // Expiries up to several turns of the wheel away, polled on every tick against a plain list
+  @Test
+  public void pollsEachOptionOnItsExpiryTick() {
+    Random random = new Random(4);
+    OptionBook book = new OptionBook();
+    List<Option> held = new ArrayList<>();
+    for (long tick = 0; tick < 1000; tick++) {
+      for (int i = random.nextInt(4); i > 0; i--) {
+        Option option = new Option(tick + 1 + random.nextInt(100), 10 + random.nextInt(10),
+            random.nextBoolean() ? Option.type.CALL : Option.type.PUT, 15);
+        book.add(option);
+        held.add(option);
+      }
+      Set<Option> expected = new HashSet<>();
+      for (Option option : held) {
+        if (option.getExpiryTick() == tick) {
+          expected.add(option);
+        }
+      }
+      Set<Option> polled = new HashSet<>();
+      long version = book.getVersion();
+      Option option;
+      while ((option = book.pollExpired(tick)) != null) {
+        assertTrue(polled.add(option));
+      }
+      assertEquals("tick " + tick, expected, polled);
+      assertEquals(version + polled.size(), book.getVersion());
+      held.removeAll(polled);
+      assertEquals(held.size(), book.size());
+    }
+  }
+
+  @Test
+  public void optionsBeyondOneTurnWaitForTheirTick() {
+    OptionBook book = new OptionBook();
+    Option near = new Option(5, 10, Option.type.CALL, 15);
+    Option far = new Option(5 + 32, 10, Option.type.PUT, 15);
+    book.add(far);
+    book.add(near);
+    assertEquals(near, book.pollExpired(5));
+    assertNull(book.pollExpired(5));
+    assertEquals(1, book.size());
+    assertEquals(far, book.pollExpired(37));
+    assertTrue(book.isEmpty());
+  }
+
+  @Test
+  public void readBackBookIteratesInTheSameOrder() throws IOException {
+    Random random = new Random(6);
+    OptionBook book = new OptionBook();
+    for (int i = 0; i < 200; i++) {
+      Option option = new Option(random.nextInt(100), 10 + random.nextDouble(),
+          random.nextBoolean() ? Option.type.CALL : Option.type.PUT, 15);
+      option.setOptionPrice(random.nextDouble());
+      book.add(option);
+    }
+    book.pollExpired(7);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    book.writeTo(new DataOutputStream(bytes));
+    OptionBook read = OptionBook
+        .readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(book.size(), read.size());
+    assertEquals(book.getVersion(), read.getVersion());
+    List<Option> options = new ArrayList<>();
+    book.forEach(options::add);
+    int i = 0;
+    for (Option option : read) {
+      Option original = options.get(i++);
+      assertNotEquals(original, option);
+      assertEquals(original.getExpiryTick(), option.getExpiryTick());
+      assertEquals(original.getExercisePrice(), option.getExercisePrice(), 0);
+      assertEquals(original.isCallOption(), option.isCallOption());
+      assertEquals(original.getOptionPrice(), option.getOptionPrice(), 0);
+    }
+    assertEquals(options.size(), i);
+  }
+}
@@ -0,0 +1,42 @@
+package swarmModel.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class OptionPricerTest {
+
+  // Textbook case: S = 100, K = 100, one year, r = 5%, sigma = 20%
+  @Test
+  public void matchesKnownBlackScholesPrices() {
+    assertEquals(10.4506, OptionPricer.computePrice(true, 100, 100, 365, 0.05, 0.2, 1), 1e-4);
+    assertEquals(5.5735, OptionPricer.computePrice(false, 100, 100, 365, 0.05, 0.2, 1), 1e-4);
+  }
+
+  @Test
+  public void satisfiesPutCallParity() {
+    double stock = 15;
+    double strike = 14.25;
+    int days = 20;
+    double rate = 0.028;
+    double call = OptionPricer.computePrice(true, stock, strike, days, rate, 0.4, 1);
+    double put = OptionPricer.computePrice(false, stock, strike, days, rate, 0.4, 1);
+    assertEquals(stock - strike * Math.exp(-rate * days / 365.0), call - put, 1e-9);
+  }
+
+  // The delta hedged against is the slope of the price the traders pay
+  @Test
+  public void deltaIsTheSlopeOfThePrice() {
+    Greeks greeks = new Greeks();
+    double step = 1e-4;
+    for (boolean isCall : new boolean[] {true, false}) {
+      for (double stock : new double[] {12, 15, 18}) {
+        double slope = (OptionPricer.computePrice(isCall, stock + step, 15, 15, 0.028, 0.5, 100)
+            - OptionPricer.computePrice(isCall, stock - step, 15, 15, 0.028, 0.5, 100))
+            / (2 * step);
+        greeks.compute(isCall, stock, 15, 15, 0.028, 0.5, 100);
+        assertEquals(greeks.delta, slope, 1e-4);
+      }
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package swarmModel.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class OptionSeriesBookTest {
+
+  private static final double tolerance = 1e-9;
+
+  /* Strikes within 0.3 of a whole number and prices halfway between, so no price falls inside a
+     strike bucket and the book values options exactly */
+  @Test
+  public void valuesAndExpiresOptionsLikeAPlainList() {
+    Random random = new Random(7);
+    OptionSeriesBook book = new OptionSeriesBook(1);
+    List<Option> held = new ArrayList<>();
+    for (long tick = 0; tick < 500; tick++) {
+      for (int i = random.nextInt(10); i > 0; i--) {
+        Option option = new Option(tick + 1 + random.nextInt(80),
+            10 + random.nextInt(10) + 0.6 * random.nextDouble() - 0.3,
+            random.nextBoolean() ? Option.type.CALL : Option.type.PUT, 15);
+        book.add(option);
+        held.add(option);
+      }
+      long now = tick;
+      held.removeIf(option -> option.getExpiryTick() <= now);
+      book.expire(tick);
+      assertEquals(held.size(), book.getContracts(), tolerance);
+
+      double price = 9.5 + random.nextInt(12);
+      double expected = 0;
+      for (Option option : held) {
+        expected += option.isCallOption() ? Math.max(price - option.getExercisePrice(), 0)
+            : Math.max(option.getExercisePrice() - price, 0);
+      }
+      assertEquals("tick " + tick, 2 * expected, book.intrinsicValue(price, 2), tolerance);
+    }
+  }
+
+  @Test
+  public void seriesBeyondOneTurnOutliveTheWheelSlot() {
+    OptionSeriesBook book = new OptionSeriesBook(0.01);
+    book.add(true, 10, 5, 2);
+    book.add(true, 10, 5 + 32, 3);
+    book.add(false, 10, 5, 1);
+    assertEquals(3, book.getSeriesCount());
+    book.expire(5);
+    assertEquals(1, book.getSeriesCount());
+    assertEquals(3, book.getContracts(), 0);
+    assertEquals(6, book.intrinsicValue(12, 1), tolerance);
+    book.expire(37);
+    assertEquals(0, book.getSeriesCount());
+    assertEquals(0, book.intrinsicValue(12, 1), 0);
+  }
+
+  // Strikes in the same cent share a series, valued at their average inside the bucket
+  @Test
+  public void strikesInABucketShareASeries() {
+    OptionSeriesBook book = new OptionSeriesBook(0.01);
+    book.add(true, 10.001, 5, 1);
+    book.add(true, 10.003, 5, 1);
+    assertEquals(1, book.getSeriesCount());
+    assertEquals(2 * (10.5 - 10.002), book.intrinsicValue(10.5, 1), tolerance);
+    assertEquals(2 * (10.0025 - 10.002), book.intrinsicValue(10.0025, 1), tolerance);
+  }
+
+  @Test
+  public void takingAwayABookCancelsItsContracts() {
+    OptionSeriesBook book = new OptionSeriesBook(0.01);
+    book.add(true, 10, 5, 4);
+    book.add(false, 12, 8, 1);
+    OptionSeriesBook sold = new OptionSeriesBook(0.01);
+    sold.add(true, 10, 5, 3);
+    book.addAll(sold, -1);
+    assertEquals(2, book.getContracts(), 0);
+    assertEquals(1 + 1, book.intrinsicValue(11, 1), tolerance);
+    book.addAll(sold, 1);
+    assertEquals(5, book.getContracts(), 0);
+  }
+
+  @Test
+  public void readBackBookHasTheSameSeries() throws IOException {
+    Random random = new Random(8);
+    OptionSeriesBook book = new OptionSeriesBook(0.5);
+    for (int i = 0; i < 300; i++) {
+      book.add(random.nextBoolean(), 10 + 10 * random.nextDouble(), random.nextInt(100),
+          1 + random.nextInt(3));
+    }
+    book.expire(3);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    book.writeTo(new DataOutputStream(bytes));
+    OptionSeriesBook read = OptionSeriesBook
+        .readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(book.getSeriesCount(), read.getSeriesCount());
+    assertEquals(book.getContracts(), read.getContracts(), 0);
+    for (double price = 8; price < 22; price += 0.37) {
+      assertEquals(book.intrinsicValue(price, 1), read.intrinsicValue(price, 1), tolerance);
+    }
+    for (long tick = 4; tick < 100; tick++) {
+      book.expire(tick);
+      read.expire(tick);
+      assertEquals(book.getSeriesCount(), read.getSeriesCount());
+    }
+    assertEquals(0, read.getSeriesCount());
+  }
+}
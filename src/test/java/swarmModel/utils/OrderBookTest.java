@@ -0,0 +1,241 @@
+package swarmModel.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+public class OrderBookTest {
+
+  private static final double tolerance = 1e-9;
+
+  @Test
+  public void bestPriceFillsFirst() {
+    OrderBook book = new OrderBook(0.01);
+    book.limit(false, 1, 10.02, 5);
+    book.limit(false, 2, 10.00, 5);
+    book.limit(false, 3, 10.01, 5);
+    assertEquals(10.00, book.getBestAsk(), tolerance);
+
+    assertEquals(7, book.market(true, 9, 7));
+    assertFill(book, 0, 9, 5, -5 * 10.00);
+    assertFill(book, 1, 2, -5, 5 * 10.00);
+    assertFill(book, 2, 9, 2, -2 * 10.01);
+    assertFill(book, 3, 3, -2, 2 * 10.01);
+    assertEquals(10.01, book.getLastPrice(), tolerance);
+    assertEquals(10.01, book.getBestAsk(), tolerance);
+    assertEquals(3, book.getQuantityAt(10.01));
+    assertEquals(8, book.getAskQuantity());
+  }
+
+  @Test
+  public void earlierOrderAtAPriceFillsFirst() {
+    OrderBook book = new OrderBook(0.01);
+    book.limit(true, 1, 9.99, 3);
+    book.limit(true, 2, 9.99, 4);
+    book.limit(true, 3, 9.99, 5);
+
+    assertEquals(5, book.market(false, 9, 5));
+    assertEquals(4, book.getFills());
+    assertFill(book, 1, 1, 3, -3 * 9.99);
+    assertFill(book, 3, 2, 2, -2 * 9.99);
+    assertEquals(7, book.getBidQuantity());
+
+    book.clearFills();
+    book.market(false, 9, 3);
+    assertFill(book, 1, 2, 2, -2 * 9.99);
+    assertFill(book, 3, 3, 1, -9.99);
+  }
+
+  @Test
+  public void partlyFilledLimitOrderRestsAtItsPrice() {
+    OrderBook book = new OrderBook(0.5);
+    book.limit(false, 1, 10, 4);
+    long id = book.limit(true, 2, 10.5, 10);
+    assertTrue(id >= 0);
+    assertEquals(10, book.getLastPrice(), tolerance);
+    assertFalse(book.hasAsk());
+    assertEquals(10.5, book.getBestBid(), tolerance);
+    assertEquals(6, book.getBidQuantity());
+    assertEquals(4, book.getTakerBuyVolume());
+
+    // Crossing the whole resting order fills it at its own price and leaves nothing
+    assertEquals(-1, book.limit(false, 3, 10, 6));
+    assertFalse(book.hasBid());
+    assertEquals(10.5, book.getLastPrice(), tolerance);
+    assertEquals(6, book.getTakerSellVolume());
+  }
+
+  @Test
+  public void marketOrderBeyondTheBookIsDropped() {
+    OrderBook book = new OrderBook(0.01);
+    book.limit(false, 1, 10, 3);
+    assertEquals(3, book.market(true, 2, 8));
+    assertFalse(book.hasAsk());
+    assertFalse(book.hasBid());
+    assertEquals(0, book.market(true, 2, 8));
+  }
+
+  @Test
+  public void staleIdsCannotCancel() {
+    OrderBook book = new OrderBook(0.01);
+    long filled = book.limit(false, 1, 10, 2);
+    book.market(true, 2, 2);
+    assertFalse(book.cancel(filled));
+
+    // The pooled node now holds another order, which the old id must not reach
+    long reused = book.limit(false, 3, 11, 4);
+    assertEquals((int) filled, (int) reused);
+    assertFalse(book.cancel(filled));
+    assertEquals(4, book.getAskQuantity());
+
+    assertTrue(book.cancel(reused));
+    assertFalse(book.cancel(reused));
+    assertFalse(book.hasAsk());
+    assertFalse(book.cancel(-1));
+    assertFalse(book.cancel(1000));
+  }
+
+  @Test
+  public void cancelAllRemovesOnlyTheOwnersOrders() {
+    OrderBook book = new OrderBook(0.01);
+    book.limit(true, 1, 9, 1);
+    book.limit(true, 2, 9, 2);
+    book.limit(false, 1, 11, 3);
+    book.limit(true, 1, 8, 4);
+    assertEquals(3, book.cancelAll(1));
+    assertEquals(0, book.cancelAll(1));
+    assertEquals(0, book.cancelAll(5));
+    assertEquals(2, book.getBidQuantity());
+    assertEquals(9, book.getBestBid(), tolerance);
+    assertFalse(book.hasAsk());
+  }
+
+  // Random orders and cancels checked against a book kept as lists of orders in arrival order
+  @Test
+  public void matchesBruteForceBook() {
+    Random random = new Random(3);
+    OrderBook book = new OrderBook(1);
+    List<long[]> resting = new ArrayList<>();
+    long arrival = 0;
+    for (int step = 0; step < 20000; step++) {
+      boolean buy = random.nextBoolean();
+      long owner = random.nextInt(50);
+      long quantity = 1 + random.nextInt(20);
+      double draw = random.nextDouble();
+      if (draw < 0.2 && !resting.isEmpty()) {
+        long[] order = resting.remove(random.nextInt(resting.size()));
+        assertTrue(book.cancel(order[4]));
+        assertFalse(book.cancel(order[4]));
+        continue;
+      } else if (draw < 0.25) {
+        int cancelled = 0;
+        for (Iterator<long[]> it = resting.iterator(); it.hasNext(); ) {
+          if (it.next()[1] == owner) {
+            it.remove();
+            cancelled++;
+          }
+        }
+        assertEquals(cancelled, book.cancelAll(owner));
+        continue;
+      }
+      long price = draw < 0.3 ? (buy ? Long.MAX_VALUE : 0) : 90 + random.nextInt(21);
+      Map<Long, Long> expectedShares = new HashMap<>();
+      Map<Long, Double> expectedCash = new HashMap<>();
+      long remaining = quantity;
+      while (remaining > 0) {
+        long[] best = null;
+        for (long[] order : resting) {
+          if (order[0] != (buy ? 0 : 1) || (buy ? order[2] > price : order[2] < price)) {
+            continue;
+          }
+          if (best == null || (buy ? order[2] < best[2] : order[2] > best[2])
+              || (order[2] == best[2] && order[5] < best[5])) {
+            best = order;
+          }
+        }
+        if (best == null) {
+          break;
+        }
+        long traded = Math.min(remaining, best[3]);
+        remaining -= traded;
+        best[3] -= traded;
+        expectedShares.merge(owner, buy ? traded : -traded, Long::sum);
+        expectedShares.merge(best[1], buy ? -traded : traded, Long::sum);
+        expectedCash.merge(owner, (buy ? -traded : traded) * (double) best[2], Double::sum);
+        expectedCash.merge(best[1], (buy ? traded : -traded) * (double) best[2], Double::sum);
+        if (best[3] == 0) {
+          resting.remove(best);
+        }
+      }
+
+      book.clearFills();
+      if (price == Long.MAX_VALUE || price == 0) {
+        assertEquals(quantity - remaining, book.market(buy, owner, quantity));
+      } else {
+        long id = book.limit(buy, owner, price, quantity);
+        if (remaining > 0) {
+          resting.add(new long[]{buy ? 1 : 0, owner, price, remaining, id, arrival++});
+        } else {
+          assertEquals(-1, id);
+        }
+      }
+      assertFills(book, expectedShares, expectedCash);
+      assertBook(book, resting);
+    }
+  }
+
+  private static void assertFill(OrderBook book, int fill, long owner, long shares, double cash) {
+    assertEquals(owner, book.getFillOwner(fill));
+    assertEquals(shares, book.getFillShares(fill));
+    assertEquals(cash, book.getFillCash(fill), tolerance);
+  }
+
+  private static void assertFills(OrderBook book, Map<Long, Long> expectedShares,
+      Map<Long, Double> expectedCash) {
+    Map<Long, Long> shares = new HashMap<>();
+    Map<Long, Double> cash = new HashMap<>();
+    for (int fill = 0; fill < book.getFills(); fill++) {
+      shares.merge(book.getFillOwner(fill), book.getFillShares(fill), Long::sum);
+      cash.merge(book.getFillOwner(fill), book.getFillCash(fill), Double::sum);
+    }
+    assertEquals(expectedShares, shares);
+    assertEquals(expectedCash.keySet(), cash.keySet());
+    for (Map.Entry<Long, Double> entry : expectedCash.entrySet()) {
+      assertEquals(entry.getValue(), cash.get(entry.getKey()), tolerance);
+    }
+  }
+
+  private static void assertBook(OrderBook book, List<long[]> resting) {
+    long bids = 0;
+    long asks = 0;
+    long bestBid = -1;
+    long bestAsk = -1;
+    for (long[] order : resting) {
+      if (order[0] == 1) {
+        bids += order[3];
+        bestBid = Math.max(bestBid, order[2]);
+      } else {
+        asks += order[3];
+        bestAsk = bestAsk < 0 ? order[2] : Math.min(bestAsk, order[2]);
+      }
+    }
+    assertEquals(bids, book.getBidQuantity());
+    assertEquals(asks, book.getAskQuantity());
+    assertEquals(bestBid >= 0, book.hasBid());
+    assertEquals(bestAsk >= 0, book.hasAsk());
+    if (bestBid >= 0) {
+      assertEquals(bestBid, book.getBestBid(), tolerance);
+    }
+    if (bestAsk >= 0) {
+      assertEquals(bestAsk, book.getBestAsk(), tolerance);
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package swarmModel.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class QuantileSketchTest {
+
+  private static final double[] quantiles = {0, 0.01, 0.05, 0.25, 0.5, 0.75, 0.95, 0.99, 1};
+
+  @Test
+  public void exactUpToTheCapacity() {
+    Random random = new Random(1);
+    double[] values = new double[100];
+    QuantileSketch sketch = new QuantileSketch(values.length + 1);
+    for (int i = 0; i < values.length; i++) {
+      values[i] = random.nextGaussian();
+      sketch.add(values[i]);
+    }
+    Arrays.sort(values);
+    for (double q : quantiles) {
+      int rank = Math.max((int) Math.ceil(q * values.length), 1);
+      assertEquals("q " + q, values[rank - 1], sketch.quantile(q), 0);
+    }
+  }
+
+  @Test
+  public void rankErrorIsBounded() {
+    int capacity = 256;
+    double[] values = draws(new Random(2), 200000);
+    QuantileSketch sketch = new QuantileSketch(capacity);
+    for (double value : values) {
+      sketch.add(value);
+    }
+    assertEquals(values.length, sketch.getCount());
+    assertRankError(sketch, values, capacity);
+  }
+
+  // Sketches of parts of a stream merged together are as good as one sketch of the whole stream
+  @Test
+  public void mergedSketchesMatchASinglePass() {
+    int capacity = 256;
+    double[] values = draws(new Random(3), 200000);
+    QuantileSketch single = new QuantileSketch(capacity);
+    QuantileSketch merged = new QuantileSketch(capacity);
+    int parts = 7;
+    for (int part = 0; part < parts; part++) {
+      QuantileSketch sketch = new QuantileSketch(capacity);
+      for (int i = part; i < values.length; i += parts) {
+        sketch.add(values[i]);
+        single.add(values[i]);
+      }
+      merged.merge(sketch);
+    }
+    assertEquals(single.getCount(), merged.getCount());
+    assertRankError(single, values, capacity);
+    assertRankError(merged, values, capacity);
+  }
+
+  @Test
+  public void emptySketchHasNoQuantile() {
+    QuantileSketch sketch = new QuantileSketch(16);
+    assertTrue(Double.isNaN(sketch.quantile(0.5)));
+    sketch.merge(new QuantileSketch(16));
+    assertEquals(0, sketch.getCount());
+    assertTrue(Double.isNaN(sketch.quantile(0.5)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void cannotMergeDifferentCapacities() {
+    new QuantileSketch(16).merge(new QuantileSketch(32));
+  }
+
+  // A trend with noise, so values do not arrive in the order of their ranks
+  private static double[] draws(Random random, int count) {
+    double[] values = new double[count];
+    for (int i = 0; i < count; i++) {
+      values[i] = i * 1e-4 + random.nextGaussian();
+    }
+    return values;
+  }
+
+  // Each quantile's rank in the sorted values is within log2(n / k) / k of the one asked for
+  private static void assertRankError(QuantileSketch sketch, double[] values, int capacity) {
+    double[] sorted = values.clone();
+    Arrays.sort(sorted);
+    double bound = Math.log(sorted.length / (double) capacity) / Math.log(2) / capacity;
+    for (double q : quantiles) {
+      double quantile = sketch.quantile(q);
+      int below = lowerBound(sorted, quantile);
+      int atOrBelow = lowerBound(sorted, Math.nextUp(quantile));
+      double target = q * sorted.length;
+      double error = target < below ? below - target
+          : target > atOrBelow ? target - atOrBelow : 0;
+      assertTrue("q " + q + " rank error " + error / sorted.length,
+          error / sorted.length <= bound);
+    }
+  }
+
+  private static int lowerBound(double[] sorted, double value) {
+    int index = Arrays.binarySearch(sorted, value);
+    if (index < 0) {
+      return -index - 1;
+    }
+    while (index > 0 && sorted[index - 1] == value) {
+      index--;
+    }
+    return index;
+  }
+}
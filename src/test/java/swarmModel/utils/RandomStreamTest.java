@@ -0,0 +1,101 @@
+package swarmModel.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.SplittableRandom;
+import org.junit.Test;
+
+public class RandomStreamTest {
+
+  // Saved after every number of draws around the block boundaries, of either kind
+  @Test
+  public void restoredStreamCarriesOnWithTheSameDraws() throws IOException {
+    for (int uniforms : new int[]{0, 1, 31, 32, 33, 64, 100}) {
+      for (int normals : new int[]{0, 1, 2, 31, 32, 45}) {
+        RandomStream stream = new RandomStream(uniforms * 1000L + normals);
+        for (int i = 0; i < uniforms; i++) {
+          stream.uniform();
+        }
+        for (int i = 0; i < normals; i++) {
+          stream.normal();
+        }
+        RandomStream restored = roundTrip(stream);
+        Random order = new Random(uniforms + normals);
+        for (int i = 0; i < 200; i++) {
+          String draw = "after " + uniforms + " uniforms and " + normals + " normals, draw " + i;
+          if (order.nextBoolean()) {
+            assertEquals(draw, stream.uniform(), restored.uniform(), 0);
+          } else {
+            assertEquals(draw, stream.normal(), restored.normal(), 0);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void streamSavedTwiceIsUnchanged() throws IOException {
+    RandomStream stream = new RandomStream(5);
+    stream.uniform();
+    stream.normal();
+    RandomStream restored = roundTrip(roundTrip(stream));
+    for (int i = 0; i < 100; i++) {
+      assertEquals(stream.uniform(), restored.uniform(), 0);
+      assertEquals(stream.normal(), restored.normal(), 0);
+    }
+  }
+
+  // The uniforms are those of SplittableRandom with the same seed
+  @Test
+  public void uniformsAreSplitMix64() {
+    RandomStream stream = new RandomStream(123);
+    SplittableRandom random = new SplittableRandom(123);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(random.nextDouble(), stream.uniform(), 0);
+    }
+  }
+
+  @Test
+  public void streamsDependOnGroupAndId() {
+    assertEquals(RandomStream.of(1, "NoiseTrader", 7).uniform(),
+        RandomStream.of(1, "NoiseTrader", 7).uniform(), 0);
+    assertNotEquals(RandomStream.of(1, "NoiseTrader", 7).uniform(),
+        RandomStream.of(1, "NoiseTrader", 8).uniform(), 0);
+    assertNotEquals(RandomStream.of(1, "NoiseTrader", 7).uniform(),
+        RandomStream.of(1, "MomentumTrader", 7).uniform(), 0);
+    assertNotEquals(RandomStream.of(1, "NoiseTrader", 7).uniform(),
+        RandomStream.of(2, "NoiseTrader", 7).uniform(), 0);
+  }
+
+  @Test
+  public void normalsAreStandard() {
+    RandomStream stream = new RandomStream(9);
+    int draws = 200000;
+    double sum = 0;
+    double sumOfSquares = 0;
+    for (int i = 0; i < draws; i++) {
+      double normal = stream.normal();
+      assertTrue(Double.isFinite(normal));
+      sum += normal;
+      sumOfSquares += normal * normal;
+    }
+    double mean = sum / draws;
+    assertEquals(0, mean, 0.01);
+    assertEquals(1, sumOfSquares / draws - mean * mean, 0.01);
+  }
+
+  private static RandomStream roundTrip(RandomStream stream) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    stream.writeTo(new DataOutputStream(bytes));
+    return RandomStream
+        .readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+  }
+}
@@ -0,0 +1,108 @@
+package swarmModel.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.apache.commons.math3.fitting.PolynomialCurveFitter;
+import org.apache.commons.math3.fitting.WeightedObservedPoints;
+import org.junit.Test;
+
+public class RollingPolynomialFitTest {
+
+  // A long run compared with a direct least squares fit of the window at regular checkpoints
+  @Test
+  public void matchesDirectFitOverLongRun() {
+    int order = 2;
+    int window = 11;
+    RollingPolynomialFit fit = new RollingPolynomialFit(order, window);
+    double[] history = new double[window];
+    double[] coeffs = new double[order + 1];
+    Random random = new Random(7);
+    double price = 100;
+    for (long tick = 0; tick <= 1_000_000; tick++) {
+      price = Math.max(price + random.nextGaussian(), 1);
+      history[(int) (tick % window)] = price;
+      fit.add(tick, price);
+      if (tick >= window && (tick % 99_991 == 0 || tick == 1_000_000)) {
+        fit.fit(coeffs);
+        assertMatchesDirectFit(coeffs, history, tick, window);
+      }
+    }
+  }
+
+  @Test
+  public void fitsAPolynomialExactly() {
+    RollingPolynomialFit fit = new RollingPolynomialFit(2, 5);
+    for (long tick = 0; tick < 20; tick++) {
+      fit.add(tick, 3 - 2 * tick + 0.5 * tick * tick);
+    }
+    double[] coeffs = fit.fit(null);
+    assertEquals(3, coeffs[0], 1e-8);
+    assertEquals(-2, coeffs[1], 1e-9);
+    assertEquals(0.5, coeffs[2], 1e-10);
+  }
+
+  @Test
+  public void replacingTheLatestValueRefits() {
+    RollingPolynomialFit fit = new RollingPolynomialFit(1, 3);
+    fit.add(0, 0);
+    fit.add(1, 1);
+    fit.add(2, 5);
+    fit.add(2, 2);
+    double[] coeffs = fit.fit(null);
+    assertEquals(0, coeffs[0], 1e-12);
+    assertEquals(1, coeffs[1], 1e-12);
+  }
+
+  @Test
+  public void gapRestartsTheWindow() {
+    RollingPolynomialFit fit = new RollingPolynomialFit(1, 4);
+    fit.add(0, 1);
+    fit.add(1, 2);
+    fit.add(5, 3);
+    assertEquals(1, fit.getCount());
+    assertFalse(fit.canFit());
+    fit.add(6, 4);
+    assertTrue(fit.canFit());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void needsMorePointsThanTheOrder() {
+    RollingPolynomialFit fit = new RollingPolynomialFit(2, 5);
+    fit.add(0, 1);
+    fit.add(1, 2);
+    fit.fit(null);
+  }
+
+  /* The direct fit is done about the latest tick so it is well conditioned, and both polynomials
+     are compared at every tick of the window. The tolerance allows for the rounding in evaluating
+     coefficients of powers of a large tick, not for any drift of the fit. */
+  private static void assertMatchesDirectFit(double[] coeffs, double[] history, long tick,
+      int window) {
+    WeightedObservedPoints points = new WeightedObservedPoints();
+    for (int offset = 0; offset < window; offset++) {
+      points.add(-offset, history[(int) ((tick - offset) % window)]);
+    }
+    double[] local = PolynomialCurveFitter.create(coeffs.length - 1).fit(points.toList());
+    for (int offset = 0; offset < window; offset++) {
+      double t = tick - offset;
+      double value = 0;
+      double scale = 0;
+      double power = 1;
+      for (double coeff : coeffs) {
+        value += coeff * power;
+        scale += Math.abs(coeff * power);
+        power *= t;
+      }
+      double expected = 0;
+      power = 1;
+      for (double coeff : local) {
+        expected += coeff * power;
+        power *= -offset;
+      }
+      assertEquals("tick " + tick + " offset " + offset, expected, value, 1e-12 * scale + 1e-9);
+    }
+  }
+}
@@ -0,0 +1,125 @@
+package swarmModel.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+
+public class TimeSeriesTest {
+
+  private static final double tolerance = 1e-6;
+
+  // Random appends with gaps and overwrites, every window checked against the retained values
+  @Test
+  public void windowsMatchBruteForce() {
+    Random random = new Random(42);
+    int capacity = 50;
+    TimeSeries series = new TimeSeries(capacity);
+    TreeMap<Long, Double> expected = new TreeMap<>();
+    long tick = 0;
+    for (int step = 0; step < 5000; step++) {
+      double draw = random.nextDouble();
+      if (draw < 0.1) {
+        tick += 1 + random.nextInt(10);
+      } else if (draw > 0.2 || expected.isEmpty()) {
+        tick++;
+      }
+      double value = 100 + 10 * random.nextGaussian();
+      series.put(tick, value);
+      expected.put(tick, value);
+      expected.headMap(tick - capacity, true).clear();
+
+      long from = tick - random.nextInt(2 * capacity);
+      long to = from + random.nextInt(2 * capacity);
+      assertWindow(series, expected, from, to);
+      assertWindow(series, expected, tick - capacity + 1, tick);
+    }
+  }
+
+  @Test
+  public void evictsTicksOlderThanTheCapacity() {
+    TimeSeries series = new TimeSeries(3);
+    for (long tick = 0; tick < 10; tick++) {
+      series.put(tick, tick);
+    }
+    assertEquals(7, series.getFirstTick());
+    assertFalse(series.contains(6));
+    assertTrue(Double.isNaN(series.get(6)));
+    assertEquals(7 + 8 + 9, series.sum(0, 9), tolerance);
+    assertEquals(3, series.count(0, 9));
+    assertEquals(9, series.latest(), tolerance);
+  }
+
+  @Test
+  public void gapWiderThanTheCapacityRestartsTheSeries() {
+    TimeSeries series = new TimeSeries(4);
+    series.put(0, 1);
+    series.put(1, 2);
+    series.put(20, 5);
+    assertEquals(20, series.getFirstTick());
+    assertEquals(5, series.sum(0, 20), tolerance);
+    assertEquals(1, series.count(0, 20));
+  }
+
+  @Test
+  public void puttingTheLatestTickAgainOverwritesIt() {
+    TimeSeries series = new TimeSeries(5);
+    series.put(0, 1);
+    series.put(1, 2);
+    series.put(1, 4);
+    assertEquals(5, series.sum(0, 1), tolerance);
+    assertEquals(2, series.count(0, 1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsTicksBeforeTheLatest() {
+    TimeSeries series = new TimeSeries(5);
+    series.put(3, 1);
+    series.put(2, 1);
+  }
+
+  @Test
+  public void emptyWindowsHaveNoMean() {
+    TimeSeries series = new TimeSeries(5);
+    assertTrue(series.isEmpty());
+    assertEquals(0, series.sum(0, 10), 0);
+    assertTrue(Double.isNaN(series.mean(0, 10)));
+    assertTrue(Double.isNaN(series.variance(0, 10)));
+  }
+
+  private static void assertWindow(TimeSeries series, TreeMap<Long, Double> expected, long from,
+      long to) {
+    double sum = 0;
+    double sumOfSquares = 0;
+    long count = 0;
+    if (from <= to) {
+      for (Map.Entry<Long, Double> entry : expected.subMap(from, true, to, true).entrySet()) {
+        sum += entry.getValue();
+        sumOfSquares += entry.getValue() * entry.getValue();
+        count++;
+      }
+    }
+    String window = "window " + from + " to " + to;
+    assertEquals(window, count, series.count(from, to));
+    assertEquals(window, sum, series.sum(from, to), tolerance);
+    assertEquals(window, sumOfSquares, series.sumOfSquares(from, to), tolerance * 1000);
+    if (count == 0) {
+      assertTrue(window, Double.isNaN(series.mean(from, to)));
+      return;
+    }
+    double mean = sum / count;
+    assertEquals(window, mean, series.mean(from, to), tolerance);
+    assertEquals(window, sumOfSquares / count - mean * mean, series.variance(from, to), 1e-3);
+    for (long tick = Math.max(from, to - 3); tick <= to; tick++) {
+      Double value = expected.get(tick);
+      assertEquals(window, value != null, series.contains(tick));
+      if (value != null) {
+        assertEquals(window, value, series.get(tick), 0);
+      }
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package swarmModel.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class WakeUpCalendarTest {
+
+  // Random wake-ups, some beyond a turn of the wheel, drained tick by tick against a plain list
+  @Test
+  public void drainsTheAgentsDueInScheduleOrder() {
+    Random random = new Random(5);
+    WakeUpCalendar calendar = new WakeUpCalendar();
+    List<long[]> scheduled = new ArrayList<>();
+    for (long tick = 0; tick < 2000; tick++) {
+      for (int i = random.nextInt(30); i > 0; i--) {
+        long wakeUp = tick + 1 + random.nextInt(200);
+        long agent = random.nextInt(1000);
+        calendar.schedule(wakeUp, agent);
+        scheduled.add(new long[]{wakeUp, agent});
+      }
+      long now = tick;
+      List<Long> expected = new ArrayList<>();
+      scheduled.removeIf(wakeUp -> wakeUp[0] == now && expected.add(wakeUp[1]));
+      int nbDue = calendar.drainDue(tick);
+      long[] due = Arrays.copyOf(calendar.getDue(), nbDue);
+      assertArrayEquals("tick " + tick,
+          expected.stream().mapToLong(Long::longValue).toArray(), due);
+      assertEquals(scheduled.size(), calendar.size());
+    }
+  }
+
+  @Test
+  public void bufferIsReusedOnceGrown() {
+    WakeUpCalendar calendar = new WakeUpCalendar();
+    for (int agent = 0; agent < 100; agent++) {
+      calendar.schedule(1, agent);
+    }
+    assertEquals(100, calendar.drainDue(1));
+    long[] buffer = calendar.getDue();
+    for (int agent = 0; agent < 50; agent++) {
+      calendar.schedule(2, agent);
+    }
+    assertEquals(0, calendar.drainDue(1));
+    assertEquals(50, calendar.drainDue(2));
+    assertSame(buffer, calendar.getDue());
+    assertEquals(0, calendar.size());
+  }
+}